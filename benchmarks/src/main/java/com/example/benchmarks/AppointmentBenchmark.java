@@ -0,0 +1,68 @@
+package com.example.benchmarks;
+
+import com.example.models.Appointment;
+import com.example.models.Doctor;
+import com.example.models.Patient;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppointmentBenchmark {
+
+  @State(Scope.Thread)
+  public static class ColdNames {
+
+    @Setup(Level.Invocation)
+    public void clear() {
+      Patient.clearCaches();
+      Doctor.clearCaches();
+    }
+  }
+
+  @Benchmark
+  public Appointment getById(SeededDatabase db) throws SQLException {
+    return Appointment.getById(db.randomAppointmentId());
+  }
+
+  /**
+   * Every appointment, with patient and doctor names from their name
+   * dictionaries, which hold every id once warmup has run.
+   */
+  @Benchmark
+  public List<Appointment> getAll(SeededDatabase db) throws SQLException {
+    return Appointment.getAll();
+  }
+
+  /**
+   * The same with the dictionaries emptied first, so every name is read
+   * back from Patients and Doctors by id.
+   */
+  @Benchmark
+  public List<Appointment> getAllColdNames(ColdNames cold, SeededDatabase db)
+    throws SQLException {
+    return Appointment.getAll();
+  }
+
+  /** The query AvailabilityIndex loads a doctor's day with. */
+  @Benchmark
+  public List<Time> checkAvailability(SeededDatabase db) throws SQLException {
+    return Appointment.getBookedTimes(db.randomDoctorId(), db.randomDate());
+  }
+}
@@ -0,0 +1,40 @@
+package com.example.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of target/benchmarks.jar. Accepts the usual JMH command line
+ * options and defaults to writing JSON results to jmh-result.json, e.g.
+ *
+ * <pre>
+ * java -Ddb.url=jdbc:mysql://localhost:3306/hospital_management_system \
+ *   -jar benchmarks/target/benchmarks.jar -p rowCount=100000 -rff 1.1.json
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    if (commandLine.shouldHelp()) {
+      commandLine.showHelp();
+      return;
+    }
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+    if (!commandLine.getResultFormat().hasValue()) {
+      options.resultFormat(ResultFormatType.JSON);
+    }
+    if (!commandLine.getResult().hasValue()) {
+      options.result("jmh-result.json");
+    }
+    Runner runner = new Runner(options.build());
+    if (commandLine.shouldList()) {
+      runner.list();
+    } else {
+      runner.run();
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package com.example.benchmarks;
+
+import com.example.models.Bill;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BillBenchmark {
+
+  /** The GenerateBill stored procedure call, one bill per round trip. */
+  @Benchmark
+  public void generateBill(SeededDatabase db) throws SQLException {
+    Bill.generate(db.randomAppointmentId(), 150.00);
+  }
+}
@@ -0,0 +1,52 @@
+package com.example.benchmarks;
+
+import com.example.models.Doctor;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DoctorBenchmark {
+
+  @State(Scope.Thread)
+  public static class ColdCache {
+
+    @Setup(Level.Invocation)
+    public void clear() {
+      Doctor.clearCaches();
+    }
+  }
+
+  /** Served from the doctor cache once warmup has filled it. */
+  @Benchmark
+  public Doctor getById(SeededDatabase db) throws SQLException {
+    return Doctor.getById(db.randomDoctorId());
+  }
+
+  /** The same lookup with the cache emptied first, so it reads MySQL. */
+  @Benchmark
+  public Doctor getByIdUncached(ColdCache cold, SeededDatabase db)
+    throws SQLException {
+    return Doctor.getById(db.randomDoctorId());
+  }
+
+  @Benchmark
+  public List<Doctor> getAll(SeededDatabase db) throws SQLException {
+    return Doctor.getAll();
+  }
+}
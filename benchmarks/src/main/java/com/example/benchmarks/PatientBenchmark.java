@@ -0,0 +1,97 @@
+package com.example.benchmarks;
+
+import com.example.models.Patient;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatientBenchmark {
+
+  @State(Scope.Thread)
+  public static class ExistingPatient {
+
+    Patient patient;
+    int counter;
+
+    @Setup(Level.Iteration)
+    public void load(SeededDatabase db) throws SQLException {
+      patient = Patient.getById(db.randomPatientId());
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ColdCache {
+
+    @Setup(Level.Invocation)
+    public void clear() {
+      Patient.clearCaches();
+    }
+  }
+
+  /** Served from the patient cache once warmup has filled it. */
+  @Benchmark
+  public Patient getById(SeededDatabase db) throws SQLException {
+    return Patient.getById(db.randomPatientId());
+  }
+
+  /** The same lookup with the cache emptied first, so it reads MySQL. */
+  @Benchmark
+  public Patient getByIdUncached(ColdCache cold, SeededDatabase db)
+    throws SQLException {
+    return Patient.getById(db.randomPatientId());
+  }
+
+  @Benchmark
+  public int insert() throws SQLException {
+    Patient patient = newPatient();
+    patient.save();
+    return patient.getPatientId();
+  }
+
+  @Benchmark
+  public void update(ExistingPatient existing) throws SQLException {
+    existing.patient.setContactNumber(
+      String.format("555-%04d", existing.counter++ % 10000)
+    );
+    existing.patient.save();
+  }
+
+  @Benchmark
+  public void insertAndDelete() throws SQLException {
+    Patient patient = newPatient();
+    patient.save();
+    patient.delete();
+  }
+
+  @Benchmark
+  public List<Patient> getAll() throws SQLException {
+    return Patient.getAll();
+  }
+
+  private static Patient newPatient() {
+    return new Patient(
+      SeededDatabase.MARKER + " inserted",
+      42,
+      "Other",
+      "1 Benchmark Ave",
+      "555-0000",
+      "Inserted by PatientBenchmark"
+    );
+  }
+}
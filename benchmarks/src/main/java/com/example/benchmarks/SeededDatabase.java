@@ -0,0 +1,171 @@
+package com.example.benchmarks;
+
+import com.example.DBConnection;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Adds {@code rowCount} synthetic patients and appointments (plus a doctor
+ * per 50 appointments) on top of a database loaded from
+ * hospital_management_final.sql, and removes them again after the trial.
+ * Every synthetic row is named with {@link #MARKER} so cleanup never touches
+ * the seed data.
+ */
+@State(Scope.Benchmark)
+public class SeededDatabase {
+
+  static final String MARKER = "jmh-bench";
+  static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+  static final int DAYS = 365;
+
+  private static final int BATCH_SIZE = 1000;
+
+  @Param({ "1000", "10000" })
+  public int rowCount;
+
+  int[] patientIds;
+  int[] doctorIds;
+  int[] appointmentIds;
+
+  @Setup(Level.Trial)
+  public void seed() throws SQLException {
+    cleanUp();
+    doctorIds = insertDoctors(Math.max(1, rowCount / 50));
+    patientIds = insertPatients(rowCount);
+    appointmentIds = insertAppointments(rowCount);
+  }
+
+  @TearDown(Level.Trial)
+  public void cleanUp() throws SQLException {
+    try (
+      Connection conn = DBConnection.getConnection();
+      Statement stmt = conn.createStatement()
+    ) {
+      // Appointments and bills go with them through ON DELETE CASCADE
+      stmt.executeUpdate(
+        "DELETE FROM Patients WHERE Name LIKE '" + MARKER + "%'"
+      );
+      stmt.executeUpdate(
+        "DELETE FROM Doctors WHERE Name LIKE '" + MARKER + "%'"
+      );
+    }
+  }
+
+  int randomPatientId() {
+    return patientIds[ThreadLocalRandom.current().nextInt(patientIds.length)];
+  }
+
+  int randomDoctorId() {
+    return doctorIds[ThreadLocalRandom.current().nextInt(doctorIds.length)];
+  }
+
+  int randomAppointmentId() {
+    return appointmentIds[ThreadLocalRandom
+        .current()
+        .nextInt(appointmentIds.length)];
+  }
+
+  Date randomDate() {
+    return Date.valueOf(
+      FIRST_DAY.plusDays(ThreadLocalRandom.current().nextInt(DAYS))
+    );
+  }
+
+  private int[] insertDoctors(int count) throws SQLException {
+    String sql =
+      "INSERT INTO Doctors (Name, Specialty, YearsOfExperience, ContactInformation) VALUES (?, ?, ?, ?)";
+    return insertAll(
+      sql,
+      count,
+      (pstmt, i) -> {
+        pstmt.setString(1, MARKER + " doctor " + i);
+        pstmt.setString(2, "Specialty " + (i % 10));
+        pstmt.setInt(3, i % 30);
+        pstmt.setString(4, "doctor" + i + "@bench.local");
+      }
+    );
+  }
+
+  private int[] insertPatients(int count) throws SQLException {
+    String sql =
+      "INSERT INTO Patients (Name, Age, Gender, Address, ContactNumber, MedicalHistory) VALUES (?, ?, ?, ?, ?, ?)";
+    return insertAll(
+      sql,
+      count,
+      (pstmt, i) -> {
+        pstmt.setString(1, MARKER + " patient " + i);
+        pstmt.setInt(2, 18 + i % 70);
+        pstmt.setString(3, i % 2 == 0 ? "Female" : "Male");
+        pstmt.setString(4, i + " Benchmark St");
+        pstmt.setString(5, String.format("555-%04d", i % 10000));
+        pstmt.setString(6, "Synthetic medical history for patient " + i);
+      }
+    );
+  }
+
+  private int[] insertAppointments(int count) throws SQLException {
+    String sql =
+      "INSERT INTO Appointments (PatientID, DoctorID, Date, Time, Status) VALUES (?, ?, ?, ?, ?)";
+    return insertAll(
+      sql,
+      count,
+      (pstmt, i) -> {
+        pstmt.setInt(1, patientIds[i % patientIds.length]);
+        pstmt.setInt(2, doctorIds[i % doctorIds.length]);
+        pstmt.setDate(3, Date.valueOf(FIRST_DAY.plusDays(i % DAYS)));
+        pstmt.setTime(
+          4,
+          Time.valueOf(LocalTime.of(8, 0).plusMinutes(30L * (i % 20)))
+        );
+        pstmt.setString(5, "Scheduled");
+      }
+    );
+  }
+
+  private interface RowBinder {
+    void bind(PreparedStatement pstmt, int index) throws SQLException;
+  }
+
+  private static int[] insertAll(String sql, int count, RowBinder binder)
+    throws SQLException {
+    int[] ids = new int[count];
+    int next = 0;
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(
+        sql,
+        Statement.RETURN_GENERATED_KEYS
+      )
+    ) {
+      conn.setAutoCommit(false);
+      for (int i = 0; i < count; i++) {
+        binder.bind(pstmt, i);
+        pstmt.addBatch();
+        if ((i + 1) % BATCH_SIZE == 0 || i == count - 1) {
+          pstmt.executeBatch();
+          try (ResultSet keys = pstmt.getGeneratedKeys()) {
+            while (keys.next()) {
+              ids[next++] = keys.getInt(1);
+            }
+          }
+          conn.commit();
+        }
+      }
+    }
+    return ids;
+  }
+}
@@ -1,17 +1,80 @@
 package com.example;
 
+import com.example.db.ConnectionPool;
+import com.example.db.DBConfig;
+import com.example.metrics.Metrics;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
 
 public class DBConnection {
 
-  private static final String URL =
-    "jdbc:mysql://localhost:3306/hospital_management_system";
-  private static final String USER = "root";
-  private static final String PASSWORD = "9119";
+  private static volatile ConnectionPool pool;
 
   public static Connection getConnection() throws SQLException {
-    return DriverManager.getConnection(URL, USER, PASSWORD);
+    try (Metrics.Timer timer = Metrics.start("connection.acquire")) {
+      Connection conn = getPool().borrow();
+      timer.success();
+      return conn;
+    }
+  }
+
+  public static ConnectionPool getPool() {
+    ConnectionPool current = pool;
+    if (current == null) {
+      synchronized (DBConnection.class) {
+        current = pool;
+        if (current == null) {
+          current = new ConnectionPool(DBConfig.get());
+          Runtime
+            .getRuntime()
+            .addShutdownHook(new Thread(current::close, "db-pool-shutdown"));
+          registerGauges(current);
+          pool = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private static void registerGauges(ConnectionPool pool) {
+    Metrics.gauge(
+      "hms_db_pool_total_connections",
+      "Open physical connections",
+      pool::getTotalConnections
+    );
+    Metrics.gauge(
+      "hms_db_pool_idle_connections",
+      "Connections waiting in the pool",
+      pool::getIdleConnections
+    );
+    Metrics.gauge(
+      "hms_db_pool_active_connections",
+      "Connections currently borrowed",
+      pool::getActiveConnections
+    );
+    Metrics.gauge(
+      "hms_db_pool_max_connections",
+      "Configured pool size limit",
+      pool::getMaxSize
+    );
+    Metrics.gauge(
+      "hms_statement_cache_hits",
+      "Prepared statements served from the per-connection cache",
+      () -> ConnectionPool.getStatementCacheStats().getHits()
+    );
+    Metrics.gauge(
+      "hms_statement_cache_misses",
+      "Prepared statements that had to be prepared",
+      () -> ConnectionPool.getStatementCacheStats().getMisses()
+    );
+  }
+
+  public static void shutdown() {
+    synchronized (DBConnection.class) {
+      if (pool != null) {
+        pool.close();
+        pool = null;
+      }
+    }
   }
 }
@@ -1,15 +1,42 @@
 package com.example;
 
+import com.example.billing.BillingEngine;
+import com.example.db.ConnectionPool;
+import com.example.db.Page;
+import com.example.db.UncheckedSQLException;
+import com.example.db.migration.MigrationRunner;
+import com.example.index.AvailabilityIndex;
+import com.example.index.SpaceSaving;
+import com.example.index.SpecialtyPopularity;
+import com.example.index.VisitCounters;
+import com.example.metrics.Metrics;
+import com.example.metrics.OperationMetrics;
 import com.example.models.Appointment;
+import com.example.models.AppointmentStatusQueue;
+import com.example.models.Bill;
 import com.example.models.Doctor;
 import com.example.models.Patient;
+import com.example.models.PatientSummary;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.Scanner;
+import java.util.stream.Stream;
 
 public class Main {
 
+  private static final int PAGE_SIZE = 10;
+
   public static void main(String[] args) {
+    try {
+      MigrationRunner.migrateOnStartup();
+    } catch (SQLException e) {
+      System.out.println(
+        "Error applying schema migrations: " + e.getMessage()
+      );
+    }
+
     Scanner scanner = new Scanner(System.in);
     while (true) {
       System.out.println("\nHospital Management System");
@@ -17,8 +44,10 @@ public class Main {
       System.out.println("2. Manage Doctors");
       System.out.println("3. Manage Appointments");
       System.out.println("4. Generate Bill");
-      System.out.println("5. Check Doctor Availability");
-      System.out.println("6. Exit");
+      System.out.println("5. Bill Completed Appointments");
+      System.out.println("6. Check Doctor Availability");
+      System.out.println("7. Statistics");
+      System.out.println("8. Exit");
       System.out.print("Enter your choice: ");
 
       int choice = scanner.nextInt();
@@ -38,10 +67,17 @@ public class Main {
           generateBill(scanner);
           break;
         case 5:
-          checkDoctorAvailability(scanner);
+          generateBills();
           break;
         case 6:
+          checkDoctorAvailability(scanner);
+          break;
+        case 7:
+          printStatistics();
+          break;
+        case 8:
           System.out.println("Exiting...");
+          flushStatusQueue();
           return;
         default:
           System.out.println("Invalid choice. Please try again.");
@@ -56,22 +92,26 @@ public class Main {
     System.out.print("Enter total amount: ");
     double totalAmount = scanner.nextDouble();
 
-    String sql = "CALL GenerateBill(?, ?)";
-
-    try (
-      Connection conn = DBConnection.getConnection();
-      CallableStatement cstmt = conn.prepareCall(sql)
-    ) {
-      cstmt.setInt(1, appointmentId);
-      cstmt.setDouble(2, totalAmount);
-
-      cstmt.execute();
+    try {
+      Bill.generate(appointmentId, totalAmount);
       System.out.println("Bill generated successfully.");
     } catch (SQLException e) {
       System.out.println("Error generating bill: " + e.getMessage());
     }
   }
 
+  private static void generateBills() {
+    System.out.println("\nBill Generation");
+    System.out.println(
+      "Billing completed appointments without a bill from their services..."
+    );
+    try {
+      System.out.println(BillingEngine.fromConfig().run());
+    } catch (SQLException e) {
+      System.out.println("Error generating bills: " + e.getMessage());
+    }
+  }
+
   private static void checkDoctorAvailability(Scanner scanner) {
     System.out.println("\nDoctor Availability");
     System.out.print("Enter doctor ID: ");
@@ -80,23 +120,30 @@ public class Main {
     System.out.print("Enter date (YYYY-MM-DD): ");
     String dateStr = scanner.nextLine();
 
-    String sql =
-      "SELECT Time FROM Appointments WHERE DoctorID = ? AND Date = ? AND Status = 'Scheduled'";
-
-    try (
-      Connection conn = DBConnection.getConnection();
-      PreparedStatement pstmt = conn.prepareStatement(sql)
-    ) {
-      pstmt.setInt(1, doctorId);
-      pstmt.setDate(2, Date.valueOf(dateStr));
-
-      ResultSet rs = pstmt.executeQuery();
+    try {
+      AvailabilityIndex index = AvailabilityIndex.get();
+      LocalDate date = LocalDate.parse(dateStr);
 
+      // Both lists come from the index, so the lookup does not touch MySQL
+      System.out.println(
+        "Booked " +
+        index.getSlotMinutes() +
+        "-minute slots for the doctor on " +
+        dateStr +
+        ":"
+      );
+      for (LocalTime time : index.getBookedSlots(doctorId, date)) {
+        System.out.println(time);
+      }
       System.out.println(
-        "Booked time slots for the doctor on " + dateStr + ":"
+        "Free " +
+        index.getSlotMinutes() +
+        "-minute slots for the doctor on " +
+        dateStr +
+        ":"
       );
-      while (rs.next()) {
-        System.out.println(rs.getTime("Time"));
+      for (LocalTime time : index.getFreeSlots(doctorId, date)) {
+        System.out.println(time);
       }
     } catch (SQLException e) {
       System.out.println(
@@ -105,6 +152,84 @@ public class Main {
     }
   }
 
+  private static void flushStatusQueue() {
+    try {
+      AppointmentStatusQueue.get().flush();
+    } catch (SQLException e) {
+      // Still in the journal; the next start writes them
+      System.out.println(
+        "Error writing queued status changes: " + e.getMessage()
+      );
+    }
+  }
+
+  private static void printStatistics() {
+    ConnectionPool pool = DBConnection.getPool();
+    System.out.println("\nStatistics");
+    System.out.printf(
+      "Connections: %d open, %d idle, %d in use, %d max%n",
+      pool.getTotalConnections(),
+      pool.getIdleConnections(),
+      pool.getActiveConnections(),
+      pool.getMaxSize()
+    );
+    System.out.println(
+      "Statement cache: " + ConnectionPool.getStatementCacheStats()
+    );
+    System.out.println("Patient cache:   " + Patient.getCacheStats());
+    System.out.println("Doctor cache:    " + Doctor.getCacheStats());
+    AppointmentStatusQueue statusQueue = AppointmentStatusQueue.get();
+    if (statusQueue.isEnabled()) {
+      System.out.printf(
+        "Status queue:    %d pending, oldest %.1f s, %d dead-lettered%n",
+        statusQueue.getPendingCount(),
+        statusQueue.getLagSeconds(),
+        statusQueue.getDeadLetterCount()
+      );
+    }
+    try {
+      List<SpaceSaving.Entry<String>> specialties = SpecialtyPopularity
+        .get()
+        .topSpecialties(5);
+      System.out.println("Top specialties:");
+      for (SpaceSaving.Entry<String> entry : specialties) {
+        System.out.println("  " + entry);
+      }
+    } catch (SQLException e) {
+      System.out.println("Error ranking specialties: " + e.getMessage());
+    }
+
+    List<OperationMetrics> operations = Metrics.getOperations();
+    if (operations.isEmpty()) {
+      System.out.println("No database operations recorded yet.");
+      return;
+    }
+    System.out.printf(
+      "%n%-34s %8s %6s %9s %9s %9s %9s %9s%n",
+      "Operation",
+      "Calls",
+      "Errors",
+      "Rows",
+      "Mean ms",
+      "p50 ms",
+      "p99 ms",
+      "Max ms"
+    );
+    for (OperationMetrics operation : operations) {
+      System.out.printf(
+        "%-34s %8d %6d %9d %9.2f %9.2f %9.2f %9.2f%n",
+        operation.getName(),
+        operation.getCount(),
+        operation.getErrors(),
+        operation.getRows(),
+        operation.getMeanMillis(),
+        operation.getP50Millis(),
+        operation.getP99Millis(),
+        operation.getMaxMillis()
+      );
+    }
+  }
+
   private static void managePatients(Scanner scanner) {
     while (true) {
       System.out.println("\nManage Patients");
@@ -113,7 +238,9 @@ public class Main {
       System.out.println("3. Delete Patient");
       System.out.println("4. View Patient");
       System.out.println("5. List All Patients");
-      System.out.println("6. Back to Main Menu");
+      System.out.println("6. Browse Patients (paged)");
+      System.out.println("7. Frequent Patients");
+      System.out.println("8. Back to Main Menu");
       System.out.print("Enter your choice: ");
 
       int choice = scanner.nextInt();
@@ -136,6 +263,12 @@ public class Main {
           listAllPatients();
           break;
         case 6:
+          browsePatients(scanner);
+          break;
+        case 7:
+          listFrequentPatients();
+          break;
+        case 8:
           return;
         default:
           System.out.println("Invalid choice. Please try again.");
@@ -151,7 +284,8 @@ public class Main {
       System.out.println("3. Delete Doctor");
       System.out.println("4. View Doctor");
       System.out.println("5. List All Doctors");
-      System.out.println("6. Back to Main Menu");
+      System.out.println("6. Browse Doctors (paged)");
+      System.out.println("7. Back to Main Menu");
       System.out.print("Enter your choice: ");
 
       int choice = scanner.nextInt();
@@ -174,6 +308,9 @@ public class Main {
           listAllDoctors();
           break;
         case 6:
+          browseDoctors(scanner);
+          break;
+        case 7:
           return;
         default:
           System.out.println("Invalid choice. Please try again.");
@@ -189,7 +326,8 @@ public class Main {
       System.out.println("3. Cancel Appointment");
       System.out.println("4. View Appointment");
       System.out.println("5. List All Appointments");
-      System.out.println("6. Back to Main Menu");
+      System.out.println("6. Browse Appointments (paged)");
+      System.out.println("7. Back to Main Menu");
       System.out.print("Enter your choice: ");
 
       int choice = scanner.nextInt();
@@ -212,6 +350,9 @@ public class Main {
           listAllAppointments();
           break;
         case 6:
+          browseAppointments(scanner);
+          break;
+        case 7:
           return;
         default:
           System.out.println("Invalid choice. Please try again.");
@@ -340,20 +481,55 @@ public class Main {
       }
 
       System.out.println(patient);
-    } catch (SQLException e) {
+    } catch (SQLException | UncheckedSQLException e) {
       System.out.println("Error viewing patient: " + e.getMessage());
     }
   }
 
   private static void listAllPatients() {
     System.out.println("\nAll Patients");
+    try (Stream<Patient> patients = Patient.stream()) {
+      patients.forEach(System.out::println);
+    } catch (SQLException | UncheckedSQLException e) {
+      System.out.println("Error listing patients: " + e.getMessage());
+    }
+  }
+
+  private static void browsePatients(Scanner scanner) {
+    System.out.println("\nBrowse Patients");
+    try {
+      String token = null;
+      do {
+        Page<Patient> page = Patient.page(token, PAGE_SIZE);
+        page.getItems().forEach(System.out::println);
+        token = page.getNextToken();
+      } while (token != null && nextPageRequested(scanner));
+    } catch (SQLException | UncheckedSQLException e) {
+      System.out.println("Error browsing patients: " + e.getMessage());
+    }
+  }
+
+  private static void listFrequentPatients() {
+    VisitCounters counters = VisitCounters.get();
+    System.out.println(
+      "\nPatients with more than " +
+      counters.getThreshold() +
+      " appointments in the last " +
+      counters.getWindowMonths() +
+      " months"
+    );
     try {
-      List<Patient> patients = Patient.getAll();
-      for (Patient patient : patients) {
-        System.out.println(patient);
+      int[] patientIds = counters.getFrequentPatients();
+      for (PatientSummary patient : PatientSummary.getByIds(patientIds)) {
+        System.out.println(
+          patient +
+          " - " +
+          counters.getVisitCount(patient.getPatientId()) +
+          " visits"
+        );
       }
     } catch (SQLException e) {
-      System.out.println("Error listing patients: " + e.getMessage());
+      System.out.println("Error listing frequent patients: " + e.getMessage());
     }
   }
 
@@ -472,16 +648,27 @@ public class Main {
 
   private static void listAllDoctors() {
     System.out.println("\nAll Doctors");
-    try {
-      List<Doctor> doctors = Doctor.getAll();
-      for (Doctor doctor : doctors) {
-        System.out.println(doctor);
-      }
-    } catch (SQLException e) {
+    try (Stream<Doctor> doctors = Doctor.stream()) {
+      doctors.forEach(System.out::println);
+    } catch (SQLException | UncheckedSQLException e) {
       System.out.println("Error listing doctors: " + e.getMessage());
     }
   }
 
+  private static void browseDoctors(Scanner scanner) {
+    System.out.println("\nBrowse Doctors");
+    try {
+      String token = null;
+      do {
+        Page<Doctor> page = Doctor.page(token, PAGE_SIZE);
+        page.getItems().forEach(System.out::println);
+        token = page.getNextToken();
+      } while (token != null && nextPageRequested(scanner));
+    } catch (SQLException | UncheckedSQLException e) {
+      System.out.println("Error browsing doctors: " + e.getMessage());
+    }
+  }
+
   // Appointment management methods
   private static void scheduleAppointment(Scanner scanner) {
     System.out.println("\nSchedule Appointment");
@@ -611,13 +798,29 @@ public class Main {
 
   private static void listAllAppointments() {
     System.out.println("\nAll Appointments");
-    try {
-      List<Appointment> appointments = Appointment.getAll();
-      for (Appointment appointment : appointments) {
-        System.out.println(appointment);
-      }
-    } catch (SQLException e) {
+    try (Stream<Appointment> appointments = Appointment.stream()) {
+      appointments.forEach(System.out::println);
+    } catch (SQLException | UncheckedSQLException e) {
       System.out.println("Error listing appointments: " + e.getMessage());
     }
   }
+
+  private static void browseAppointments(Scanner scanner) {
+    System.out.println("\nBrowse Appointments");
+    try {
+      String token = null;
+      do {
+        Page<Appointment> page = Appointment.pageBySchedule(token, PAGE_SIZE);
+        page.getItems().forEach(System.out::println);
+        token = page.getNextToken();
+      } while (token != null && nextPageRequested(scanner));
+    } catch (SQLException | UncheckedSQLException e) {
+      System.out.println("Error browsing appointments: " + e.getMessage());
+    }
+  }
+
+  private static boolean nextPageRequested(Scanner scanner) {
+    System.out.print("Press enter for the next page or q to stop: ");
+    return !scanner.nextLine().trim().equalsIgnoreCase("q");
+  }
 }
@@ -0,0 +1,150 @@
+package com.example.async;
+
+import com.example.DBConnection;
+import com.example.db.CancelScope;
+import com.example.models.Appointment;
+import com.example.models.Doctor;
+import com.example.models.Patient;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Non-blocking facade over the model DAOs for callers that fan out many
+ * lookups at once, e.g.
+ *
+ * <pre>
+ * AsyncDAO dao = AsyncDAO.get();
+ * CompletableFuture&lt;Patient&gt; patient = dao.getPatient(id);
+ * CompletableFuture&lt;List&lt;Appointment&gt;&gt; visits = dao.getAppointmentsForPatient(id);
+ * </pre>
+ *
+ * Each call runs the blocking JDBC code on its own virtual thread when the
+ * JVM provides them (Java 21+) and on a cached platform thread pool
+ * otherwise. At most {@code db.pool.maxSize} calls touch the database at a
+ * time; the rest wait for a permit instead of queueing inside the pool.
+ * Cancelling a returned future issues {@code Statement.cancel()} for the
+ * query it is running.
+ */
+public final class AsyncDAO {
+
+  private static final AsyncDAO INSTANCE = new AsyncDAO(
+    DBConnection.getPool().getMaxSize()
+  );
+
+  private final ExecutorService executor = newExecutor();
+  private final Semaphore permits;
+
+  private AsyncDAO(int maxConcurrency) {
+    this.permits = new Semaphore(maxConcurrency, true);
+  }
+
+  public static AsyncDAO get() {
+    return INSTANCE;
+  }
+
+  public <T> CompletableFuture<T> submit(CancelScope.SqlCall<T> call) {
+    CancelScope scope = new CancelScope();
+    CompletableFuture<T> future = new CompletableFuture<T>() {
+      @Override
+      public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+          scope.cancel();
+        }
+        return cancelled;
+      }
+    };
+    executor.execute(() -> {
+      if (future.isDone()) {
+        return;
+      }
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        future.completeExceptionally(e);
+        return;
+      }
+      try {
+        if (!future.isDone()) {
+          future.complete(scope.run(call));
+        }
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      } finally {
+        permits.release();
+      }
+    });
+    return future;
+  }
+
+  public CompletableFuture<Patient> getPatient(int patientId) {
+    return submit(() -> Patient.getById(patientId));
+  }
+
+  public CompletableFuture<Doctor> getDoctor(int doctorId) {
+    return submit(() -> Doctor.getById(doctorId));
+  }
+
+  public CompletableFuture<Appointment> getAppointment(int appointmentId) {
+    return submit(() -> Appointment.getById(appointmentId));
+  }
+
+  public CompletableFuture<List<Appointment>> getAppointmentsForPatient(
+    int patientId
+  ) {
+    return submit(() -> Appointment.getByPatient(patientId));
+  }
+
+  public CompletableFuture<List<Patient>> getAllPatients() {
+    return submit(Patient::getAll);
+  }
+
+  public CompletableFuture<List<Doctor>> getAllDoctors() {
+    return submit(Doctor::getAll);
+  }
+
+  public CompletableFuture<List<Appointment>> getAllAppointments() {
+    return submit(Appointment::getAll);
+  }
+
+  public CompletableFuture<Patient> save(Patient patient) {
+    return submit(() -> {
+      patient.save();
+      return patient;
+    });
+  }
+
+  public CompletableFuture<Doctor> save(Doctor doctor) {
+    return submit(() -> {
+      doctor.save();
+      return doctor;
+    });
+  }
+
+  public CompletableFuture<Appointment> save(Appointment appointment) {
+    return submit(() -> {
+      appointment.save();
+      return appointment;
+    });
+  }
+
+  private static ExecutorService newExecutor() {
+    // Looked up reflectively so the project still builds for Java 17
+    try {
+      Method factory = Executors.class.getMethod(
+        "newVirtualThreadPerTaskExecutor"
+      );
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "async-dao");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+}
@@ -0,0 +1,325 @@
+package com.example.billing;
+
+import com.example.DBConnection;
+import com.example.db.DBConfig;
+import com.example.metrics.Metrics;
+import com.example.models.AppointmentStatusQueue;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bills every completed appointment that has no bill yet, totalling the
+ * cost of its rows in {@code AppointmentServices}, or charging
+ * {@code billing.defaultFee} for an appointment without any.
+ *
+ * <pre>
+ * java com.example.billing.BillingEngine [--chunk-days N] [--threads N]
+ *     [--default-fee AMOUNT]
+ * </pre>
+ *
+ * The appointments are split into date ranges of
+ * {@code billing.chunkDays} days, plus one for appointments without a
+ * date. Each range is billed by a single {@code INSERT ... SELECT} in its
+ * own transaction on its own connection, up to {@code billing.threads}
+ * ranges at a time. Appointments that already have a bill are skipped, so a
+ * run that failed part way can simply be repeated. A MySQL named lock keeps
+ * two runs from racing each other, and the unique key on
+ * {@code Bills.AppointmentID} (migration V8) makes {@code INSERT IGNORE}
+ * drop any row that another writer, such as {@code GenerateBill}, billed
+ * between the check and the insert.
+ *
+ * Migration V7 retired the {@code GenerateBillAfterCompletion} trigger that
+ * billed every completion at a flat fee, so completed appointments wait
+ * for a run to be billed.
+ */
+public final class BillingEngine {
+
+  private static final String LOCK_NAME = "hospital_billing";
+
+  private static final String UNBILLED =
+    "a.Status = 'Completed' AND NOT EXISTS " +
+    "(SELECT 1 FROM Bills b WHERE b.AppointmentID = a.AppointmentID)";
+  private static final String RANGE_SQL =
+    "SELECT MIN(a.Date), MAX(a.Date) FROM Appointments a WHERE " + UNBILLED;
+  private static final String BILL_SQL =
+    "INSERT IGNORE INTO Bills " +
+    "(AppointmentID, TotalAmount, DateOfPayment, PaymentStatus) " +
+    "SELECT a.AppointmentID, COALESCE(SUM(s.Cost), ?), CURDATE(), 'Unpaid' " +
+    "FROM Appointments a " +
+    "LEFT JOIN AppointmentServices aps ON aps.AppointmentID = a.AppointmentID " +
+    "LEFT JOIN Services s ON s.ServiceID = aps.ServiceID " +
+    "WHERE " +
+    UNBILLED +
+    " AND %s GROUP BY a.AppointmentID";
+
+  /** Outcome of one {@link #run}. */
+  public static final class Result {
+
+    private final long billed;
+    private final int chunks;
+    private final long elapsedNanos;
+
+    Result(long billed, int chunks, long elapsedNanos) {
+      this.billed = billed;
+      this.chunks = chunks;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /** Bills inserted by the run. */
+    public long getBilled() {
+      return billed;
+    }
+
+    public int getChunks() {
+      return chunks;
+    }
+
+    public double getSeconds() {
+      return elapsedNanos / 1_000_000_000.0;
+    }
+
+    /** Bills inserted per second. */
+    public double getThroughput() {
+      return billed / Math.max(getSeconds(), 0.001);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "Billed %d appointment(s) in %d chunk(s) in %.1f s (%.0f bills/s)",
+        billed,
+        chunks,
+        getSeconds(),
+        getThroughput()
+      );
+    }
+  }
+
+  private static final class Chunk {
+
+    // [from, until), or both null for appointments without a date
+    final LocalDate from;
+    final LocalDate until;
+
+    Chunk(LocalDate from, LocalDate until) {
+      this.from = from;
+      this.until = until;
+    }
+  }
+
+  private final int chunkDays;
+  private final int threads;
+  private final BigDecimal defaultFee;
+
+  public BillingEngine(int chunkDays, int threads, BigDecimal defaultFee) {
+    if (chunkDays < 1) {
+      throw new IllegalArgumentException("chunkDays must be positive");
+    }
+    if (defaultFee.signum() < 0) {
+      throw new IllegalArgumentException("defaultFee must not be negative");
+    }
+    this.chunkDays = chunkDays;
+    this.threads = Math.max(1, threads);
+    this.defaultFee = defaultFee;
+  }
+
+  /**
+   * Reads {@code billing.chunkDays}, {@code billing.threads} and
+   * {@code billing.defaultFee}.
+   */
+  public static BillingEngine fromConfig() {
+    DBConfig config = DBConfig.get();
+    return new BillingEngine(
+      config.getInt("billing.chunkDays", 31),
+      config.getInt("billing.threads", 4),
+      defaultFee(config)
+    );
+  }
+
+  private static BigDecimal defaultFee(DBConfig config) {
+    return new BigDecimal(config.getString("billing.defaultFee", "100.00"));
+  }
+
+  public static void main(String[] args) throws Exception {
+    DBConfig config = DBConfig.get();
+    int chunkDays = config.getInt("billing.chunkDays", 31);
+    int threads = config.getInt("billing.threads", 4);
+    BigDecimal defaultFee = defaultFee(config);
+    for (int i = 0; i < args.length; i++) {
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+      String value = args[++i];
+      switch (args[i - 1]) {
+        case "--chunk-days":
+          chunkDays = Integer.parseInt(value);
+          break;
+        case "--threads":
+          threads = Integer.parseInt(value);
+          break;
+        case "--default-fee":
+          defaultFee = new BigDecimal(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+      }
+    }
+
+    try {
+      System.out.println(
+        new BillingEngine(chunkDays, threads, defaultFee).run()
+      );
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  public Result run() throws SQLException {
+    long startedAt = System.nanoTime();
+    // Completions still in the status queue would miss this run
+    AppointmentStatusQueue.get().flush();
+    try (
+      Metrics.Timer timer = Metrics.start("BillingEngine.run");
+      Connection lock = DBConnection.getConnection()
+    ) {
+      acquireLock(lock);
+      try {
+        List<Chunk> chunks = chunks();
+        long billed = billAll(chunks);
+        timer.rows(billed);
+        timer.success();
+        return new Result(billed, chunks.size(), System.nanoTime() - startedAt);
+      } finally {
+        releaseLock(lock);
+      }
+    }
+  }
+
+  private long billAll(List<Chunk> chunks) throws SQLException {
+    // The lock holds one pooled connection for the whole run
+    int workerCount = Math.min(
+      Math.min(threads, chunks.size()),
+      Math.max(1, DBConnection.getPool().getMaxSize() - 1)
+    );
+    if (workerCount <= 1) {
+      long billed = 0;
+      for (Chunk chunk : chunks) {
+        billed += bill(chunk);
+      }
+      return billed;
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+    long billed = 0;
+    try {
+      List<Future<Long>> tasks = new ArrayList<>();
+      for (Chunk chunk : chunks) {
+        tasks.add(workers.submit(() -> bill(chunk)));
+      }
+      for (Future<Long> task : tasks) {
+        try {
+          billed += task.get();
+        } catch (ExecutionException e) {
+          workers.shutdownNow();
+          if (e.getCause() instanceof SQLException) {
+            throw (SQLException) e.getCause();
+          }
+          throw new IllegalStateException("Billing failed", e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new SQLException("Interrupted while billing", e);
+        }
+      }
+    } finally {
+      workers.shutdownNow();
+    }
+    return billed;
+  }
+
+  private List<Chunk> chunks() throws SQLException {
+    List<Chunk> chunks = new ArrayList<>();
+    try (
+      Connection conn = DBConnection.getConnection();
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(RANGE_SQL)
+    ) {
+      if (rs.next() && rs.getDate(1) != null) {
+        LocalDate last = rs.getDate(2).toLocalDate();
+        LocalDate start = rs.getDate(1).toLocalDate();
+        while (!start.isAfter(last)) {
+          LocalDate next = start.plusDays(chunkDays);
+          chunks.add(new Chunk(start, next));
+          start = next;
+        }
+      }
+    }
+    chunks.add(new Chunk(null, null));
+    return chunks;
+  }
+
+  /** Bills one chunk in its own transaction and returns the bills added. */
+  private long bill(Chunk chunk) throws SQLException {
+    String sql = String.format(
+      BILL_SQL,
+      chunk.from == null ? "a.Date IS NULL" : "a.Date >= ? AND a.Date < ?"
+    );
+    try (
+      Metrics.Timer timer = Metrics.start("BillingEngine.chunk");
+      Connection conn = DBConnection.getConnection()
+    ) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        pstmt.setBigDecimal(1, defaultFee);
+        if (chunk.from != null) {
+          pstmt.setDate(2, Date.valueOf(chunk.from));
+          pstmt.setDate(3, Date.valueOf(chunk.until));
+        }
+        int billed = pstmt.executeUpdate();
+        conn.commit();
+        timer.rows(billed);
+        timer.success();
+        return billed;
+      } catch (SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+  }
+
+  private static void acquireLock(Connection conn) throws SQLException {
+    try (
+      PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, 0)")
+    ) {
+      pstmt.setString(1, LOCK_NAME);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        if (!rs.next() || rs.getInt(1) != 1) {
+          throw new SQLException("Another billing run is in progress");
+        }
+      }
+    }
+  }
+
+  private static void releaseLock(Connection conn) throws SQLException {
+    try (
+      PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")
+    ) {
+      pstmt.setString(1, LOCK_NAME);
+      pstmt.executeQuery().close();
+    }
+  }
+}
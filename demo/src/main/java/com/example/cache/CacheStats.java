@@ -0,0 +1,50 @@
+package com.example.cache;
+
+/** Point-in-time counters of an {@link EntityCache}. */
+public class CacheStats {
+
+  private final long hits;
+  private final long misses;
+  private final long evictions;
+  private final int size;
+
+  public CacheStats(long hits, long misses, long evictions, int size) {
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    this.size = size;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getMisses() {
+    return misses;
+  }
+
+  public long getEvictions() {
+    return evictions;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  public double getHitRate() {
+    long requests = hits + misses;
+    return requests == 0 ? 0.0 : (double) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      "size=%d hits=%d misses=%d evictions=%d hitRate=%.1f%%",
+      size,
+      hits,
+      misses,
+      evictions,
+      getHitRate() * 100
+    );
+  }
+}
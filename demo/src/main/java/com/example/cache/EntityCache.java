@@ -0,0 +1,155 @@
+package com.example.cache;
+
+import com.example.db.DBConfig;
+import com.example.metrics.Metrics;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bounded, in-process read-through cache with LRU eviction and an optional
+ * time-to-live.
+ *
+ * Values are copied on the way in and on the way out, so callers can mutate
+ * what they get back (as the update menus do) without touching the cached
+ * entry. Writers keep the cache coherent by calling {@link #put} after a
+ * successful save and {@link #invalidate} after a delete; a load that races
+ * with either is returned to its caller but not cached.
+ */
+public class EntityCache<K, V> {
+
+  public interface Loader<K, V> {
+    V load(K key) throws SQLException;
+  }
+
+  private static final class Entry<V> {
+
+    final V value;
+    final long loadedAt;
+
+    Entry(V value, long loadedAt) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+    }
+  }
+
+  private final int maxSize;
+  private final long ttlNanos;
+  private final UnaryOperator<V> copier;
+  private final LinkedHashMap<K, Entry<V>> entries;
+
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long writes;
+
+  public EntityCache(int maxSize, long ttlSeconds, UnaryOperator<V> copier) {
+    this.maxSize = maxSize;
+    this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    this.copier = copier;
+    this.entries =
+      new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+          if (size() > EntityCache.this.maxSize) {
+            evictions++;
+            return true;
+          }
+          return false;
+        }
+      };
+  }
+
+  /** Reads {@code cache.<name>.maxSize} and {@code cache.<name>.ttlSeconds}. */
+  public static <K, V> EntityCache<K, V> fromConfig(
+    String name,
+    UnaryOperator<V> copier
+  ) {
+    DBConfig config = DBConfig.get();
+    EntityCache<K, V> cache = new EntityCache<>(
+      config.getInt("cache." + name + ".maxSize", 1000),
+      config.getLong("cache." + name + ".ttlSeconds", 0),
+      copier
+    );
+    String prefix = "hms_cache_" + name + "_";
+    Metrics.gauge(
+      prefix + "hits",
+      "Lookups answered by the " + name + " cache",
+      () -> cache.getStats().getHits()
+    );
+    Metrics.gauge(
+      prefix + "misses",
+      "Lookups that went to the database",
+      () -> cache.getStats().getMisses()
+    );
+    Metrics.gauge(
+      prefix + "evictions",
+      "Entries dropped to stay within maxSize",
+      () -> cache.getStats().getEvictions()
+    );
+    Metrics.gauge(
+      prefix + "size",
+      "Entries currently cached",
+      () -> cache.getStats().getSize()
+    );
+    return cache;
+  }
+
+  public V get(K key, Loader<K, V> loader) throws SQLException {
+    long generation;
+    synchronized (this) {
+      if (maxSize > 0) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null) {
+          if (!isExpired(entry)) {
+            hits++;
+            return copier.apply(entry.value);
+          }
+          entries.remove(key);
+        }
+      }
+      misses++;
+      generation = writes;
+    }
+
+    V value = loader.load(key);
+    if (value != null) {
+      synchronized (this) {
+        if (generation == writes) {
+          store(key, value);
+        }
+      }
+    }
+    return value;
+  }
+
+  public synchronized void put(K key, V value) {
+    writes++;
+    store(key, value);
+  }
+
+  public synchronized void invalidate(K key) {
+    writes++;
+    entries.remove(key);
+  }
+
+  public synchronized void invalidateAll() {
+    writes++;
+    entries.clear();
+  }
+
+  public synchronized CacheStats getStats() {
+    return new CacheStats(hits, misses, evictions, entries.size());
+  }
+
+  private void store(K key, V value) {
+    if (maxSize > 0) {
+      entries.put(key, new Entry<>(copier.apply(value), System.nanoTime()));
+    }
+  }
+
+  private boolean isExpired(Entry<V> entry) {
+    return ttlNanos > 0 && System.nanoTime() - entry.loadedAt >= ttlNanos;
+  }
+}
@@ -0,0 +1,141 @@
+package com.example.cache;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from {@code int} keys to non-null values, using open addressing
+ * with linear probing.
+ *
+ * Keys sit in a plain {@code int[]} next to the value array, so an entry
+ * costs two array slots instead of the boxed key and node object of a
+ * {@code HashMap<Integer, V>}. Not thread-safe.
+ */
+public final class IntObjectMap<V> {
+
+  private static final int MIN_CAPACITY = 16;
+
+  private int[] keys;
+  private Object[] values;
+  private int mask;
+  private int size;
+  private int resizeAt;
+
+  public IntObjectMap() {
+    this(MIN_CAPACITY / 2);
+  }
+
+  public IntObjectMap(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V get(int key) {
+    for (int i = slot(key);; i = (i + 1) & mask) {
+      Object value = values[i];
+      if (value == null) {
+        return null;
+      }
+      if (keys[i] == key) {
+        return (V) value;
+      }
+    }
+  }
+
+  /** Stores {@code value} and returns the previous value, if any. */
+  @SuppressWarnings("unchecked")
+  public V put(int key, V value) {
+    if (value == null) {
+      throw new NullPointerException("value");
+    }
+    int i = slot(key);
+    for (; values[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        V previous = (V) values[i];
+        values[i] = value;
+        return previous;
+      }
+    }
+    keys[i] = key;
+    values[i] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  public V remove(int key) {
+    for (int i = slot(key);; i = (i + 1) & mask) {
+      Object value = values[i];
+      if (value == null) {
+        return null;
+      }
+      if (keys[i] == key) {
+        closeGap(i);
+        size--;
+        return (V) value;
+      }
+    }
+  }
+
+  public void clear() {
+    Arrays.fill(values, null);
+    size = 0;
+  }
+
+  // Shifts back the entries after a removed slot that probed past it, so
+  // every lookup still finds its key before the first empty slot
+  private void closeGap(int gap) {
+    for (int i = (gap + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+      int home = slot(keys[i]);
+      if (((i - home) & mask) >= ((i - gap) & mask)) {
+        keys[gap] = keys[i];
+        values[gap] = values[i];
+        gap = i;
+      }
+    }
+    values[gap] = null;
+  }
+
+  private int slot(int key) {
+    int hash = key * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private void rehash(int capacity) {
+    int[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldValues.length; i++) {
+      if (oldValues[i] != null) {
+        int j = slot(oldKeys[i]);
+        while (values[j] != null) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        values[j] = oldValues[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    // Keep the table at most three quarters full
+    resizeAt = capacity - (capacity >>> 2);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int needed = Math.max(MIN_CAPACITY, (int) Math.ceil(expectedSize / 0.75));
+    return Integer.highestOneBit(needed - 1) << 1;
+  }
+}
@@ -0,0 +1,217 @@
+package com.example.cache;
+
+import com.example.DBConnection;
+import com.example.db.DBConfig;
+import com.example.db.InList;
+import com.example.metrics.Metrics;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * In-memory id-to-name dictionary for one table, so rows that refer to a
+ * patient or doctor can be shown by name without joining.
+ *
+ * Entries are added as they are looked up: {@link #resolve} answers what it
+ * holds and reads every missing id with one {@code IN (...)} query per
+ * {@link InList#MAX_SIZE} ids. Writers keep it current by calling
+ * {@link #put} after a save and {@link #remove} after a delete; as in
+ * {@link EntityCache}, names read while such a write happened are returned
+ * but not kept. Past {@code names.<name>.maxSize} entries the dictionary is
+ * cleared and fills again from later lookups.
+ */
+public final class NameDictionary {
+
+  private final String operation;
+  private final String selectSql;
+  private final int maxSize;
+  private final IntObjectMap<String> names = new IntObjectMap<>();
+
+  private long hits;
+  private long misses;
+  private long writes;
+
+  private NameDictionary(
+    String name,
+    String table,
+    String idColumn,
+    String nameColumn,
+    int maxSize
+  ) {
+    this.operation = "NameDictionary." + name;
+    this.selectSql =
+      "SELECT " +
+      idColumn +
+      ", " +
+      nameColumn +
+      " FROM " +
+      table +
+      " WHERE " +
+      idColumn +
+      " IN (";
+    this.maxSize = maxSize;
+  }
+
+  /** Reads {@code names.<name>.maxSize}. */
+  public static NameDictionary fromConfig(
+    String name,
+    String table,
+    String idColumn,
+    String nameColumn
+  ) {
+    NameDictionary dictionary = new NameDictionary(
+      name,
+      table,
+      idColumn,
+      nameColumn,
+      DBConfig.get().getInt("names." + name + ".maxSize", 100_000)
+    );
+    String prefix = "hms_names_" + name + "_";
+    Metrics.gauge(
+      prefix + "hits",
+      "Ids resolved from the " + name + " name dictionary",
+      dictionary::getHits
+    );
+    Metrics.gauge(
+      prefix + "misses",
+      "Ids whose name was read from the database",
+      dictionary::getMisses
+    );
+    Metrics.gauge(
+      prefix + "size",
+      "Names currently held",
+      dictionary::size
+    );
+    return dictionary;
+  }
+
+  /**
+   * Names for {@code ids}, which may repeat. Ids without a row are left out
+   * of the result.
+   */
+  public IntObjectMap<String> resolve(int[] ids) throws SQLException {
+    int[] distinct = distinct(ids);
+    IntObjectMap<String> found = new IntObjectMap<>(distinct.length);
+    int[] missing = new int[distinct.length];
+    int missingCount = 0;
+    long generation;
+    synchronized (this) {
+      for (int id : distinct) {
+        String name = names.get(id);
+        if (name != null) {
+          found.put(id, name);
+        } else {
+          missing[missingCount++] = id;
+        }
+      }
+      hits += distinct.length - missingCount;
+      misses += missingCount;
+      generation = writes;
+    }
+    if (missingCount == 0) {
+      return found;
+    }
+
+    IntObjectMap<String> loaded = load(missing, missingCount);
+    synchronized (this) {
+      boolean keep = generation == writes;
+      for (int i = 0; i < missingCount; i++) {
+        String name = loaded.get(missing[i]);
+        if (name != null) {
+          found.put(missing[i], name);
+          if (keep) {
+            store(missing[i], name);
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  public synchronized void put(int id, String name) {
+    writes++;
+    if (name == null) {
+      names.remove(id);
+    } else {
+      store(id, name);
+    }
+  }
+
+  public synchronized void remove(int id) {
+    writes++;
+    names.remove(id);
+  }
+
+  public synchronized void clear() {
+    writes++;
+    names.clear();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized int size() {
+    return names.size();
+  }
+
+  private void store(int id, String name) {
+    if (maxSize <= 0) {
+      return;
+    }
+    if (names.size() >= maxSize && names.get(id) == null) {
+      names.clear();
+    }
+    names.put(id, name);
+  }
+
+  private IntObjectMap<String> load(int[] ids, int count)
+    throws SQLException {
+    IntObjectMap<String> loaded = new IntObjectMap<>(count);
+    try (
+      Metrics.Timer timer = Metrics.start(operation);
+      Connection conn = DBConnection.getConnection()
+    ) {
+      for (int from = 0; from < count; from += InList.MAX_SIZE) {
+        int chunk = Math.min(InList.MAX_SIZE, count - from);
+        int size = InList.size(chunk);
+        try (
+          PreparedStatement pstmt = conn.prepareStatement(
+            selectSql + InList.placeholders(size) + ")"
+          )
+        ) {
+          InList.bind(pstmt, 1, ids, from, chunk, size);
+          try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+              String name = rs.getString(2);
+              if (name != null) {
+                loaded.put(rs.getInt(1), name);
+              }
+            }
+          }
+        }
+      }
+      timer.rows(loaded.size());
+      timer.success();
+    }
+    return loaded;
+  }
+
+  private static int[] distinct(int[] ids) {
+    int[] sorted = ids.clone();
+    Arrays.sort(sorted);
+    int count = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[count++] = sorted[i];
+      }
+    }
+    return Arrays.copyOf(sorted, count);
+  }
+}
@@ -0,0 +1,59 @@
+package com.example.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a bulk write: the rows that were stored and, for every row that
+ * was rejected, the error the database reported for it.
+ */
+public class BatchResult<T> {
+
+  private final List<T> saved = new ArrayList<>();
+  private final List<Failure<T>> failures = new ArrayList<>();
+
+  void addSaved(List<T> rows) {
+    saved.addAll(rows);
+  }
+
+  void addFailure(T row, SQLException error) {
+    failures.add(new Failure<>(row, error));
+  }
+
+  public List<T> getSaved() {
+    return Collections.unmodifiableList(saved);
+  }
+
+  public int getSavedCount() {
+    return saved.size();
+  }
+
+  public List<Failure<T>> getFailures() {
+    return Collections.unmodifiableList(failures);
+  }
+
+  public boolean hasFailures() {
+    return !failures.isEmpty();
+  }
+
+  public static class Failure<T> {
+
+    private final T row;
+    private final SQLException error;
+
+    Failure(T row, SQLException error) {
+      this.row = row;
+      this.error = error;
+    }
+
+    public T getRow() {
+      return row;
+    }
+
+    public SQLException getError() {
+      return error;
+    }
+  }
+}
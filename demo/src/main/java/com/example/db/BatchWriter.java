@@ -0,0 +1,164 @@
+package com.example.db;
+
+import com.example.DBConnection;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes rows with JDBC batching, one transaction per chunk of
+ * {@code batchSize} rows.
+ *
+ * When a chunk fails it is rolled back and replayed row by row behind
+ * savepoints, so only the offending rows are reported as failures and the
+ * rest of the chunk is still committed.
+ */
+public final class BatchWriter {
+
+  public interface Binder<T> {
+    void bind(T row, PreparedStatement pstmt) throws SQLException;
+  }
+
+  public interface KeySetter<T> {
+    void setKey(T row, int key);
+  }
+
+  private BatchWriter() {}
+
+  public static int defaultBatchSize() {
+    return DBConfig.get().getInt("db.batchSize", 500);
+  }
+
+  /**
+   * @param keySetter receives the generated key of every inserted row, or
+   *     {@code null} when the statement does not generate keys
+   */
+  public static <T> void write(
+    String sql,
+    List<T> rows,
+    int batchSize,
+    Binder<T> binder,
+    KeySetter<T> keySetter,
+    BatchResult<T> result
+  ) throws SQLException {
+    if (rows.isEmpty()) {
+      return;
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("batchSize must be positive");
+    }
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = keySetter == null
+        ? conn.prepareStatement(sql)
+        : conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+    ) {
+      conn.setAutoCommit(false);
+      for (int from = 0; from < rows.size(); from += batchSize) {
+        List<T> chunk = rows.subList(
+          from,
+          Math.min(rows.size(), from + batchSize)
+        );
+        try {
+          writeChunk(conn, pstmt, chunk, binder, keySetter);
+          result.addSaved(chunk);
+        } catch (SQLException e) {
+          conn.rollback();
+          pstmt.clearBatch();
+          writeRowByRow(conn, pstmt, chunk, binder, keySetter, result);
+        }
+      }
+    }
+  }
+
+  /** Reports rows that needed no write, such as unchanged updates, as saved. */
+  public static <T> void skip(List<T> rows, BatchResult<T> result) {
+    result.addSaved(rows);
+  }
+
+  private static <T> void writeChunk(
+    Connection conn,
+    PreparedStatement pstmt,
+    List<T> chunk,
+    Binder<T> binder,
+    KeySetter<T> keySetter
+  ) throws SQLException {
+    for (T row : chunk) {
+      binder.bind(row, pstmt);
+      pstmt.addBatch();
+    }
+    pstmt.executeBatch();
+
+    int[] keys = keySetter == null ? null : readKeys(pstmt, chunk.size());
+    conn.commit();
+    if (keys != null) {
+      for (int i = 0; i < keys.length; i++) {
+        keySetter.setKey(chunk.get(i), keys[i]);
+      }
+    }
+  }
+
+  private static <T> void writeRowByRow(
+    Connection conn,
+    PreparedStatement pstmt,
+    List<T> chunk,
+    Binder<T> binder,
+    KeySetter<T> keySetter,
+    BatchResult<T> result
+  ) throws SQLException {
+    List<T> written = new ArrayList<>();
+    List<Integer> keys = new ArrayList<>();
+    for (T row : chunk) {
+      Savepoint savepoint = conn.setSavepoint();
+      try {
+        binder.bind(row, pstmt);
+        pstmt.executeUpdate();
+        if (keySetter != null) {
+          keys.add(readKeys(pstmt, 1)[0]);
+        }
+        written.add(row);
+      } catch (SQLException e) {
+        conn.rollback(savepoint);
+        result.addFailure(row, e);
+      }
+    }
+
+    try {
+      conn.commit();
+    } catch (SQLException e) {
+      conn.rollback();
+      for (T row : written) {
+        result.addFailure(row, e);
+      }
+      return;
+    }
+    if (keySetter != null) {
+      for (int i = 0; i < written.size(); i++) {
+        keySetter.setKey(written.get(i), keys.get(i));
+      }
+    }
+    result.addSaved(written);
+  }
+
+  private static int[] readKeys(PreparedStatement pstmt, int expected)
+    throws SQLException {
+    int[] keys = new int[expected];
+    int count = 0;
+    try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+      while (generatedKeys.next() && count < expected) {
+        keys[count++] = generatedKeys.getInt(1);
+      }
+    }
+    if (count != expected) {
+      throw new SQLException(
+        "Expected " + expected + " generated keys but got " + count
+      );
+    }
+    return keys;
+  }
+}
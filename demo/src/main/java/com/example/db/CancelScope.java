@@ -0,0 +1,89 @@
+package com.example.db;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Lets another thread cancel the JDBC work a task is doing.
+ *
+ * While a scope is {@linkplain #run active} on a thread, every statement
+ * created on connections that thread borrows is registered here, and
+ * {@link #cancel()} calls {@link Statement#cancel()} on them. Statements are
+ * dropped from the scope when their connection goes back to the pool, so a
+ * late cancel can never hit a query another borrower is running.
+ */
+public final class CancelScope {
+
+  public interface SqlCall<T> {
+    T call() throws SQLException;
+  }
+
+  private static final ThreadLocal<CancelScope> CURRENT = new ThreadLocal<>();
+
+  private static final class Registration {
+
+    final Object owner;
+    final Statement statement;
+
+    Registration(Object owner, Statement statement) {
+      this.owner = owner;
+      this.statement = statement;
+    }
+  }
+
+  private final List<Registration> statements = new ArrayList<>();
+  private boolean cancelled;
+
+  static CancelScope current() {
+    return CURRENT.get();
+  }
+
+  public <T> T run(SqlCall<T> call) throws SQLException {
+    CancelScope previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return call.call();
+    } finally {
+      CURRENT.set(previous);
+    }
+  }
+
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  public synchronized void cancel() {
+    if (cancelled) {
+      return;
+    }
+    cancelled = true;
+    for (Registration registration : statements) {
+      try {
+        registration.statement.cancel();
+      } catch (SQLException ignored) {
+        // The statement finished or was closed in the meantime
+      }
+    }
+  }
+
+  synchronized void register(Object owner, Statement statement)
+    throws SQLException {
+    if (cancelled) {
+      statement.close();
+      throw new SQLException("Operation cancelled", "70100");
+    }
+    statements.add(new Registration(owner, statement));
+  }
+
+  synchronized void releaseAll(Object owner) {
+    Iterator<Registration> it = statements.iterator();
+    while (it.hasNext()) {
+      if (it.next().owner == owner) {
+        it.remove();
+      }
+    }
+  }
+}
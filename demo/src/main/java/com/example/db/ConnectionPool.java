@@ -0,0 +1,289 @@
+package com.example.db;
+
+import com.example.cache.CacheStats;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded JDBC connection pool.
+ *
+ * Idle connections are kept in a LIFO deque so the most recently used ones
+ * are handed out first and the rest age out through idle eviction. A
+ * background housekeeper keeps {@code minIdle} connections warm, retires
+ * connections past {@code maxLifetime} and reports connections held longer
+ * than the leak detection threshold.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+  private static final Logger LOG = Logger.getLogger(
+    ConnectionPool.class.getName()
+  );
+
+  // Longest a waiting borrower sleeps before checking for a free slot
+  private static final long WAIT_SLICE_MS = 100;
+
+  private final String url;
+  private final String user;
+  private final String password;
+  private final int minIdle;
+  private final int maxSize;
+  private final long connectionTimeoutMs;
+  private final long idleTimeoutMs;
+  private final long maxLifetimeMs;
+  private final long leakDetectionThresholdMs;
+  private final int validationTimeoutSeconds;
+  private final int statementCacheSize;
+
+  private final LinkedBlockingDeque<PooledConnection> idle =
+    new LinkedBlockingDeque<>();
+  private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger total = new AtomicInteger();
+  private final ScheduledExecutorService housekeeper;
+
+  private volatile boolean closed;
+
+  public ConnectionPool(DBConfig config) {
+    this.url = config.getString(
+      "db.url",
+      "jdbc:mysql://localhost:3306/hospital_management_system"
+    );
+    this.user = config.getString("db.user", "root");
+    this.password = config.getString("db.password", "");
+    this.maxSize = Math.max(1, config.getInt("db.pool.maxSize", 10));
+    this.minIdle = Math.min(maxSize, config.getInt("db.pool.minIdle", 2));
+    this.connectionTimeoutMs = config.getLong(
+      "db.pool.connectionTimeoutMs",
+      30_000
+    );
+    this.idleTimeoutMs = config.getLong("db.pool.idleTimeoutMs", 600_000);
+    this.maxLifetimeMs = config.getLong("db.pool.maxLifetimeMs", 1_800_000);
+    this.leakDetectionThresholdMs = config.getLong(
+      "db.pool.leakDetectionThresholdMs",
+      0
+    );
+    this.validationTimeoutSeconds = config.getInt(
+      "db.pool.validationTimeoutSeconds",
+      2
+    );
+    this.statementCacheSize = config.getInt("db.statementCacheSize", 64);
+
+    long interval = config.getLong("db.pool.housekeepingIntervalMs", 30_000);
+    this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "db-pool-housekeeper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    housekeeper.scheduleWithFixedDelay(
+      this::housekeep,
+      0,
+      interval,
+      TimeUnit.MILLISECONDS
+    );
+  }
+
+  public Connection borrow() throws SQLException {
+    long deadline = System.currentTimeMillis() + connectionTimeoutMs;
+    while (true) {
+      if (closed) {
+        throw new SQLException("Connection pool is closed");
+      }
+      PooledConnection pooled = idle.pollFirst();
+      if (pooled == null && reserve()) {
+        pooled = create();
+      } else {
+        if (pooled == null) {
+          long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            throw new SQLTransientConnectionException(
+              "No connection available within " +
+              connectionTimeoutMs +
+              " ms (pool size " +
+              maxSize +
+              ")"
+            );
+          }
+          try {
+            // A connection destroyed on release frees a slot without being
+            // offered back, so wait in slices and try to reserve again
+            pooled =
+              idle.pollFirst(
+                Math.min(remaining, WAIT_SLICE_MS),
+                TimeUnit.MILLISECONDS
+              );
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException(
+              "Interrupted while waiting for a connection"
+            );
+          }
+          if (pooled == null) {
+            continue;
+          }
+        }
+        if (isExpired(pooled) || !isValid(pooled)) {
+          destroy(pooled);
+          continue;
+        }
+      }
+      borrowed.add(pooled);
+      return pooled.checkout(leakDetectionThresholdMs > 0);
+    }
+  }
+
+  void release(PooledConnection pooled) {
+    borrowed.remove(pooled);
+    pooled.checkin();
+    if (closed || isExpired(pooled) || !reset(pooled)) {
+      destroy(pooled);
+      return;
+    }
+    idle.offerFirst(pooled);
+  }
+
+  private boolean reset(PooledConnection pooled) {
+    Connection physical = pooled.getPhysical();
+    try {
+      if (physical.isClosed()) {
+        return false;
+      }
+      if (!physical.getAutoCommit()) {
+        physical.rollback();
+        physical.setAutoCommit(true);
+      }
+      if (physical.isReadOnly()) {
+        physical.setReadOnly(false);
+      }
+      physical.clearWarnings();
+      return true;
+    } catch (SQLException e) {
+      LOG.log(Level.FINE, "Discarding connection that failed to reset", e);
+      return false;
+    }
+  }
+
+  private boolean reserve() {
+    while (true) {
+      int current = total.get();
+      if (current >= maxSize) {
+        return false;
+      }
+      if (total.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private PooledConnection create() throws SQLException {
+    try {
+      return new PooledConnection(
+        this,
+        DriverManager.getConnection(url, user, password),
+        statementCacheSize
+      );
+    } catch (SQLException | RuntimeException e) {
+      total.decrementAndGet();
+      throw e;
+    }
+  }
+
+  private void destroy(PooledConnection pooled) {
+    total.decrementAndGet();
+    pooled.closePhysical();
+  }
+
+  private boolean isExpired(PooledConnection pooled) {
+    return (
+      maxLifetimeMs > 0 &&
+      System.currentTimeMillis() - pooled.getCreatedAt() >= maxLifetimeMs
+    );
+  }
+
+  private boolean isValid(PooledConnection pooled) {
+    try {
+      return pooled.getPhysical().isValid(validationTimeoutSeconds);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private void housekeep() {
+    try {
+      long now = System.currentTimeMillis();
+      for (PooledConnection pooled : idle) {
+        boolean idleTooLong =
+          idleTimeoutMs > 0 &&
+          now - pooled.getLastReturnedAt() >= idleTimeoutMs &&
+          total.get() > minIdle;
+        if ((idleTooLong || isExpired(pooled)) && idle.remove(pooled)) {
+          destroy(pooled);
+        }
+      }
+
+      while (!closed && idle.size() < minIdle && reserve()) {
+        idle.offerLast(create());
+      }
+
+      if (leakDetectionThresholdMs > 0) {
+        for (PooledConnection pooled : borrowed) {
+          if (
+            !pooled.isLeakReported() &&
+            now - pooled.getBorrowedAt() >= leakDetectionThresholdMs
+          ) {
+            pooled.markLeakReported();
+            LOG.log(
+              Level.WARNING,
+              "Possible connection leak: connection held for more than " +
+              leakDetectionThresholdMs +
+              " ms",
+              pooled.getBorrowTrace()
+            );
+          }
+        }
+      }
+    } catch (SQLException | RuntimeException e) {
+      LOG.log(Level.WARNING, "Connection pool housekeeping failed", e);
+    }
+  }
+
+  public int getTotalConnections() {
+    return total.get();
+  }
+
+  public int getIdleConnections() {
+    return idle.size();
+  }
+
+  public int getActiveConnections() {
+    return borrowed.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Prepared statement cache counters across all pooled connections. */
+  public static CacheStats getStatementCacheStats() {
+    return StatementCache.getStats();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    housekeeper.shutdownNow();
+    PooledConnection pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      destroy(pooled);
+    }
+  }
+}
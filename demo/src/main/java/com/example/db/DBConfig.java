@@ -0,0 +1,103 @@
+package com.example.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Runtime settings for the database layer.
+ *
+ * Values are looked up in this order: JVM system property (for example
+ * {@code -Ddb.url=...}), environment variable ({@code DB_URL}), the file named
+ * by {@code -Ddb.config=/path/to/db.properties}, and finally the
+ * {@code db.properties} bundled on the classpath.
+ */
+public final class DBConfig {
+
+  private static final String RESOURCE = "db.properties";
+  private static final String EXTERNAL_FILE_PROPERTY = "db.config";
+
+  private static volatile DBConfig instance;
+
+  private final Properties properties;
+
+  private DBConfig(Properties properties) {
+    this.properties = properties;
+  }
+
+  public static DBConfig get() {
+    DBConfig config = instance;
+    if (config == null) {
+      synchronized (DBConfig.class) {
+        config = instance;
+        if (config == null) {
+          config = new DBConfig(load());
+          instance = config;
+        }
+      }
+    }
+    return config;
+  }
+
+  private static Properties load() {
+    Properties properties = new Properties();
+    try (
+      InputStream in = DBConfig.class.getClassLoader().getResourceAsStream(
+        RESOURCE
+      )
+    ) {
+      if (in != null) {
+        properties.load(in);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot read " + RESOURCE, e);
+    }
+
+    String external = System.getProperty(EXTERNAL_FILE_PROPERTY);
+    if (external != null && !external.isEmpty()) {
+      Path path = Paths.get(external);
+      try (InputStream in = Files.newInputStream(path)) {
+        properties.load(in);
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot read " + path, e);
+      }
+    }
+    return properties;
+  }
+
+  public String getString(String key, String defaultValue) {
+    String value = System.getProperty(key);
+    if (value == null) {
+      value = System.getenv(key.toUpperCase().replace('.', '_'));
+    }
+    if (value == null) {
+      value = properties.getProperty(key);
+    }
+    return value == null ? defaultValue : value.trim();
+  }
+
+  public int getInt(String key, int defaultValue) {
+    String value = getString(key, null);
+    return value == null || value.isEmpty()
+      ? defaultValue
+      : Integer.parseInt(value);
+  }
+
+  public long getLong(String key, long defaultValue) {
+    String value = getString(key, null);
+    return value == null || value.isEmpty()
+      ? defaultValue
+      : Long.parseLong(value);
+  }
+
+  public boolean getBoolean(String key, boolean defaultValue) {
+    String value = getString(key, null);
+    return value == null || value.isEmpty()
+      ? defaultValue
+      : Boolean.parseBoolean(value);
+  }
+}
@@ -0,0 +1,78 @@
+package com.example.db;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Helpers for {@code WHERE id IN (?, ...)} lookups.
+ *
+ * Lists are sent in chunks of at most {@link #MAX_SIZE} ids, and every chunk
+ * is padded to a power of two by repeating its last id. That keeps the
+ * number of distinct SQL texts small (ten sizes from 1 to 512), so they stay
+ * in the per-connection statement cache instead of being prepared afresh for
+ * every list length.
+ */
+public final class InList {
+
+  public static final int MAX_SIZE = 512;
+
+  private static final String[] PLACEHOLDERS = new String[MAX_SIZE + 1];
+
+  private InList() {}
+
+  /** Padded size for a chunk of {@code count} ids. */
+  public static int size(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("count must be positive");
+    }
+    if (count >= MAX_SIZE) {
+      return MAX_SIZE;
+    }
+    int size = Integer.highestOneBit(count);
+    return size == count ? size : size << 1;
+  }
+
+  /** {@code "?, ?, ?"} with {@code size} markers. */
+  public static String placeholders(int size) {
+    String placeholders = PLACEHOLDERS[size];
+    if (placeholders == null) {
+      StringBuilder builder = new StringBuilder(size * 3);
+      for (int i = 0; i < size; i++) {
+        builder.append(i == 0 ? "?" : ", ?");
+      }
+      placeholders = builder.toString();
+      PLACEHOLDERS[size] = placeholders;
+    }
+    return placeholders;
+  }
+
+  /**
+   * Binds {@code ids} from parameter {@code index} on, then repeats the last
+   * id up to {@code size} parameters.
+   */
+  public static void bind(
+    PreparedStatement pstmt,
+    int index,
+    List<Integer> ids,
+    int size
+  ) throws SQLException {
+    for (int i = 0; i < size; i++) {
+      pstmt.setInt(index + i, ids.get(Math.min(i, ids.size() - 1)));
+    }
+  }
+
+  /** As above, for the {@code count} ids of {@code ids} from {@code from}. */
+  public static void bind(
+    PreparedStatement pstmt,
+    int index,
+    int[] ids,
+    int from,
+    int count,
+    int size
+  ) throws SQLException {
+    for (int i = 0; i < size; i++) {
+      pstmt.setInt(index + i, ids[from + Math.min(i, count - 1)]);
+    }
+  }
+}
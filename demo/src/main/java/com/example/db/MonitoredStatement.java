@@ -0,0 +1,106 @@
+package com.example.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Times the execute methods of a statement for {@link SlowQueryLog} and
+ * remembers the parameters bound through the indexed setters, so a slow
+ * execution can be logged with the values it ran with.
+ */
+final class MonitoredStatement implements InvocationHandler {
+
+  private static final Object[] NO_PARAMETERS = new Object[0];
+
+  private final Statement statement;
+  private final String sql;
+  private Object[] parameters = NO_PARAMETERS;
+  private int parameterCount;
+  private int batchSize;
+
+  MonitoredStatement(Statement statement, String sql) {
+    this.statement = statement;
+    this.sql = sql;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args)
+    throws Throwable {
+    String name = method.getName();
+    if (name.startsWith("execute")) {
+      return execute(method, args);
+    }
+    if (
+      name.startsWith("set") &&
+      args != null &&
+      args.length >= 2 &&
+      method.getParameterTypes()[0] == int.class
+    ) {
+      bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+    } else if (name.equals("clearParameters")) {
+      Arrays.fill(parameters, null);
+      parameterCount = 0;
+    } else if (name.equals("addBatch") && (args == null || args.length == 0)) {
+      batchSize++;
+    } else if (name.equals("clearBatch")) {
+      batchSize = 0;
+    } else if (name.equals("equals")) {
+      return proxy == args[0];
+    } else if (name.equals("hashCode")) {
+      return System.identityHashCode(proxy);
+    }
+    try {
+      return method.invoke(statement, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private Object execute(Method method, Object[] args) throws Throwable {
+    long startedAt = System.nanoTime();
+    boolean failed = true;
+    try {
+      Object result = method.invoke(statement, args);
+      failed = false;
+      return result;
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    } finally {
+      long elapsed = System.nanoTime() - startedAt;
+      boolean batch = method.getName().endsWith("Batch");
+      if (SlowQueryLog.isSlow(elapsed)) {
+        // A plain Statement passes its SQL to execute; a prepared one was
+        // created with it
+        String executed = sql != null
+          ? sql
+          : args != null && args.length > 0 && args[0] instanceof String
+            ? (String) args[0]
+            : null;
+        SlowQueryLog.record(
+          executed,
+          sql == null ? null : Arrays.copyOf(parameters, parameterCount),
+          batch ? batchSize : 0,
+          elapsed,
+          failed
+        );
+      }
+      if (batch) {
+        batchSize = 0;
+      }
+    }
+  }
+
+  private void bind(int index, Object value) {
+    if (index < 1) {
+      return;
+    }
+    if (index > parameters.length) {
+      parameters = Arrays.copyOf(parameters, Math.max(index, 8));
+    }
+    parameters[index - 1] = value;
+    parameterCount = Math.max(parameterCount, index);
+  }
+}
@@ -0,0 +1,33 @@
+package com.example.db;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset ("seek") paginated listing. The next page is fetched
+ * with {@link #getNextToken()}, which encodes the sort key of the last row,
+ * so every page costs the same index range scan however deep the caller is.
+ */
+public class Page<T> {
+
+  private final List<T> items;
+  private final String nextToken;
+
+  public Page(List<T> items, String nextToken) {
+    this.items = Collections.unmodifiableList(items);
+    this.nextToken = nextToken;
+  }
+
+  public List<T> getItems() {
+    return items;
+  }
+
+  /** Continuation token for the following page, or null on the last page. */
+  public String getNextToken() {
+    return nextToken;
+  }
+
+  public boolean hasNext() {
+    return nextToken != null;
+  }
+}
@@ -0,0 +1,47 @@
+package com.example.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque continuation tokens for {@link Page}: the sort key values of the
+ * last row on a page, joined and URL-safe Base64 encoded.
+ */
+public final class PageToken {
+
+  private static final String SEPARATOR = "|";
+
+  private PageToken() {}
+
+  public static String encode(Object... keyValues) {
+    StringBuilder sb = new StringBuilder();
+    for (Object value : keyValues) {
+      if (sb.length() > 0) {
+        sb.append(SEPARATOR);
+      }
+      sb.append(value);
+    }
+    return Base64
+      .getUrlEncoder()
+      .withoutPadding()
+      .encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static String[] decode(String token, int expectedParts) {
+    String raw;
+    try {
+      raw =
+        new String(
+          Base64.getUrlDecoder().decode(token),
+          StandardCharsets.UTF_8
+        );
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Malformed page token: " + token, e);
+    }
+    String[] parts = raw.split("\\" + SEPARATOR, -1);
+    if (parts.length != expectedParts) {
+      throw new IllegalArgumentException("Malformed page token: " + token);
+    }
+    return parts;
+  }
+}
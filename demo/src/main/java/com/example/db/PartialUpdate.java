@@ -0,0 +1,84 @@
+package com.example.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Builds {@code UPDATE ... SET} statements that write only some columns of a
+ * table.
+ *
+ * Columns are identified by their bit in a mask ({@code 1 << index} in the
+ * constructor's column list), which is how the models track fields changed
+ * since load. Each distinct mask's SQL is built once and reused, so the
+ * statement cache sees the same text for the same set of columns.
+ */
+public final class PartialUpdate {
+
+  private final String table;
+  private final String idColumn;
+  private final String[] columns;
+  private final AtomicReferenceArray<String> statements;
+
+  public PartialUpdate(String table, String idColumn, String... columns) {
+    if (columns.length > 16) {
+      throw new IllegalArgumentException("Too many columns for a mask cache");
+    }
+    this.table = table;
+    this.idColumn = idColumn;
+    this.columns = columns.clone();
+    this.statements = new AtomicReferenceArray<>(1 << columns.length);
+  }
+
+  /** Mask with every column's bit set. */
+  public int allColumns() {
+    return (1 << columns.length) - 1;
+  }
+
+  /** Names of the columns in {@code mask}, in constructor order. */
+  public List<String> columns(int mask) {
+    List<String> names = new ArrayList<>(Integer.bitCount(mask));
+    for (int i = 0; i < columns.length; i++) {
+      if ((mask & (1 << i)) != 0) {
+        names.add(columns[i]);
+      }
+    }
+    return names;
+  }
+
+  /** Bit of {@code column} in a mask, or {@code 0} for none. */
+  public int mask(String column) {
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].equalsIgnoreCase(column)) {
+        return 1 << i;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * {@code UPDATE table SET <masked columns> = ? ... WHERE idColumn = ?},
+   * with the columns in constructor order.
+   */
+  public String sql(int mask) {
+    if (mask <= 0 || mask > allColumns()) {
+      throw new IllegalArgumentException("Bad column mask " + mask);
+    }
+    String sql = statements.get(mask);
+    if (sql == null) {
+      StringBuilder builder = new StringBuilder("UPDATE ")
+        .append(table)
+        .append(" SET ");
+      String separator = "";
+      for (int i = 0; i < columns.length; i++) {
+        if ((mask & (1 << i)) != 0) {
+          builder.append(separator).append(columns[i]).append(" = ?");
+          separator = ", ";
+        }
+      }
+      sql = builder.append(" WHERE ").append(idColumn).append(" = ?").toString();
+      statements.compareAndSet(mask, null, sql);
+    }
+    return sql;
+  }
+}
@@ -0,0 +1,168 @@
+package com.example.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A physical connection owned by {@link ConnectionPool}, together with the
+ * bookkeeping the pool needs for eviction and leak detection.
+ */
+final class PooledConnection {
+
+  private final ConnectionPool pool;
+  private final Connection physical;
+  private final long createdAt;
+  private final StatementCache statementCache;
+
+  private volatile long lastReturnedAt;
+  private volatile long borrowedAt;
+  private volatile Throwable borrowTrace;
+  private volatile boolean leakReported;
+
+  PooledConnection(
+    ConnectionPool pool,
+    Connection physical,
+    int statementCacheSize
+  ) {
+    this.pool = pool;
+    this.physical = physical;
+    this.statementCache = new StatementCache(physical, statementCacheSize);
+    this.createdAt = System.currentTimeMillis();
+    this.lastReturnedAt = createdAt;
+  }
+
+  Connection getPhysical() {
+    return physical;
+  }
+
+  long getCreatedAt() {
+    return createdAt;
+  }
+
+  long getLastReturnedAt() {
+    return lastReturnedAt;
+  }
+
+  long getBorrowedAt() {
+    return borrowedAt;
+  }
+
+  Throwable getBorrowTrace() {
+    return borrowTrace;
+  }
+
+  boolean isLeakReported() {
+    return leakReported;
+  }
+
+  void markLeakReported() {
+    leakReported = true;
+  }
+
+  /** Hands out a fresh proxy; each borrower gets its own closed flag. */
+  Connection checkout(boolean captureTrace) {
+    borrowedAt = System.currentTimeMillis();
+    borrowTrace = captureTrace
+      ? new Throwable("Connection borrowed here")
+      : null;
+    leakReported = false;
+    return (Connection) Proxy.newProxyInstance(
+      Connection.class.getClassLoader(),
+      new Class<?>[] { Connection.class },
+      new Handle(CancelScope.current())
+    );
+  }
+
+  void checkin() {
+    lastReturnedAt = System.currentTimeMillis();
+    borrowTrace = null;
+  }
+
+  void closePhysical() {
+    statementCache.clear();
+    try {
+      physical.close();
+    } catch (SQLException ignored) {
+      // The connection is being discarded anyway
+    }
+  }
+
+  private final class Handle implements InvocationHandler {
+
+    private final CancelScope scope;
+    private volatile boolean closed;
+
+    Handle(CancelScope scope) {
+      this.scope = scope;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            if (scope != null) {
+              scope.releaseAll(this);
+            }
+            pool.release(PooledConnection.this);
+          }
+          return null;
+        case "isClosed":
+          return closed || physical.isClosed();
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Pooled[" + physical + "]";
+        // Like close, never handed to the physical connection: a borrower
+        // holding it could use it after returning the proxy to the pool
+        case "unwrap":
+          if (((Class<?>) args[0]).isInstance(proxy)) {
+            return proxy;
+          }
+          throw new SQLException(
+            "Not a wrapper for " + ((Class<?>) args[0]).getName()
+          );
+        case "isWrapperFor":
+          return ((Class<?>) args[0]).isInstance(proxy);
+        default:
+          break;
+      }
+      if (closed) {
+        throw new SQLException("Connection is closed");
+      }
+      Object result;
+      if (statementCache.isCacheable(method)) {
+        result = statementCache.prepare((Connection) proxy, method, args);
+      } else {
+        try {
+          result = method.invoke(physical, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+      if (result instanceof Statement) {
+        if (SlowQueryLog.isEnabled()) {
+          result =
+            SlowQueryLog.monitor(
+              (Statement) result,
+              method.getReturnType(),
+              method.getName().startsWith("prepare") ? (String) args[0] : null
+            );
+        }
+        if (scope != null) {
+          scope.register(this, (Statement) result);
+        }
+      }
+      return result;
+    }
+  }
+}
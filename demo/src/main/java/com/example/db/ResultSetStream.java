@@ -0,0 +1,159 @@
+package com.example.db;
+
+import com.example.DBConnection;
+import com.example.metrics.Metrics;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Exposes a query as a lazily populated {@link Stream}.
+ *
+ * Rows are mapped one at a time as the stream is consumed; nothing is
+ * buffered on the heap beyond the driver's fetch window. The connection,
+ * statement and result set stay open until the stream is closed, so callers
+ * must use try-with-resources.
+ *
+ * A fetch size of zero or less asks Connector/J to stream row by row; a
+ * positive fetch size uses server-side cursors when the URL sets
+ * {@code useCursorFetch=true}.
+ */
+public final class ResultSetStream {
+
+  public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
+
+  public interface ParameterBinder {
+    void bind(PreparedStatement pstmt) throws SQLException;
+  }
+
+  private ResultSetStream() {}
+
+  public static int defaultFetchSize() {
+    return DBConfig.get().getInt("db.fetchSize", 0);
+  }
+
+  public static <T> Stream<T> open(
+    String sql,
+    ParameterBinder binder,
+    int fetchSize,
+    RowMapper<T> mapper
+  ) throws SQLException {
+    return open(null, sql, binder, fetchSize, mapper);
+  }
+
+  /**
+   * Like {@link #open(String, ParameterBinder, int, RowMapper)}, and times
+   * the stream as {@code operation} from open to close, counting the rows
+   * consumed.
+   */
+  public static <T> Stream<T> open(
+    String operation,
+    String sql,
+    ParameterBinder binder,
+    int fetchSize,
+    RowMapper<T> mapper
+  ) throws SQLException {
+    Metrics.Timer timer = operation == null
+      ? null
+      : Metrics.start(operation);
+    Connection conn = null;
+    PreparedStatement pstmt = null;
+    ResultSet rs;
+    try {
+      conn = DBConnection.getConnection();
+      pstmt =
+        conn.prepareStatement(
+          sql,
+          ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY
+        );
+      pstmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+      if (binder != null) {
+        binder.bind(pstmt);
+      }
+      rs = pstmt.executeQuery();
+    } catch (SQLException | RuntimeException e) {
+      try {
+        close(null, pstmt, conn);
+      } finally {
+        if (timer != null) {
+          timer.close();
+        }
+      }
+      throw e;
+    }
+
+    Connection connection = conn;
+    PreparedStatement statement = pstmt;
+    boolean[] failed = new boolean[1];
+    Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(
+      Long.MAX_VALUE,
+      Spliterator.ORDERED | Spliterator.NONNULL
+    ) {
+      @Override
+      public boolean tryAdvance(Consumer<? super T> action) {
+        try {
+          if (!rs.next()) {
+            return false;
+          }
+          T row = mapper.map(rs);
+          if (timer != null) {
+            timer.rows(1);
+          }
+          action.accept(row);
+          return true;
+        } catch (SQLException e) {
+          failed[0] = true;
+          throw new UncheckedSQLException(e);
+        }
+      }
+    };
+    return StreamSupport
+      .stream(rows, false)
+      .onClose(() -> {
+        try {
+          close(rs, statement, connection);
+        } finally {
+          if (timer != null) {
+            if (!failed[0]) {
+              timer.success();
+            }
+            timer.close();
+          }
+        }
+      });
+  }
+
+  private static void close(
+    ResultSet rs,
+    PreparedStatement pstmt,
+    Connection conn
+  ) {
+    SQLException failure = null;
+    for (AutoCloseable resource : new AutoCloseable[] { rs, pstmt, conn }) {
+      if (resource == null) {
+        continue;
+      }
+      try {
+        resource.close();
+      } catch (SQLException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    if (failure != null) {
+      throw new UncheckedSQLException(failure);
+    }
+  }
+}
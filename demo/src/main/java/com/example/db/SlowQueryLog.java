@@ -0,0 +1,400 @@
+package com.example.db;
+
+import com.example.DBConnection;
+import com.example.metrics.Metrics;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Logs statements that run longer than {@code db.slowQuery.thresholdMs},
+ * with their bound parameters and, for plain DML, the plan from
+ * {@code EXPLAIN FORMAT=JSON}.
+ *
+ * Statements handed out by the pool are wrapped by {@link #monitor} when the
+ * log is enabled. The executing thread only compares the elapsed time with
+ * the threshold and, for a slow statement, applies sampling
+ * ({@code db.slowQuery.sampleRate}) and a per-second cap
+ * ({@code db.slowQuery.maxPerSecond}) before queueing an event. A single
+ * background thread runs the EXPLAIN on its own pooled connection and writes
+ * one JSON object per line to {@code db.slowQuery.file}, rotated by size.
+ * Events that do not fit the bounded queue, the sample or the cap are
+ * counted and reported as {@code "suppressed"} on the next line written.
+ *
+ * Only execution is timed: for a streamed result the time spent reading
+ * rows afterwards is not included.
+ */
+final class SlowQueryLog {
+
+  private static final Logger LOG = Logger.getLogger(
+    SlowQueryLog.class.getName()
+  );
+  private static final Logger OUT = Logger.getLogger(
+    SlowQueryLog.class.getName() + ".entries"
+  );
+
+  private static final int QUEUE_CAPACITY = 256;
+  private static final int MAX_PARAMETER_LENGTH = 200;
+  private static final int MAX_SQL_LENGTH = 4000;
+
+  private static final boolean ENABLED;
+  private static final long THRESHOLD_NANOS;
+  private static final boolean EXPLAIN;
+  private static final double SAMPLE_RATE;
+  private static final int MAX_PER_SECOND;
+  private static final ThreadPoolExecutor WRITER;
+
+  private static final AtomicLong LOGGED = new AtomicLong();
+  private static final AtomicLong SUPPRESSED = new AtomicLong();
+  private static final AtomicLong SUPPRESSED_SINCE_LAST = new AtomicLong();
+  private static final AtomicLong WINDOW = new AtomicLong();
+  private static final AtomicLong WINDOW_COUNT = new AtomicLong();
+
+  // Only touched by the writer thread; the file is opened on first use so
+  // an application without slow statements never creates it
+  private static boolean outputConfigured;
+
+  // Set on the writer thread so its own EXPLAIN is never logged in turn
+  private static final ThreadLocal<Boolean> EXPLAINING = ThreadLocal.withInitial(
+    () -> false
+  );
+
+  static {
+    DBConfig config = DBConfig.get();
+    ENABLED = config.getBoolean("db.slowQuery.enabled", true);
+    THRESHOLD_NANOS =
+      TimeUnit.MILLISECONDS.toNanos(
+        config.getLong("db.slowQuery.thresholdMs", 500)
+      );
+    EXPLAIN = config.getBoolean("db.slowQuery.explain", true);
+    SAMPLE_RATE = Double.parseDouble(
+      config.getString("db.slowQuery.sampleRate", "1.0")
+    );
+    MAX_PER_SECOND = config.getInt("db.slowQuery.maxPerSecond", 10);
+
+    if (ENABLED) {
+      WRITER =
+        new ThreadPoolExecutor(
+          1,
+          1,
+          0,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+          r -> {
+            Thread thread = new Thread(
+              () -> {
+                EXPLAINING.set(true);
+                r.run();
+              },
+              "db-slow-query-log"
+            );
+            thread.setDaemon(true);
+            return thread;
+          },
+          (task, executor) -> suppress()
+        );
+      Metrics.gauge(
+        "hms_slow_queries_logged",
+        "Slow statements written to the slow query log",
+        LOGGED::get
+      );
+      Metrics.gauge(
+        "hms_slow_queries_suppressed",
+        "Slow statements dropped by sampling, rate limit or a full queue",
+        SUPPRESSED::get
+      );
+    } else {
+      WRITER = null;
+    }
+  }
+
+  private SlowQueryLog() {}
+
+  static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * Wraps {@code statement} so its executions are timed.
+   *
+   * @param type the JDBC interface the caller asked for
+   * @param sql the SQL a prepared or callable statement was created with, or
+   *     {@code null} for a plain statement
+   */
+  static Statement monitor(Statement statement, Class<?> type, String sql) {
+    if (EXPLAINING.get()) {
+      return statement;
+    }
+    return (Statement) Proxy.newProxyInstance(
+      Statement.class.getClassLoader(),
+      new Class<?>[] { type },
+      new MonitoredStatement(statement, sql)
+    );
+  }
+
+  static boolean isSlow(long elapsedNanos) {
+    return elapsedNanos >= THRESHOLD_NANOS;
+  }
+
+  /** Called on the executing thread for a statement that was slow. */
+  static void record(
+    String sql,
+    Object[] parameters,
+    int batchSize,
+    long elapsedNanos,
+    boolean failed
+  ) {
+    if (
+      sql == null ||
+      (SAMPLE_RATE < 1.0 &&
+        ThreadLocalRandom.current().nextDouble() >= SAMPLE_RATE) ||
+      !acquirePermit()
+    ) {
+      suppress();
+      return;
+    }
+    Event event = new Event(
+      Instant.now(),
+      Thread.currentThread().getName(),
+      sql,
+      parameters,
+      batchSize,
+      elapsedNanos,
+      failed
+    );
+    WRITER.execute(event::write);
+  }
+
+  private static boolean acquirePermit() {
+    if (MAX_PER_SECOND <= 0) {
+      return true;
+    }
+    long second = System.nanoTime() / 1_000_000_000L;
+    long window = WINDOW.get();
+    if (window != second && WINDOW.compareAndSet(window, second)) {
+      WINDOW_COUNT.set(0);
+    }
+    return WINDOW_COUNT.incrementAndGet() <= MAX_PER_SECOND;
+  }
+
+  private static void suppress() {
+    SUPPRESSED.incrementAndGet();
+    SUPPRESSED_SINCE_LAST.incrementAndGet();
+  }
+
+  private static void configureOutput(DBConfig config) {
+    OUT.setUseParentHandlers(false);
+    OUT.setLevel(Level.INFO);
+    String file = config.getString("db.slowQuery.file", "logs/slow-query.log");
+    if (file.isEmpty()) {
+      OUT.setUseParentHandlers(true);
+      return;
+    }
+    try {
+      Path path = Paths.get(file).toAbsolutePath();
+      if (path.getParent() != null) {
+        Files.createDirectories(path.getParent());
+      }
+      FileHandler handler = new FileHandler(
+        path.toString().replace("%", "%%"),
+        config.getInt("db.slowQuery.fileSizeBytes", 10 * 1024 * 1024),
+        config.getInt("db.slowQuery.fileCount", 5),
+        true
+      );
+      handler.setFormatter(
+        new Formatter() {
+          @Override
+          public String format(LogRecord record) {
+            return record.getMessage() + System.lineSeparator();
+          }
+        }
+      );
+      OUT.addHandler(handler);
+    } catch (IOException | RuntimeException e) {
+      LOG.log(
+        Level.WARNING,
+        "Cannot open slow query log " + file + "; using the default log",
+        e
+      );
+      OUT.setUseParentHandlers(true);
+    }
+  }
+
+  private static final class Event {
+
+    final Instant at;
+    final String thread;
+    final String sql;
+    final Object[] parameters;
+    final int batchSize;
+    final long elapsedNanos;
+    final boolean failed;
+
+    Event(
+      Instant at,
+      String thread,
+      String sql,
+      Object[] parameters,
+      int batchSize,
+      long elapsedNanos,
+      boolean failed
+    ) {
+      this.at = at;
+      this.thread = thread;
+      this.sql = sql;
+      this.parameters = parameters;
+      this.batchSize = batchSize;
+      this.elapsedNanos = elapsedNanos;
+      this.failed = failed;
+    }
+
+    void write() {
+      if (!outputConfigured) {
+        outputConfigured = true;
+        configureOutput(DBConfig.get());
+      }
+      String plan = EXPLAIN && isExplainable(sql) ? explain() : null;
+      StringBuilder line = new StringBuilder(512);
+      line.append("{\"ts\":\"").append(at).append('"');
+      line.append(",\"thread\":");
+      appendString(line, thread);
+      line
+        .append(",\"elapsedMs\":")
+        .append(
+          String.format(Locale.ROOT, "%.3f", elapsedNanos / 1_000_000.0)
+        );
+      if (failed) {
+        line.append(",\"failed\":true");
+      }
+      line.append(",\"sql\":");
+      appendString(line, truncate(sql, MAX_SQL_LENGTH));
+      if (parameters != null) {
+        line.append(",\"params\":[");
+        for (int i = 0; i < parameters.length; i++) {
+          if (i > 0) {
+            line.append(',');
+          }
+          appendValue(line, parameters[i]);
+        }
+        line.append(']');
+      }
+      if (batchSize > 0) {
+        line.append(",\"batchSize\":").append(batchSize);
+      }
+      long suppressed = SUPPRESSED_SINCE_LAST.getAndSet(0);
+      if (suppressed > 0) {
+        line.append(",\"suppressed\":").append(suppressed);
+      }
+      if (plan != null) {
+        // EXPLAIN FORMAT=JSON already returns a JSON document
+        line.append(",\"explain\":").append(plan.replaceAll("\\s*\\n\\s*", " "));
+      }
+      line.append('}');
+      OUT.info(line.toString());
+      LOGGED.incrementAndGet();
+    }
+
+    private String explain() {
+      try (
+        Connection conn = DBConnection.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(
+          "EXPLAIN FORMAT=JSON " + sql
+        )
+      ) {
+        if (parameters != null) {
+          for (int i = 0; i < parameters.length; i++) {
+            pstmt.setObject(i + 1, parameters[i]);
+          }
+        }
+        try (ResultSet rs = pstmt.executeQuery()) {
+          return rs.next() ? rs.getString(1) : null;
+        }
+      } catch (SQLException | RuntimeException e) {
+        LOG.log(Level.FINE, "EXPLAIN failed for " + sql, e);
+        return null;
+      }
+    }
+  }
+
+  private static boolean isExplainable(String sql) {
+    String head = sql.stripLeading();
+    int end = 0;
+    while (end < head.length() && Character.isLetter(head.charAt(end))) {
+      end++;
+    }
+    switch (head.substring(0, end).toUpperCase()) {
+      case "SELECT":
+      case "INSERT":
+      case "UPDATE":
+      case "DELETE":
+      case "REPLACE":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static String truncate(String value, int max) {
+    return value.length() <= max ? value : value.substring(0, max) + "...";
+  }
+
+  private static void appendValue(StringBuilder out, Object value) {
+    if (value == null) {
+      out.append("null");
+    } else if (value instanceof Number || value instanceof Boolean) {
+      out.append(value);
+    } else {
+      appendString(out, truncate(value.toString(), MAX_PARAMETER_LENGTH));
+    }
+  }
+
+  private static void appendString(StringBuilder out, String value) {
+    out.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+}
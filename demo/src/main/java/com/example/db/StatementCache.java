@@ -0,0 +1,228 @@
+package com.example.db;
+
+import com.example.cache.CacheStats;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LRU registry of prepared and callable statements for one pooled
+ * connection.
+ *
+ * A cached statement is checked out while the caller holds it, so two
+ * concurrent uses of the same SQL on one connection get separate handles.
+ * Closing the handle closes its result sets, clears its parameters and
+ * returns the statement to the cache instead of closing it. A connection is
+ * only used by one borrower at a time, so the cache itself needs no locking;
+ * the hit counters are shared by the whole pool.
+ */
+final class StatementCache {
+
+  private static final AtomicLong HITS = new AtomicLong();
+  private static final AtomicLong MISSES = new AtomicLong();
+  private static final AtomicLong EVICTIONS = new AtomicLong();
+  private static final AtomicInteger SIZE = new AtomicInteger();
+
+  private final Connection physical;
+  private final int maxSize;
+  private final LinkedHashMap<String, PreparedStatement> idle;
+
+  StatementCache(Connection physical, int maxSize) {
+    this.physical = physical;
+    this.maxSize = maxSize;
+    this.idle =
+      new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(
+          Map.Entry<String, PreparedStatement> eldest
+        ) {
+          if (size() > StatementCache.this.maxSize) {
+            EVICTIONS.incrementAndGet();
+            SIZE.decrementAndGet();
+            closeQuietly(eldest.getValue());
+            return true;
+          }
+          return false;
+        }
+      };
+  }
+
+  static CacheStats getStats() {
+    return new CacheStats(
+      HITS.get(),
+      MISSES.get(),
+      EVICTIONS.get(),
+      SIZE.get()
+    );
+  }
+
+  /** Only the plain SQL / generated-keys variants are worth sharing. */
+  boolean isCacheable(Method method) {
+    if (maxSize <= 0) {
+      return false;
+    }
+    Class<?>[] params = method.getParameterTypes();
+    switch (method.getName()) {
+      case "prepareStatement":
+        return (
+          Arrays.equals(params, new Class<?>[] { String.class }) ||
+          Arrays.equals(params, new Class<?>[] { String.class, int.class })
+        );
+      case "prepareCall":
+        return Arrays.equals(params, new Class<?>[] { String.class });
+      default:
+        return false;
+    }
+  }
+
+  Object prepare(Connection owner, Method method, Object[] args)
+    throws Throwable {
+    String key =
+      method.getName() +
+      ':' +
+      (args.length > 1 ? args[1] : "") +
+      ':' +
+      args[0];
+    PreparedStatement statement = idle.remove(key);
+    if (statement != null && !statement.isClosed()) {
+      SIZE.decrementAndGet();
+      HITS.incrementAndGet();
+    } else {
+      if (statement != null) {
+        SIZE.decrementAndGet();
+      }
+      MISSES.incrementAndGet();
+      try {
+        statement = (PreparedStatement) method.invoke(physical, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+    return Proxy.newProxyInstance(
+      PreparedStatement.class.getClassLoader(),
+      new Class<?>[] { method.getReturnType() },
+      new Lease(owner, key, statement)
+    );
+  }
+
+  void clear() {
+    for (PreparedStatement statement : idle.values()) {
+      SIZE.decrementAndGet();
+      closeQuietly(statement);
+    }
+    idle.clear();
+  }
+
+  private void recycle(
+    String key,
+    PreparedStatement statement,
+    List<ResultSet> results
+  ) {
+    try {
+      // Closing a statement closes its result sets, and callers rely on
+      // that; an unread streaming result would block the connection
+      if (results != null) {
+        for (ResultSet rs : results) {
+          rs.close();
+        }
+      }
+      ResultSet current = statement.getResultSet();
+      if (current != null) {
+        current.close();
+      }
+      statement.clearParameters();
+      statement.clearBatch();
+      statement.clearWarnings();
+      statement.setFetchSize(0);
+      statement.setQueryTimeout(0);
+      statement.setMaxRows(0);
+    } catch (SQLException e) {
+      closeQuietly(statement);
+      return;
+    }
+    if (idle.containsKey(key)) {
+      // Another handle for the same SQL was returned first
+      closeQuietly(statement);
+      return;
+    }
+    SIZE.incrementAndGet();
+    idle.put(key, statement);
+  }
+
+  private static void closeQuietly(PreparedStatement statement) {
+    try {
+      statement.close();
+    } catch (SQLException ignored) {
+      // Nothing useful to do with a statement we are discarding
+    }
+  }
+
+  private final class Lease implements InvocationHandler {
+
+    private final Connection owner;
+    private final String key;
+    private final PreparedStatement statement;
+    // Result sets handed out through this lease, closed with it
+    private List<ResultSet> results;
+    private boolean closed;
+
+    Lease(Connection owner, String key, PreparedStatement statement) {
+      this.owner = owner;
+      this.key = key;
+      this.statement = statement;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+      switch (method.getName()) {
+        case "close":
+          if (!closed) {
+            closed = true;
+            recycle(key, statement, results);
+          }
+          return null;
+        case "isClosed":
+          return closed || statement.isClosed();
+        case "getConnection":
+          return owner;
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return "Cached[" + statement + "]";
+        default:
+          break;
+      }
+      if (closed) {
+        throw new SQLException("Statement is closed");
+      }
+      Object result;
+      try {
+        result = method.invoke(statement, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+      if (result instanceof ResultSet) {
+        if (results == null) {
+          results = new ArrayList<>(2);
+        }
+        results.add((ResultSet) result);
+      }
+      return result;
+    }
+  }
+}
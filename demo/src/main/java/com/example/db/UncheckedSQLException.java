@@ -0,0 +1,21 @@
+package com.example.db;
+
+import java.sql.SQLException;
+
+/**
+ * Carries a {@link SQLException} out of code that cannot declare it, such as
+ * the element supplier behind a {@link java.util.stream.Stream}.
+ */
+public class UncheckedSQLException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  public UncheckedSQLException(SQLException cause) {
+    super(cause.getMessage(), cause);
+  }
+
+  @Override
+  public synchronized SQLException getCause() {
+    return (SQLException) super.getCause();
+  }
+}
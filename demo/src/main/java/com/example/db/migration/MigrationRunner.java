@@ -0,0 +1,267 @@
+package com.example.db.migration;
+
+import com.example.DBConnection;
+import com.example.db.DBConfig;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the versioned scripts under {@code db/migration} in order and
+ * records each one in {@code SchemaMigrations}, so every script runs once
+ * per database.
+ *
+ * Scripts are listed in {@code db/migration/migrations.txt} and named
+ * {@code V<version>__<description>.sql}. A MySQL named lock keeps two
+ * application instances from migrating the same database at once. Errors
+ * that only mean "this object already exists" are ignored, so installs that
+ * created an index by hand still end up with the script recorded.
+ *
+ * Runs at startup from {@code Main} unless {@code db.migrateOnStartup=false},
+ * or on demand with {@code java com.example.db.migration.MigrationRunner}.
+ */
+public final class MigrationRunner {
+
+  private static final Logger LOG = Logger.getLogger(
+    MigrationRunner.class.getName()
+  );
+
+  private static final String LOCATION = "db/migration/";
+  private static final String INDEX = LOCATION + "migrations.txt";
+  private static final Pattern NAME = Pattern.compile(
+    "V(\\d+)__(\\w+)\\.sql"
+  );
+  private static final String LOCK_NAME = "hospital_schema_migrations";
+  private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+  // MySQL error codes meaning the object a script creates already exists:
+  // table, column, key, trigger, procedure/function
+  private static final Set<Integer> ALREADY_EXISTS = Set.of(
+    1050,
+    1060,
+    1061,
+    1359,
+    1304
+  );
+
+  private static final class Migration {
+
+    final int version;
+    final String description;
+    final String script;
+    final int checksum;
+
+    Migration(int version, String description, String script) {
+      this.version = version;
+      this.description = description;
+      this.script = script;
+      CRC32 crc = new CRC32();
+      crc.update(script.getBytes(StandardCharsets.UTF_8));
+      this.checksum = (int) crc.getValue();
+    }
+  }
+
+  private MigrationRunner() {}
+
+  public static void main(String[] args) throws Exception {
+    try {
+      List<String> applied = migrate();
+      if (applied.isEmpty()) {
+        System.out.println("Schema is up to date.");
+      } else {
+        applied.forEach(name -> System.out.println("Applied " + name));
+      }
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  /** Runs pending migrations when db.migrateOnStartup is true (default). */
+  public static void migrateOnStartup() throws SQLException {
+    if (DBConfig.get().getBoolean("db.migrateOnStartup", true)) {
+      for (String name : migrate()) {
+        LOG.info("Applied schema migration " + name);
+      }
+    }
+  }
+
+  /** @return the migrations applied by this call, in order */
+  public static synchronized List<String> migrate() throws SQLException {
+    List<Migration> migrations = loadMigrations();
+    List<String> applied = new ArrayList<>();
+    try (Connection conn = DBConnection.getConnection()) {
+      acquireLock(conn);
+      try {
+        createHistoryTable(conn);
+        Map<Integer, Integer> history = readHistory(conn);
+        for (Migration migration : migrations) {
+          Integer checksum = history.get(migration.version);
+          if (checksum == null) {
+            apply(conn, migration);
+            applied.add(name(migration));
+          } else if (checksum != migration.checksum) {
+            LOG.warning(
+              "Migration " +
+              name(migration) +
+              " has changed since it was applied; it will not be re-run"
+            );
+          }
+        }
+      } finally {
+        releaseLock(conn);
+      }
+    }
+    return applied;
+  }
+
+  private static void apply(Connection conn, Migration migration)
+    throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      for (String sql : SqlScript.split(migration.script)) {
+        try {
+          stmt.execute(sql);
+        } catch (SQLException e) {
+          if (!ALREADY_EXISTS.contains(e.getErrorCode())) {
+            throw new SQLException(
+              "Migration " + name(migration) + " failed: " + e.getMessage(),
+              e.getSQLState(),
+              e.getErrorCode(),
+              e
+            );
+          }
+        }
+      }
+    }
+    String sql =
+      "INSERT INTO SchemaMigrations (Version, Description, Checksum) VALUES (?, ?, ?)";
+    try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+      pstmt.setInt(1, migration.version);
+      pstmt.setString(2, migration.description);
+      pstmt.setInt(3, migration.checksum);
+      pstmt.executeUpdate();
+    }
+  }
+
+  private static void createHistoryTable(Connection conn)
+    throws SQLException {
+    try (Statement stmt = conn.createStatement()) {
+      stmt.execute(
+        "CREATE TABLE IF NOT EXISTS SchemaMigrations (" +
+        "Version INT PRIMARY KEY, " +
+        "Description VARCHAR(200) NOT NULL, " +
+        "Checksum INT NOT NULL, " +
+        "AppliedAt TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)"
+      );
+    }
+  }
+
+  private static Map<Integer, Integer> readHistory(Connection conn)
+    throws SQLException {
+    Map<Integer, Integer> history = new HashMap<>();
+    try (
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(
+        "SELECT Version, Checksum FROM SchemaMigrations"
+      )
+    ) {
+      while (rs.next()) {
+        history.put(rs.getInt("Version"), rs.getInt("Checksum"));
+      }
+    }
+    return history;
+  }
+
+  private static void acquireLock(Connection conn) throws SQLException {
+    try (
+      PreparedStatement pstmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")
+    ) {
+      pstmt.setString(1, LOCK_NAME);
+      pstmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        if (!rs.next() || rs.getInt(1) != 1) {
+          throw new SQLException(
+            "Timed out waiting for another instance to finish migrating"
+          );
+        }
+      }
+    }
+  }
+
+  private static void releaseLock(Connection conn) throws SQLException {
+    try (
+      PreparedStatement pstmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")
+    ) {
+      pstmt.setString(1, LOCK_NAME);
+      pstmt.executeQuery().close();
+    }
+  }
+
+  private static List<Migration> loadMigrations() {
+    List<Migration> migrations = new ArrayList<>();
+    for (String fileName : readResource(INDEX).split("\\r?\\n")) {
+      fileName = fileName.trim();
+      if (fileName.isEmpty() || fileName.startsWith("#")) {
+        continue;
+      }
+      Matcher matcher = NAME.matcher(fileName);
+      if (!matcher.matches()) {
+        throw new IllegalStateException("Bad migration name: " + fileName);
+      }
+      migrations.add(
+        new Migration(
+          Integer.parseInt(matcher.group(1)),
+          matcher.group(2).replace('_', ' '),
+          readResource(LOCATION + fileName)
+        )
+      );
+    }
+    migrations.sort((a, b) -> Integer.compare(a.version, b.version));
+    for (int i = 1; i < migrations.size(); i++) {
+      if (migrations.get(i).version == migrations.get(i - 1).version) {
+        throw new IllegalStateException(
+          "Duplicate migration version " + migrations.get(i).version
+        );
+      }
+    }
+    return migrations;
+  }
+
+  private static String readResource(String name) {
+    InputStream in = MigrationRunner.class.getClassLoader().getResourceAsStream(
+      name
+    );
+    if (in == null) {
+      throw new IllegalStateException("Missing migration resource " + name);
+    }
+    try (
+      BufferedReader reader = new BufferedReader(
+        new InputStreamReader(in, StandardCharsets.UTF_8)
+      )
+    ) {
+      return reader.lines().collect(Collectors.joining("\n"));
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot read " + name, e);
+    }
+  }
+
+  private static String name(Migration migration) {
+    return "V" + migration.version + " (" + migration.description + ")";
+  }
+}
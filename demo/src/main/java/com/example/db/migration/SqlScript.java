@@ -0,0 +1,50 @@
+package com.example.db.migration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a SQL script into statements the same way the mysql client does:
+ * statements end with the current delimiter ({@code ;} by default) and
+ * {@code DELIMITER //} lines switch it, so trigger and procedure bodies can
+ * be written exactly as in hospital_management_final.sql.
+ */
+final class SqlScript {
+
+  private SqlScript() {}
+
+  static List<String> split(String script) {
+    List<String> statements = new ArrayList<>();
+    String delimiter = ";";
+    StringBuilder current = new StringBuilder();
+    for (String line : script.split("\\r?\\n")) {
+      String trimmed = line.trim();
+      if (trimmed.regionMatches(true, 0, "DELIMITER ", 0, 10)) {
+        delimiter = trimmed.substring(10).trim();
+        continue;
+      }
+      if (current.length() == 0 && (trimmed.isEmpty() || isComment(trimmed))) {
+        continue;
+      }
+      if (trimmed.endsWith(delimiter)) {
+        current.append(line, 0, line.lastIndexOf(delimiter));
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+          statements.add(statement);
+        }
+        current.setLength(0);
+      } else {
+        current.append(line).append('\n');
+      }
+    }
+    String rest = current.toString().trim();
+    if (!rest.isEmpty()) {
+      statements.add(rest);
+    }
+    return statements;
+  }
+
+  private static boolean isComment(String trimmed) {
+    return trimmed.startsWith("--") || trimmed.startsWith("#");
+  }
+}
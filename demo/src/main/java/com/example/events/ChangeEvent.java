@@ -0,0 +1,124 @@
+package com.example.events;
+
+import com.example.db.PartialUpdate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One committed write to a patient, doctor or appointment row.
+ *
+ * Events are slots of the {@link ChangeEventBus} ring and are overwritten
+ * once every consumer has moved past them, so a handler must copy what it
+ * needs to keep rather than hold on to the event.
+ */
+public final class ChangeEvent {
+
+  public enum Entity {
+    PATIENT,
+    DOCTOR,
+    APPOINTMENT,
+  }
+
+  public enum Type {
+    INSERT,
+    UPDATE,
+    DELETE,
+  }
+
+  private Entity entity;
+  private Type type;
+  private int id;
+  private int changedColumns;
+  private PartialUpdate columns;
+  private String oldStatus;
+  private String newStatus;
+
+  ChangeEvent() {}
+
+  void set(
+    Entity entity,
+    Type type,
+    int id,
+    int changedColumns,
+    PartialUpdate columns,
+    String oldStatus,
+    String newStatus
+  ) {
+    this.entity = entity;
+    this.type = type;
+    this.id = id;
+    this.changedColumns = changedColumns;
+    this.columns = columns;
+    this.oldStatus = oldStatus;
+    this.newStatus = newStatus;
+  }
+
+  public Entity getEntity() {
+    return entity;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** Primary key of the row written. */
+  public int getId() {
+    return id;
+  }
+
+  /**
+   * Columns written, as a mask in the model's column order: every column
+   * for an insert, none for a delete.
+   */
+  public int getChangedMask() {
+    return changedColumns;
+  }
+
+  /** Names of the columns written. */
+  public List<String> getChangedColumns() {
+    return columns == null
+      ? Collections.emptyList()
+      : columns.columns(changedColumns);
+  }
+
+  public boolean isChanged(String column) {
+    return columns != null && (changedColumns & columns.mask(column)) != 0;
+  }
+
+  /**
+   * Appointment status before the write; {@code null} for an insert and for
+   * other entities.
+   */
+  public String getOldStatus() {
+    return oldStatus;
+  }
+
+  /**
+   * Appointment status after the write; {@code null} for a delete and for
+   * other entities.
+   */
+  public String getNewStatus() {
+    return newStatus;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder()
+      .append(type)
+      .append(' ')
+      .append(entity)
+      .append(' ')
+      .append(id);
+    if (type == Type.UPDATE) {
+      builder.append(' ').append(getChangedColumns());
+    }
+    if (entity == Entity.APPOINTMENT) {
+      builder
+        .append(" status ")
+        .append(oldStatus)
+        .append(" -> ")
+        .append(newStatus);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,326 @@
+package com.example.events;
+
+import com.example.db.DBConfig;
+import com.example.db.PartialUpdate;
+import com.example.metrics.Metrics;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process bus of {@link ChangeEvent}s, published by the models after each
+ * successful insert, update and delete, for caches, counters and summaries
+ * that react to writes:
+ *
+ * <pre>
+ * try (ChangeEventBus.Subscription subscription = ChangeEventBus
+ *   .get()
+ *   .subscribe("audit", (event, sequence, endOfBatch) -&gt; ...)) {
+ *   ...
+ * }
+ * </pre>
+ *
+ * Events live in a ring of {@code events.bufferSize} slots allocated up
+ * front (a power of two), in the style of the LMAX Disruptor. A publisher
+ * claims the next sequence with a CAS on the cursor, fills that slot in
+ * place and marks it available, so publishing allocates nothing and takes no
+ * lock. Each subscription runs on its own thread with its own sequence,
+ * waits as its {@link WaitStrategy} says ({@code events.waitStrategy}), and
+ * handles everything published since its last wake-up as one batch before
+ * moving its sequence. Publishers never overwrite a slot a subscriber has
+ * not read: when the slowest subscription is a full ring behind, writes
+ * wait for it, so a handler must keep up or hand slow work elsewhere.
+ *
+ * With no subscriptions, publishing returns at once. Events from one thread
+ * arrive in the order it wrote; writes from different threads interleave.
+ * Rows deleted by {@code ON DELETE CASCADE} get no events of their own.
+ */
+public final class ChangeEventBus {
+
+  private static final Logger LOG = Logger.getLogger(
+    ChangeEventBus.class.getName()
+  );
+
+  /**
+   * Consumer of events, called on its subscription's thread in order. A
+   * handler that saves models publishes in turn, and with the ring full
+   * would wait on itself.
+   */
+  public interface Handler {
+    /**
+     * @param sequence the event's position in the bus, one more than the
+     *     event before it
+     * @param endOfBatch whether this is the last event available for now;
+     *     a handler that buffers work flushes it here
+     * @throws Exception logged and skipped; the subscription carries on
+     */
+    void onEvent(ChangeEvent event, long sequence, boolean endOfBatch)
+      throws Exception;
+  }
+
+  /** A running subscriber; closing it stops its thread. */
+  public final class Subscription implements AutoCloseable {
+
+    private final String name;
+    private final Handler handler;
+    private final Sequence sequence = new Sequence(-1);
+    private final String operation;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private Subscription(String name, Handler handler) {
+      this.name = name;
+      this.handler = handler;
+      this.operation = "ChangeEventBus." + name;
+      this.thread = new Thread(this::run, "change-events-" + name);
+      this.thread.setDaemon(true);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Published events this subscription has not handled yet. */
+    public long getBacklog() {
+      return cursor.get() - sequence.get();
+    }
+
+    boolean isRunning() {
+      return running;
+    }
+
+    /**
+     * Stops the subscription after the batch in progress; events published
+     * since are not handled.
+     */
+    @Override
+    public void close() {
+      if (!running) {
+        return;
+      }
+      running = false;
+      waitStrategy.wakeAll();
+      if (Thread.currentThread() != thread) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      unsubscribe(sequence);
+    }
+
+    private void run() {
+      long next = sequence.get() + 1;
+      while (running) {
+        long available = waitStrategy.waitFor(next, cursor, this);
+        if (available < next) {
+          continue;
+        }
+        // Claimed is not yet published: take the run that is
+        long highest = highestPublished(next, available);
+        if (highest < next) {
+          Thread.onSpinWait();
+          continue;
+        }
+        try (Metrics.Timer timer = Metrics.start(operation)) {
+          boolean failed = false;
+          for (long current = next; current <= highest; current++) {
+            ChangeEvent event = entries[index(current)];
+            try {
+              handler.onEvent(event, current, current == highest);
+            } catch (Exception e) {
+              failed = true;
+              LOG.log(
+                Level.WARNING,
+                "Change event handler " + name + " failed on " + event,
+                e
+              );
+            }
+          }
+          timer.rows(highest - next + 1);
+          if (!failed) {
+            timer.success();
+          }
+        }
+        sequence.set(highest);
+        next = highest + 1;
+      }
+    }
+  }
+
+  private static final ChangeEventBus INSTANCE = fromConfig();
+
+  private final int bufferSize;
+  private final int indexMask;
+  private final int indexShift;
+  private final ChangeEvent[] entries;
+  // Per slot, the lap (sequence / bufferSize) last published into it
+  private final AtomicIntegerArray published;
+  private final WaitStrategy waitStrategy;
+
+  // Highest sequence claimed by a publisher
+  private final Sequence cursor = new Sequence(-1);
+  // Slowest subscriber as last computed, to skip the scan while there is room
+  private final Sequence gatingCache = new Sequence(-1);
+  private volatile Sequence[] gating = new Sequence[0];
+  private final AtomicLong publisherWaits = new AtomicLong();
+
+  public ChangeEventBus(int bufferSize, WaitStrategy waitStrategy) {
+    if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+      throw new IllegalArgumentException(
+        "events.bufferSize must be a power of two"
+      );
+    }
+    this.bufferSize = bufferSize;
+    this.indexMask = bufferSize - 1;
+    this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+    this.entries = new ChangeEvent[bufferSize];
+    for (int i = 0; i < bufferSize; i++) {
+      entries[i] = new ChangeEvent();
+    }
+    this.published = new AtomicIntegerArray(bufferSize);
+    for (int i = 0; i < bufferSize; i++) {
+      published.set(i, -1);
+    }
+    this.waitStrategy = waitStrategy;
+  }
+
+  private static ChangeEventBus fromConfig() {
+    DBConfig config = DBConfig.get();
+    ChangeEventBus bus = new ChangeEventBus(
+      config.getInt("events.bufferSize", 1024),
+      WaitStrategy.forName(config.getString("events.waitStrategy", "blocking"))
+    );
+    Metrics.gauge(
+      "hms_events_published",
+      "Change events published since start",
+      () -> bus.cursor.get() + 1
+    );
+    Metrics.gauge(
+      "hms_events_backlog",
+      "Change events the slowest subscription has not handled",
+      () -> bus.cursor.get() - Sequence.minimum(bus.gating, bus.cursor.get())
+    );
+    Metrics.gauge(
+      "hms_events_publisher_waits",
+      "Times a publisher found the ring full and waited for a subscription",
+      bus.publisherWaits::get
+    );
+    return bus;
+  }
+
+  public static ChangeEventBus get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts a subscription that handles the events published from now on,
+   * on a thread of its own.
+   */
+  public Subscription subscribe(String name, Handler handler) {
+    Subscription subscription = new Subscription(name, handler);
+    synchronized (this) {
+      subscription.sequence.set(cursor.get());
+      Sequence[] current = gating;
+      Sequence[] updated = Arrays.copyOf(current, current.length + 1);
+      updated[current.length] = subscription.sequence;
+      gating = updated;
+      // Publishers that claimed before seeing the new gating array may
+      // already be a lap ahead of the value set above
+      subscription.sequence.set(cursor.get());
+    }
+    subscription.thread.start();
+    return subscription;
+  }
+
+  /** Subscriptions currently running. */
+  public int getSubscriptionCount() {
+    return gating.length;
+  }
+
+  /**
+   * Publishes one write. {@code changedColumns} is a mask over
+   * {@code columns}; the statuses are those of an appointment, {@code null}
+   * for other entities.
+   */
+  public void publish(
+    ChangeEvent.Entity entity,
+    ChangeEvent.Type type,
+    int id,
+    int changedColumns,
+    PartialUpdate columns,
+    String oldStatus,
+    String newStatus
+  ) {
+    if (gating.length == 0) {
+      return;
+    }
+    long sequence = next();
+    try {
+      entries[index(sequence)].set(
+        entity,
+        type,
+        id,
+        changedColumns,
+        columns,
+        oldStatus,
+        newStatus
+      );
+    } finally {
+      published.lazySet(index(sequence), (int) (sequence >>> indexShift));
+      waitStrategy.signalAllWhenBlocking();
+    }
+  }
+
+  private long next() {
+    while (true) {
+      long current = cursor.get();
+      long next = current + 1;
+      long wrapPoint = next - bufferSize;
+      long cachedGating = gatingCache.get();
+      if (wrapPoint > cachedGating || cachedGating > current) {
+        long slowest = Sequence.minimum(gating, current);
+        if (wrapPoint > slowest) {
+          // The slowest subscription has not read the slot we would reuse
+          publisherWaits.incrementAndGet();
+          LockSupport.parkNanos(1);
+          continue;
+        }
+        gatingCache.set(slowest);
+      } else if (cursor.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  private synchronized void unsubscribe(Sequence sequence) {
+    Sequence[] current = gating;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i] == sequence) {
+        Sequence[] updated = new Sequence[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        System.arraycopy(current, i + 1, updated, i, updated.length - i);
+        gating = updated;
+        return;
+      }
+    }
+  }
+
+  // Last sequence in [lower, upper] such that it and all before are published
+  private long highestPublished(long lower, long upper) {
+    for (long sequence = lower; sequence <= upper; sequence++) {
+      if (published.get(index(sequence)) != (int) (sequence >>> indexShift)) {
+        return sequence - 1;
+      }
+    }
+    return upper;
+  }
+
+  private int index(long sequence) {
+    return (int) sequence & indexMask;
+  }
+}
@@ -0,0 +1,51 @@
+package com.example.events;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// Cache line padding either side of the value, so a producer's cursor and
+// each consumer's sequence do not share a line. Field order inside one class
+// is up to the JVM; across a class hierarchy it is not.
+abstract class SequenceLeftPadding {
+
+  long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SequenceValue extends SequenceLeftPadding {
+
+  volatile long value;
+}
+
+abstract class SequenceRightPadding extends SequenceValue {
+
+  long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/** A position in the ring: the last sequence claimed, published or read. */
+final class Sequence extends SequenceRightPadding {
+
+  private static final AtomicLongFieldUpdater<SequenceValue> VALUE =
+    AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+  Sequence(long initial) {
+    value = initial;
+  }
+
+  long get() {
+    return value;
+  }
+
+  void set(long next) {
+    value = next;
+  }
+
+  boolean compareAndSet(long expected, long next) {
+    return VALUE.compareAndSet(this, expected, next);
+  }
+
+  static long minimum(Sequence[] sequences, long minimum) {
+    for (Sequence sequence : sequences) {
+      minimum = Math.min(minimum, sequence.get());
+    }
+    return minimum;
+  }
+}
@@ -0,0 +1,177 @@
+package com.example.events;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * How a {@link ChangeEventBus} subscriber waits for the next event, trading
+ * latency against the CPU an idle subscriber burns.
+ *
+ * <ul>
+ * <li>{@code blocking}: parks on a condition the publisher signals; no CPU
+ * while idle, a lock handoff per wake-up. The default.</li>
+ * <li>{@code sleeping}: spins, then yields, then parks for 0.1 ms at a
+ * time; publishers never touch a lock.</li>
+ * <li>{@code yielding}: spins, then yields the core; low latency, a core
+ * per subscriber.</li>
+ * <li>{@code busy-spin}: never lets go of the core; lowest latency, only
+ * with a core to spare per subscriber.</li>
+ * </ul>
+ */
+public abstract class WaitStrategy {
+
+  private static final int SPIN_TRIES = 100;
+
+  WaitStrategy() {}
+
+  public static WaitStrategy forName(String name) {
+    switch (name) {
+      case "blocking":
+        return new Blocking();
+      case "sleeping":
+        return new Sleeping();
+      case "yielding":
+        return new Yielding();
+      case "busy-spin":
+        return new BusySpin();
+      default:
+        throw new IllegalArgumentException("Unknown wait strategy " + name);
+    }
+  }
+
+  /**
+   * Waits until {@code cursor} reaches {@code sequence} or the subscriber
+   * stops, and returns the cursor: below {@code sequence} when stopped.
+   */
+  abstract long waitFor(
+    long sequence,
+    Sequence cursor,
+    ChangeEventBus.Subscription subscriber
+  );
+
+  /** Called by publishers after every event; must not allocate. */
+  void signalAllWhenBlocking() {}
+
+  /** Wakes every waiting subscriber, for one that is stopping. */
+  void wakeAll() {}
+
+  private static final class Blocking extends WaitStrategy {
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    // Publishers only take the lock when a subscriber may be asleep
+    private final AtomicBoolean signalNeeded = new AtomicBoolean();
+
+    @Override
+    long waitFor(
+      long sequence,
+      Sequence cursor,
+      ChangeEventBus.Subscription subscriber
+    ) {
+      long available = cursor.get();
+      if (available >= sequence) {
+        return available;
+      }
+      lock.lock();
+      try {
+        while (subscriber.isRunning()) {
+          signalNeeded.set(true);
+          available = cursor.get();
+          if (available >= sequence) {
+            break;
+          }
+          published.await(10, TimeUnit.MILLISECONDS);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        lock.unlock();
+      }
+      return cursor.get();
+    }
+
+    @Override
+    void signalAllWhenBlocking() {
+      if (signalNeeded.getAndSet(false)) {
+        wakeAll();
+      }
+    }
+
+    @Override
+    void wakeAll() {
+      lock.lock();
+      try {
+        published.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private static final class Sleeping extends WaitStrategy {
+
+    @Override
+    long waitFor(
+      long sequence,
+      Sequence cursor,
+      ChangeEventBus.Subscription subscriber
+    ) {
+      int tries = 2 * SPIN_TRIES;
+      long available;
+      while ((available = cursor.get()) < sequence && subscriber.isRunning()) {
+        if (tries > SPIN_TRIES) {
+          Thread.onSpinWait();
+          tries--;
+        } else if (tries > 0) {
+          Thread.yield();
+          tries--;
+        } else {
+          LockSupport.parkNanos(100_000);
+        }
+      }
+      return available;
+    }
+  }
+
+  private static final class Yielding extends WaitStrategy {
+
+    @Override
+    long waitFor(
+      long sequence,
+      Sequence cursor,
+      ChangeEventBus.Subscription subscriber
+    ) {
+      int tries = SPIN_TRIES;
+      long available;
+      while ((available = cursor.get()) < sequence && subscriber.isRunning()) {
+        if (tries > 0) {
+          Thread.onSpinWait();
+          tries--;
+        } else {
+          Thread.yield();
+        }
+      }
+      return available;
+    }
+  }
+
+  private static final class BusySpin extends WaitStrategy {
+
+    @Override
+    long waitFor(
+      long sequence,
+      Sequence cursor,
+      ChangeEventBus.Subscription subscriber
+    ) {
+      long available;
+      while ((available = cursor.get()) < sequence && subscriber.isRunning()) {
+        Thread.onSpinWait();
+      }
+      return available;
+    }
+  }
+}
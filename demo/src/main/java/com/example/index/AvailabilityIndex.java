@@ -0,0 +1,267 @@
+package com.example.index;
+
+import com.example.db.DBConfig;
+import com.example.metrics.Metrics;
+import com.example.models.Appointment;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory view of which fixed-length slots are booked for each doctor and
+ * day.
+ *
+ * A doctor's day is a bitset with one bit per slot ({@code 24 * 60 /
+ * slotMinutes} bits, a single long for 30 minute slots). Days are loaded
+ * lazily from the Scheduled appointments on first access, counting status
+ * changes still queued for writing, and afterwards kept current through
+ * {@link #onAppointmentChanged}, which {@link Appointment} calls for its
+ * writes and the status queue for the changes it takes, so lookups do not
+ * touch MySQL. At most {@code availability.maxDays} doctor-days are kept,
+ * least recently used first out.
+ */
+public final class AvailabilityIndex {
+
+  private static final String SCHEDULED = "Scheduled";
+  private static final int MAX_LOAD_ATTEMPTS = 3;
+
+  private static final AvailabilityIndex INSTANCE = new AvailabilityIndex(
+    DBConfig.get()
+  );
+
+  private final int slotMinutes;
+  private final int slotsPerDay;
+  private final LocalTime dayStart;
+  private final LocalTime dayEnd;
+  private final int maxDays;
+  private final LinkedHashMap<Long, DaySlots> days;
+
+  private long writes;
+
+  private static final class DaySlots {
+
+    final long[] bits;
+    // Two appointments in one slot: releasing one must not free the slot,
+    // so such a day is reloaded instead of updated in place
+    boolean overbooked;
+
+    DaySlots(int slots) {
+      bits = new long[(slots + 63) / 64];
+    }
+
+    boolean isSet(int slot) {
+      return (bits[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    void set(int slot) {
+      if (isSet(slot)) {
+        overbooked = true;
+      }
+      bits[slot >>> 6] |= 1L << slot;
+    }
+
+    void clear(int slot) {
+      bits[slot >>> 6] &= ~(1L << slot);
+    }
+  }
+
+  private AvailabilityIndex(DBConfig config) {
+    this.slotMinutes = config.getInt("availability.slotMinutes", 30);
+    if (slotMinutes < 1 || 24 * 60 % slotMinutes != 0) {
+      throw new IllegalArgumentException(
+        "availability.slotMinutes must divide a day evenly: " + slotMinutes
+      );
+    }
+    this.slotsPerDay = 24 * 60 / slotMinutes;
+    this.dayStart =
+      LocalTime.parse(config.getString("availability.dayStart", "08:00"));
+    this.dayEnd =
+      LocalTime.parse(config.getString("availability.dayEnd", "18:00"));
+    this.maxDays = config.getInt("availability.maxDays", 50_000);
+    this.days =
+      new LinkedHashMap<Long, DaySlots>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, DaySlots> eldest) {
+          return size() > AvailabilityIndex.this.maxDays;
+        }
+      };
+  }
+
+  public static AvailabilityIndex get() {
+    return INSTANCE;
+  }
+
+  public int getSlotMinutes() {
+    return slotMinutes;
+  }
+
+  public boolean isSlotFree(int doctorId, LocalDate date, LocalTime time)
+    throws SQLException {
+    try (Metrics.Timer timer = Metrics.start("AvailabilityIndex.isSlotFree")) {
+      DaySlots day = day(doctorId, date);
+      boolean free;
+      synchronized (this) {
+        free = !day.isSet(slotOf(time));
+      }
+      timer.success();
+      return free;
+    }
+  }
+
+  /** Free slot start times between availability.dayStart and dayEnd. */
+  public List<LocalTime> getFreeSlots(int doctorId, LocalDate date)
+    throws SQLException {
+    return slots(doctorId, date, false);
+  }
+
+  public List<LocalTime> getBookedSlots(int doctorId, LocalDate date)
+    throws SQLException {
+    return slots(doctorId, date, true);
+  }
+
+  /**
+   * Applies an appointment write, committed or queued. Pass {@code null}
+   * dates for the side that does not exist (the "before" of an insert, the
+   * "after" of a delete). Days that are not loaded are left alone; they will
+   * be read fresh on first access.
+   */
+  public synchronized void onAppointmentChanged(
+    int oldDoctorId,
+    Date oldDate,
+    Time oldTime,
+    String oldStatus,
+    int newDoctorId,
+    Date newDate,
+    Time newTime,
+    String newStatus
+  ) {
+    writes++;
+    boolean wasBooked = isBooking(oldDate, oldTime, oldStatus);
+    boolean isBooked = isBooking(newDate, newTime, newStatus);
+    if (
+      wasBooked &&
+      isBooked &&
+      oldDoctorId == newDoctorId &&
+      oldDate.equals(newDate) &&
+      slotOf(oldTime.toLocalTime()) == slotOf(newTime.toLocalTime())
+    ) {
+      return;
+    }
+    if (wasBooked) {
+      Long key = key(oldDoctorId, oldDate.toLocalDate());
+      DaySlots day = days.get(key);
+      if (day != null) {
+        if (day.overbooked) {
+          days.remove(key);
+        } else {
+          day.clear(slotOf(oldTime.toLocalTime()));
+        }
+      }
+    }
+    if (isBooked) {
+      DaySlots day = days.get(key(newDoctorId, newDate.toLocalDate()));
+      if (day != null) {
+        day.set(slotOf(newTime.toLocalTime()));
+      }
+    }
+  }
+
+  public synchronized void invalidate(int doctorId, LocalDate date) {
+    writes++;
+    days.remove(key(doctorId, date));
+  }
+
+  /** Drops every day of {@code doctorId}, whose appointments went at once. */
+  public synchronized void invalidate(int doctorId) {
+    writes++;
+    days.keySet().removeIf(key -> (int) (key >>> 32) == doctorId);
+  }
+
+  public synchronized void clear() {
+    writes++;
+    days.clear();
+  }
+
+  private List<LocalTime> slots(int doctorId, LocalDate date, boolean booked)
+    throws SQLException {
+    try (
+      Metrics.Timer timer = Metrics.start(
+        booked
+          ? "AvailabilityIndex.getBookedSlots"
+          : "AvailabilityIndex.getFreeSlots"
+      )
+    ) {
+      DaySlots day = day(doctorId, date);
+      List<LocalTime> result = new ArrayList<>();
+      int first = slotOf(dayStart);
+      int last = dayEnd.equals(LocalTime.MIDNIGHT)
+        ? slotsPerDay
+        : (dayEnd.toSecondOfDay() + slotMinutes * 60 - 1) / (slotMinutes * 60);
+      synchronized (this) {
+        for (int slot = first; slot < last; slot++) {
+          if (day.isSet(slot) == booked) {
+            result.add(LocalTime.ofSecondOfDay((long) slot * slotMinutes * 60));
+          }
+        }
+      }
+      timer.rows(result.size());
+      timer.success();
+      return result;
+    }
+  }
+
+  private DaySlots day(int doctorId, LocalDate date) throws SQLException {
+    Long key = key(doctorId, date);
+    for (int attempt = 1;; attempt++) {
+      long generation;
+      synchronized (this) {
+        DaySlots day = days.get(key);
+        if (day != null) {
+          return day;
+        }
+        generation = writes;
+      }
+
+      DaySlots loaded = new DaySlots(slotsPerDay);
+      for (Time time : Appointment.getBookedTimes(
+        doctorId,
+        Date.valueOf(date)
+      )) {
+        if (time != null) {
+          loaded.set(slotOf(time.toLocalTime()));
+        }
+      }
+
+      synchronized (this) {
+        // A write that committed or was queued while we were reading may be
+        // missing from what we loaded, so only publish a load nothing raced
+        // with
+        if (generation == writes) {
+          DaySlots existing = days.putIfAbsent(key, loaded);
+          return existing != null ? existing : loaded;
+        }
+      }
+      if (attempt == MAX_LOAD_ATTEMPTS) {
+        return loaded;
+      }
+    }
+  }
+
+  private static boolean isBooking(Date date, Time time, String status) {
+    return date != null && time != null && SCHEDULED.equals(status);
+  }
+
+  private int slotOf(LocalTime time) {
+    return time.toSecondOfDay() / (slotMinutes * 60);
+  }
+
+  private static Long key(int doctorId, LocalDate date) {
+    return ((long) doctorId << 32) | (date.toEpochDay() & 0xffffffffL);
+  }
+}
@@ -0,0 +1,135 @@
+package com.example.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate counts of the most frequent keys in a stream, using at most
+ * {@code capacity} counters (the Space-Saving algorithm of Metwally et al.).
+ *
+ * A key that is not monitored when the counters are full replaces the one
+ * with the smallest count and inherits that count as its possible
+ * overestimate, its {@link Entry#getError() error}. Any key whose true count
+ * exceeds {@code total / capacity} is guaranteed to be monitored, and every
+ * reported count is at most {@code error} above the true one.
+ *
+ * With a capacity above the number of distinct keys nothing is ever
+ * replaced and the counts are exact.
+ *
+ * Decrements are applied to monitored keys only; a key that is not
+ * monitored has already been counted as at most the smallest count. Not
+ * thread-safe.
+ */
+public final class SpaceSaving<K> {
+
+  /** A key with its estimated count. */
+  public static final class Entry<K> {
+
+    private final K key;
+    private final long count;
+    private final long error;
+
+    Entry(K key, long count, long error) {
+      this.key = key;
+      this.count = count;
+      this.error = error;
+    }
+
+    public K getKey() {
+      return key;
+    }
+
+    /** Estimated count, never below the true count of a monitored key. */
+    public long getCount() {
+      return count;
+    }
+
+    /** How much of {@link #getCount()} may be overestimate. */
+    public long getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return error == 0
+        ? key + ": " + count
+        : key + ": " + count + " (+/- " + error + ")";
+    }
+  }
+
+  private static final class Counter {
+
+    long count;
+    long error;
+
+    Counter(long count, long error) {
+      this.count = count;
+      this.error = error;
+    }
+  }
+
+  private final int capacity;
+  private final Map<K, Counter> counters;
+
+  public SpaceSaving(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.counters = new HashMap<>(Math.min(capacity, 1 << 10) * 2);
+  }
+
+  /** Adds {@code weight} occurrences of {@code key}; negative to remove. */
+  public void add(K key, long weight) {
+    Counter counter = counters.get(key);
+    if (counter != null) {
+      counter.count += weight;
+      if (counter.count <= 0) {
+        counters.remove(key);
+      } else if (counter.error > counter.count) {
+        counter.error = counter.count;
+      }
+      return;
+    }
+    if (weight <= 0) {
+      return;
+    }
+    if (counters.size() < capacity) {
+      counters.put(key, new Counter(weight, 0));
+      return;
+    }
+
+    // The counters are few, so a scan is cheaper than keeping them ordered
+    K minKey = null;
+    Counter min = null;
+    for (Map.Entry<K, Counter> entry : counters.entrySet()) {
+      if (min == null || entry.getValue().count < min.count) {
+        minKey = entry.getKey();
+        min = entry.getValue();
+      }
+    }
+    counters.remove(minKey);
+    counters.put(key, new Counter(min.count + weight, min.count));
+  }
+
+  /** The {@code k} keys with the highest estimated counts, highest first. */
+  public List<Entry<K>> top(int k) {
+    List<Entry<K>> entries = new ArrayList<>(counters.size());
+    for (Map.Entry<K, Counter> entry : counters.entrySet()) {
+      Counter counter = entry.getValue();
+      entries.add(new Entry<>(entry.getKey(), counter.count, counter.error));
+    }
+    entries.sort((a, b) -> Long.compare(b.count, a.count));
+    return entries.size() > k ? entries.subList(0, k) : entries;
+  }
+
+  public int size() {
+    return counters.size();
+  }
+
+  public void clear() {
+    counters.clear();
+  }
+}
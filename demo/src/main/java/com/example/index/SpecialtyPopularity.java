@@ -0,0 +1,338 @@
+package com.example.index;
+
+import com.example.DBConnection;
+import com.example.cache.IntObjectMap;
+import com.example.db.DBConfig;
+import com.example.db.InList;
+import com.example.metrics.Metrics;
+import com.example.models.AppointmentStatusQueue;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live ranking of doctor specialties, and of doctors, by the number of
+ * appointments that are not Cancelled.
+ *
+ * <pre>
+ * java com.example.index.SpecialtyPopularity [K]
+ * </pre>
+ *
+ * In {@code popularity.mode=approximate} (the default) each ranking is a
+ * {@link SpaceSaving} sketch of {@code popularity.capacity} counters, so
+ * memory stays fixed however many appointments there are; in
+ * {@code exact} mode every key keeps its own counter. Both are seeded on
+ * first use from one grouped query, which also loads each doctor's
+ * specialty, with the status changes still queued for writing laid over
+ * it, and are then updated through {@link #onAppointmentChanged} as
+ * appointments are booked, cancelled, moved or deleted, and as status
+ * changes are queued. Changes this cannot place (a doctor it has not seen,
+ * a specialty that changed, a deleted doctor) mark it for a rebuild on
+ * next use.
+ *
+ * Run standalone, it prints both modes next to the SQL aggregate it
+ * replaces.
+ */
+public final class SpecialtyPopularity {
+
+  public enum Mode {
+    EXACT,
+    APPROXIMATE,
+  }
+
+  private static final String CANCELLED = "Cancelled";
+  private static final String NO_SPECIALTY = "(none)";
+  private static final int MAX_LOAD_ATTEMPTS = 3;
+
+  private static final String COUNTS_SQL =
+    "SELECT d.DoctorID, d.Specialty, COUNT(a.AppointmentID) " +
+    "FROM Doctors d LEFT JOIN Appointments a ON a.DoctorID = d.DoctorID " +
+    "AND (a.Status IS NULL OR a.Status <> 'Cancelled') " +
+    "GROUP BY d.DoctorID, d.Specialty";
+  private static final String QUEUED_SQL =
+    "SELECT AppointmentID, DoctorID, Status FROM Appointments " +
+    "WHERE AppointmentID IN (";
+  private static final String TOP_SQL =
+    "SELECT COALESCE(d.Specialty, '" +
+    NO_SPECIALTY +
+    "'), COUNT(*) FROM Doctors d " +
+    "JOIN Appointments a ON a.DoctorID = d.DoctorID " +
+    "WHERE a.Status IS NULL OR a.Status <> 'Cancelled' " +
+    "GROUP BY 1 ORDER BY 2 DESC LIMIT ?";
+
+  private static final SpecialtyPopularity INSTANCE = fromConfig();
+
+  private final Mode mode;
+  private final int capacity;
+
+  private SpaceSaving<String> specialties;
+  private SpaceSaving<Integer> doctors;
+  private IntObjectMap<String> doctorSpecialties = new IntObjectMap<>();
+  private boolean loaded;
+  private long writes;
+
+  public SpecialtyPopularity(Mode mode, int capacity) {
+    this.mode = mode;
+    this.capacity = mode == Mode.EXACT ? Integer.MAX_VALUE : capacity;
+    this.specialties = new SpaceSaving<>(this.capacity);
+    this.doctors = new SpaceSaving<>(this.capacity);
+  }
+
+  private static SpecialtyPopularity fromConfig() {
+    DBConfig config = DBConfig.get();
+    return new SpecialtyPopularity(
+      Mode.valueOf(
+        config.getString("popularity.mode", "approximate").toUpperCase()
+      ),
+      config.getInt("popularity.capacity", 64)
+    );
+  }
+
+  public static SpecialtyPopularity get() {
+    return INSTANCE;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int k = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    try {
+      int capacity = DBConfig.get().getInt("popularity.capacity", 64);
+      print("SQL", topSpecialtiesFromDatabase(k));
+      print(
+        "Exact",
+        new SpecialtyPopularity(Mode.EXACT, capacity).topSpecialties(k)
+      );
+      print(
+        "Approximate (" + capacity + " counters)",
+        new SpecialtyPopularity(Mode.APPROXIMATE, capacity).topSpecialties(k)
+      );
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  private static void print(String title, List<SpaceSaving.Entry<String>> top) {
+    System.out.println(title + ":");
+    for (SpaceSaving.Entry<String> entry : top) {
+      System.out.println("  " + entry);
+    }
+  }
+
+  /** The {@code k} specialties with the most appointments. */
+  public List<SpaceSaving.Entry<String>> topSpecialties(int k)
+    throws SQLException {
+    ensureLoaded();
+    synchronized (this) {
+      return new ArrayList<>(specialties.top(k));
+    }
+  }
+
+  /** The {@code k} doctors with the most appointments, by doctor id. */
+  public List<SpaceSaving.Entry<Integer>> topDoctors(int k)
+    throws SQLException {
+    ensureLoaded();
+    synchronized (this) {
+      return new ArrayList<>(doctors.top(k));
+    }
+  }
+
+  /**
+   * The same ranking computed by MySQL, exact and without the tracker, for
+   * comparing against. It counts committed statuses only, without the
+   * changes still queued for writing.
+   */
+  public static List<SpaceSaving.Entry<String>> topSpecialtiesFromDatabase(
+    int k
+  ) throws SQLException {
+    List<SpaceSaving.Entry<String>> top = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("SpecialtyPopularity.fromDatabase");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(TOP_SQL)
+    ) {
+      pstmt.setInt(1, k);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          top.add(new SpaceSaving.Entry<>(rs.getString(1), rs.getLong(2), 0));
+        }
+      }
+      timer.rows(top.size());
+      timer.success();
+    }
+    return top;
+  }
+
+  /**
+   * Applies an appointment write, committed or queued. Pass doctor id
+   * {@code 0} for the side that does not exist (the "before" of an insert,
+   * the "after" of a delete).
+   */
+  public synchronized void onAppointmentChanged(
+    int oldDoctorId,
+    String oldStatus,
+    int newDoctorId,
+    String newStatus
+  ) {
+    writes++;
+    if (!loaded) {
+      return;
+    }
+    boolean wasCounted = oldDoctorId != 0 && !CANCELLED.equals(oldStatus);
+    boolean isCounted = newDoctorId != 0 && !CANCELLED.equals(newStatus);
+    if (wasCounted == isCounted && oldDoctorId == newDoctorId) {
+      return;
+    }
+    if (wasCounted && !count(oldDoctorId, -1)) {
+      loaded = false;
+      return;
+    }
+    if (isCounted && !count(newDoctorId, 1)) {
+      loaded = false;
+    }
+  }
+
+  /**
+   * Records a saved doctor; a changed specialty means rebuilding, since
+   * the old one's counts cannot be moved.
+   */
+  public synchronized void onDoctorSaved(int doctorId, String specialty) {
+    writes++;
+    if (!loaded) {
+      return;
+    }
+    String key = specialty == null ? NO_SPECIALTY : specialty;
+    String previous = doctorSpecialties.put(doctorId, key);
+    if (previous != null && !previous.equals(key)) {
+      loaded = false;
+    }
+  }
+
+  /** Forgets all counts; the next query rebuilds from the database. */
+  public synchronized void invalidate() {
+    writes++;
+    loaded = false;
+  }
+
+  /** Reloads the counts from the database now. */
+  public void rebuild() throws SQLException {
+    for (int attempt = 1;; attempt++) {
+      long generation;
+      synchronized (this) {
+        generation = writes;
+      }
+
+      SpaceSaving<String> loadedSpecialties = new SpaceSaving<>(capacity);
+      SpaceSaving<Integer> loadedDoctors = new SpaceSaving<>(capacity);
+      IntObjectMap<String> loadedMap = new IntObjectMap<>();
+      try (
+        Metrics.Timer timer = Metrics.start("SpecialtyPopularity.rebuild");
+        Connection conn = DBConnection.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(COUNTS_SQL)
+      ) {
+        int rows = 0;
+        while (rs.next()) {
+          int doctorId = rs.getInt(1);
+          String specialty = rs.getString(2);
+          long count = rs.getLong(3);
+          if (specialty == null) {
+            specialty = NO_SPECIALTY;
+          }
+          loadedMap.put(doctorId, specialty);
+          loadedSpecialties.add(specialty, count);
+          loadedDoctors.add(doctorId, count);
+          rows++;
+        }
+        timer.rows(rows);
+        timer.success();
+      }
+      overlayQueued(loadedSpecialties, loadedDoctors, loadedMap);
+
+      synchronized (this) {
+        // A write that committed or was queued during the queries may or
+        // may not be in them
+        if (generation == writes || attempt == MAX_LOAD_ATTEMPTS) {
+          specialties = loadedSpecialties;
+          doctors = loadedDoctors;
+          doctorSpecialties = loadedMap;
+          loaded = true;
+          return;
+        }
+      }
+    }
+  }
+
+  // Moves the counts of appointments with a queued status change from
+  // their committed status to the queued one
+  private static void overlayQueued(
+    SpaceSaving<String> specialties,
+    SpaceSaving<Integer> doctors,
+    IntObjectMap<String> doctorSpecialties
+  ) throws SQLException {
+    Map<Integer, String> queued = AppointmentStatusQueue
+      .get()
+      .pendingStatuses();
+    if (queued.isEmpty()) {
+      return;
+    }
+    int[] ids = new int[queued.size()];
+    int n = 0;
+    for (int id : queued.keySet()) {
+      ids[n++] = id;
+    }
+    try (
+      Metrics.Timer timer = Metrics.start("SpecialtyPopularity.overlayQueued");
+      Connection conn = DBConnection.getConnection()
+    ) {
+      for (int from = 0; from < ids.length; from += InList.MAX_SIZE) {
+        int count = Math.min(InList.MAX_SIZE, ids.length - from);
+        int size = InList.size(count);
+        String sql = QUEUED_SQL + InList.placeholders(size) + ")";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+          InList.bind(pstmt, 1, ids, from, count, size);
+          try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+              boolean wasCounted = !CANCELLED.equals(rs.getString(3));
+              boolean isCounted = !CANCELLED.equals(queued.get(rs.getInt(1)));
+              String specialty = doctorSpecialties.get(rs.getInt(2));
+              if (wasCounted != isCounted && specialty != null) {
+                long delta = isCounted ? 1 : -1;
+                specialties.add(specialty, delta);
+                doctors.add(rs.getInt(2), delta);
+              }
+            }
+          }
+        }
+      }
+      timer.rows(ids.length);
+      timer.success();
+    }
+  }
+
+  private void ensureLoaded() throws SQLException {
+    synchronized (this) {
+      if (loaded) {
+        return;
+      }
+    }
+    rebuild();
+  }
+
+  private boolean count(int doctorId, long delta) {
+    String specialty = doctorSpecialties.get(doctorId);
+    if (specialty == null) {
+      return false;
+    }
+    specialties.add(specialty, delta);
+    doctors.add(doctorId, delta);
+    return true;
+  }
+}
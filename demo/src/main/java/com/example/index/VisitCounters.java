@@ -0,0 +1,352 @@
+package com.example.index;
+
+import com.example.DBConnection;
+import com.example.db.DBConfig;
+import com.example.metrics.Metrics;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * In-memory count of appointments per patient over a sliding window of
+ * months, for the "more than N appointments in the past M months" question.
+ *
+ * Counts are kept per calendar month in a ring of {@code int[]} arrays
+ * indexed by patient id: one slot for each of the last
+ * {@code visits.windowMonths} months, the current one included, and one for
+ * each of the next {@code visits.horizonMonths}, since scheduled
+ * appointments count too, as in the original query. A running total per
+ * patient and a bitset of the patients above {@code visits.threshold} are
+ * updated with every change, so a count or a frequent check is an array
+ * read. When the month turns, the oldest slot is subtracted from the
+ * totals and reused for the new last month of the horizon.
+ *
+ * The counters are seeded from {@code Appointments} on first use and
+ * afterwards kept current by {@code Appointment} through
+ * {@link #onAppointmentChanged}. Appointments past the horizon cannot be
+ * placed in the ring; if there are any, the month change reseeds instead.
+ * Every appointment counts whatever its status, as in the query this
+ * replaces.
+ */
+public final class VisitCounters {
+
+  private static final int MAX_LOAD_ATTEMPTS = 3;
+
+  private static final VisitCounters INSTANCE = new VisitCounters(
+    DBConfig.get()
+  );
+
+  private final int windowMonths;
+  private final int horizonMonths;
+  private final int threshold;
+  private final Clock clock;
+
+  // months[slot][patientId]; slot = month index modulo the ring size
+  private final int[][] months;
+  private int[] totals = new int[0];
+  private final BitSet frequent = new BitSet();
+
+  private boolean seeded;
+  // Index (year * 12 + month - 1) of the oldest month in the window
+  private int firstMonth;
+  private boolean beyondHorizon;
+  private long writes;
+
+  private VisitCounters(DBConfig config) {
+    this(
+      config.getInt("visits.windowMonths", 6),
+      config.getInt("visits.horizonMonths", 12),
+      config.getInt("visits.threshold", 3),
+      Clock.systemDefaultZone()
+    );
+    Metrics.gauge(
+      "hms_visits_frequent_patients",
+      "Patients with more than visits.threshold appointments in the window",
+      () -> {
+        synchronized (this) {
+          return frequent.cardinality();
+        }
+      }
+    );
+  }
+
+  VisitCounters(
+    int windowMonths,
+    int horizonMonths,
+    int threshold,
+    Clock clock
+  ) {
+    if (windowMonths < 1 || horizonMonths < 0) {
+      throw new IllegalArgumentException(
+        "visits.windowMonths must be positive and visits.horizonMonths " +
+        "not negative"
+      );
+    }
+    this.windowMonths = windowMonths;
+    this.horizonMonths = horizonMonths;
+    this.threshold = threshold;
+    this.clock = clock;
+    this.months = new int[windowMonths + horizonMonths][0];
+  }
+
+  public static VisitCounters get() {
+    return INSTANCE;
+  }
+
+  public int getWindowMonths() {
+    return windowMonths;
+  }
+
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /** Appointments of {@code patientId} dated in the window. */
+  public int getVisitCount(int patientId) throws SQLException {
+    ensureCurrent();
+    synchronized (this) {
+      return patientId >= 0 && patientId < totals.length
+        ? totals[patientId]
+        : 0;
+    }
+  }
+
+  /** Whether the patient has more than {@code visits.threshold} visits. */
+  public boolean isFrequent(int patientId) throws SQLException {
+    ensureCurrent();
+    synchronized (this) {
+      return patientId >= 0 && frequent.get(patientId);
+    }
+  }
+
+  /** Ids of the patients above the threshold, in ascending order. */
+  public int[] getFrequentPatients() throws SQLException {
+    try (
+      Metrics.Timer timer = Metrics.start("VisitCounters.getFrequentPatients")
+    ) {
+      ensureCurrent();
+      int[] ids;
+      synchronized (this) {
+        ids = frequent.stream().toArray();
+      }
+      timer.rows(ids.length);
+      timer.success();
+      return ids;
+    }
+  }
+
+  /**
+   * Applies a committed appointment write. Pass {@code null} for the date
+   * of the side that does not exist (the "before" of an insert, the
+   * "after" of a delete). Before the first seed this only notes the write.
+   */
+  public synchronized void onAppointmentChanged(
+    int oldPatientId,
+    Date oldDate,
+    int newPatientId,
+    Date newDate
+  ) {
+    writes++;
+    if (!seeded) {
+      return;
+    }
+    if (
+      oldPatientId == newPatientId &&
+      oldDate != null &&
+      newDate != null &&
+      monthIndex(oldDate.toLocalDate()) == monthIndex(newDate.toLocalDate())
+    ) {
+      return;
+    }
+    if (oldDate != null) {
+      add(oldPatientId, monthIndex(oldDate.toLocalDate()), -1);
+    }
+    if (newDate != null) {
+      add(newPatientId, monthIndex(newDate.toLocalDate()), 1);
+    }
+  }
+
+  /** Drops a deleted patient, whose appointments went with it. */
+  public synchronized void onPatientDeleted(int patientId) {
+    writes++;
+    if (patientId < 0 || patientId >= totals.length) {
+      return;
+    }
+    for (int[] month : months) {
+      if (patientId < month.length) {
+        month[patientId] = 0;
+      }
+    }
+    totals[patientId] = 0;
+    frequent.clear(patientId);
+  }
+
+  /** Forgets all counts; the next query reseeds from the database. */
+  public synchronized void clear() {
+    writes++;
+    seeded = false;
+    for (int i = 0; i < months.length; i++) {
+      months[i] = new int[0];
+    }
+    totals = new int[0];
+    frequent.clear();
+  }
+
+  private void ensureCurrent() throws SQLException {
+    int current = monthIndex(YearMonth.now(clock));
+    synchronized (this) {
+      if (seeded && current - firstMonth < windowMonths) {
+        return;
+      }
+      if (seeded && !beyondHorizon) {
+        while (current - firstMonth >= windowMonths) {
+          expireOldestMonth();
+        }
+        return;
+      }
+    }
+    seed(current);
+  }
+
+  /** Starts counting as if there were no appointments, without a query. */
+  synchronized void seedEmpty() {
+    int current = monthIndex(YearMonth.now(clock));
+    publish(new int[months.length][0], current - windowMonths + 1, false);
+  }
+
+  private void seed(int current) throws SQLException {
+    int first = current - windowMonths + 1;
+    int last = current + horizonMonths;
+    String sql =
+      "SELECT PatientID, YEAR(Date) * 12 + MONTH(Date) - 1, COUNT(*) " +
+      "FROM Appointments WHERE Date >= ? AND PatientID IS NOT NULL " +
+      "GROUP BY 1, 2";
+    for (int attempt = 1;; attempt++) {
+      long generation;
+      synchronized (this) {
+        generation = writes;
+      }
+
+      int[][] loaded = new int[months.length][0];
+      boolean beyond = false;
+      try (
+        Metrics.Timer timer = Metrics.start("VisitCounters.seed");
+        Connection conn = DBConnection.getConnection();
+        PreparedStatement pstmt = conn.prepareStatement(sql)
+      ) {
+        pstmt.setDate(1, Date.valueOf(toYearMonth(first).atDay(1)));
+        int rows = 0;
+        try (ResultSet rs = pstmt.executeQuery()) {
+          while (rs.next()) {
+            int patientId = rs.getInt(1);
+            int month = rs.getInt(2);
+            if (month > last) {
+              beyond = true;
+              continue;
+            }
+            int slot = slot(month);
+            loaded[slot] = grow(loaded[slot], patientId);
+            loaded[slot][patientId] += rs.getInt(3);
+            rows++;
+          }
+        }
+        timer.rows(rows);
+        timer.success();
+      }
+
+      synchronized (this) {
+        // As in AvailabilityIndex: a write that committed while we were
+        // reading may or may not be in what we read, so only a load nothing
+        // raced with is exact
+        if (generation == writes || attempt == MAX_LOAD_ATTEMPTS) {
+          publish(loaded, first, beyond);
+          return;
+        }
+      }
+    }
+  }
+
+  private void publish(int[][] loaded, int first, boolean beyond) {
+    int size = 0;
+    for (int[] month : loaded) {
+      size = Math.max(size, month.length);
+    }
+    totals = new int[size];
+    frequent.clear();
+    for (int slot = 0; slot < months.length; slot++) {
+      months[slot] = loaded[slot];
+      for (int id = 0; id < loaded[slot].length; id++) {
+        totals[id] += loaded[slot][id];
+      }
+    }
+    for (int id = 0; id < size; id++) {
+      if (totals[id] > threshold) {
+        frequent.set(id);
+      }
+    }
+    firstMonth = first;
+    beyondHorizon = beyond;
+    seeded = true;
+  }
+
+  private void expireOldestMonth() {
+    int[] expired = months[slot(firstMonth)];
+    for (int id = 0; id < expired.length; id++) {
+      if (expired[id] != 0) {
+        totals[id] -= expired[id];
+        if (totals[id] <= threshold) {
+          frequent.clear(id);
+        }
+      }
+    }
+    // The slot comes back as the month entering the horizon
+    Arrays.fill(expired, 0);
+    firstMonth++;
+  }
+
+  private void add(int patientId, int month, int delta) {
+    if (patientId <= 0 || month < firstMonth) {
+      return;
+    }
+    if (month >= firstMonth + months.length) {
+      beyondHorizon = true;
+      return;
+    }
+    int slot = slot(month);
+    months[slot] = grow(months[slot], patientId);
+    totals = grow(totals, patientId);
+    months[slot][patientId] = Math.max(0, months[slot][patientId] + delta);
+    totals[patientId] = Math.max(0, totals[patientId] + delta);
+    frequent.set(patientId, totals[patientId] > threshold);
+  }
+
+  private int slot(int month) {
+    return Math.floorMod(month, months.length);
+  }
+
+  private static int[] grow(int[] counts, int patientId) {
+    if (patientId < counts.length) {
+      return counts;
+    }
+    return Arrays.copyOf(counts, Math.max(patientId + 1, counts.length * 2));
+  }
+
+  private static int monthIndex(LocalDate date) {
+    return date.getYear() * 12 + date.getMonthValue() - 1;
+  }
+
+  private static int monthIndex(YearMonth month) {
+    return month.getYear() * 12 + month.getMonthValue() - 1;
+  }
+
+  private static YearMonth toYearMonth(int month) {
+    return YearMonth.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1);
+  }
+}
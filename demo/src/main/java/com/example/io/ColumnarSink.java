@@ -0,0 +1,187 @@
+package com.example.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * Compact binary columnar format. Layout, all numbers big-endian:
+ *
+ * <pre>
+ * "HMSC" u16 version u16 columnCount
+ * per column: UTF name, u8 type, u8 scale
+ * row groups: i32 rowCount (0 terminates the file), then per column a null
+ *   bitmap of ceil(rowCount / 8) bytes followed by the non-null values
+ * </pre>
+ *
+ * Value encodings: INT i32, LONG i64, DECIMAL unscaled i64 at the column
+ * scale, DATE i32 epoch day, TIME i32 second of day, STRING i32 byte length
+ * plus UTF-8 bytes.
+ */
+final class ColumnarSink implements RowSink {
+
+  static final byte INT = 1;
+  static final byte LONG = 2;
+  static final byte DECIMAL = 3;
+  static final byte DATE = 4;
+  static final byte TIME = 5;
+  static final byte STRING = 6;
+
+  private static final int VERSION = 1;
+  private static final int ROW_GROUP_SIZE = 4096;
+
+  private final DataOutputStream out;
+  private byte[] types;
+  private int[] scales;
+  private boolean[][] nulls;
+  private long[][] numbers;
+  private String[][] strings;
+  private int rows;
+
+  ColumnarSink(OutputStream out) {
+    this.out = new DataOutputStream(out);
+  }
+
+  @Override
+  public void start(ResultSetMetaData metaData)
+    throws SQLException, IOException {
+    int columns = metaData.getColumnCount();
+    types = new byte[columns];
+    scales = new int[columns];
+    nulls = new boolean[columns][ROW_GROUP_SIZE];
+    numbers = new long[columns][];
+    strings = new String[columns][];
+
+    out.writeBytes("HMSC");
+    out.writeShort(VERSION);
+    out.writeShort(columns);
+    for (int c = 0; c < columns; c++) {
+      types[c] = typeOf(metaData.getColumnType(c + 1));
+      scales[c] = types[c] == DECIMAL ? metaData.getScale(c + 1) : 0;
+      if (types[c] == STRING) {
+        strings[c] = new String[ROW_GROUP_SIZE];
+      } else {
+        numbers[c] = new long[ROW_GROUP_SIZE];
+      }
+      out.writeUTF(metaData.getColumnLabel(c + 1));
+      out.writeByte(types[c]);
+      out.writeByte(scales[c]);
+    }
+  }
+
+  @Override
+  public void write(ResultSet rs) throws SQLException, IOException {
+    for (int c = 0; c < types.length; c++) {
+      int column = c + 1;
+      switch (types[c]) {
+        case INT:
+          numbers[c][rows] = rs.getInt(column);
+          break;
+        case LONG:
+          numbers[c][rows] = rs.getLong(column);
+          break;
+        case DECIMAL:
+          BigDecimal decimal = rs.getBigDecimal(column);
+          numbers[c][rows] = decimal == null
+            ? 0
+            : decimal.setScale(scales[c]).unscaledValue().longValueExact();
+          break;
+        case DATE:
+          Date date = rs.getDate(column);
+          numbers[c][rows] = date == null ? 0 : date.toLocalDate().toEpochDay();
+          break;
+        case TIME:
+          Time time = rs.getTime(column);
+          numbers[c][rows] =
+            time == null ? 0 : time.toLocalTime().toSecondOfDay();
+          break;
+        default:
+          strings[c][rows] = rs.getString(column);
+          break;
+      }
+      nulls[c][rows] = rs.wasNull();
+    }
+    if (++rows == ROW_GROUP_SIZE) {
+      flushRowGroup();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      if (types != null) {
+        flushRowGroup();
+        out.writeInt(0);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private void flushRowGroup() throws IOException {
+    if (rows == 0) {
+      return;
+    }
+    out.writeInt(rows);
+    byte[] bitmap = new byte[(rows + 7) / 8];
+    for (int c = 0; c < types.length; c++) {
+      Arrays.fill(bitmap, (byte) 0);
+      for (int r = 0; r < rows; r++) {
+        if (nulls[c][r]) {
+          bitmap[r >>> 3] |= (byte) (1 << (r & 7));
+        }
+      }
+      out.write(bitmap);
+      for (int r = 0; r < rows; r++) {
+        if (nulls[c][r]) {
+          continue;
+        }
+        switch (types[c]) {
+          case LONG:
+          case DECIMAL:
+            out.writeLong(numbers[c][r]);
+            break;
+          case STRING:
+            byte[] bytes = strings[c][r].getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            strings[c][r] = null;
+            break;
+          default:
+            out.writeInt((int) numbers[c][r]);
+            break;
+        }
+      }
+    }
+    rows = 0;
+  }
+
+  private static byte typeOf(int sqlType) {
+    switch (sqlType) {
+      case Types.TINYINT:
+      case Types.SMALLINT:
+      case Types.INTEGER:
+        return INT;
+      case Types.BIGINT:
+        return LONG;
+      case Types.DECIMAL:
+      case Types.NUMERIC:
+        return DECIMAL;
+      case Types.DATE:
+        return DATE;
+      case Types.TIME:
+        return TIME;
+      default:
+        return STRING;
+    }
+  }
+}
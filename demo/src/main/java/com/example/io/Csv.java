@@ -0,0 +1,101 @@
+package com.example.io;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Minimal RFC 4180 CSV reading and writing. */
+public final class Csv {
+
+  private Csv() {}
+
+  /**
+   * Reads the next record, following quoted fields across line breaks.
+   *
+   * @return the fields, or null at end of input
+   */
+  public static List<String> readRecord(BufferedReader reader)
+    throws IOException {
+    String line = reader.readLine();
+    if (line == null) {
+      return null;
+    }
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    int i = 0;
+    while (true) {
+      if (i == line.length()) {
+        if (!quoted) {
+          break;
+        }
+        String next = reader.readLine();
+        if (next == null) {
+          throw new IOException("Unterminated quoted field at end of input");
+        }
+        field.append('\n');
+        line = next;
+        i = 0;
+        continue;
+      }
+      char c = line.charAt(i++);
+      if (quoted) {
+        if (c == '"') {
+          if (i < line.length() && line.charAt(i) == '"') {
+            field.append('"');
+            i++;
+          } else {
+            quoted = false;
+          }
+        } else {
+          field.append(c);
+        }
+      } else if (c == '"' && field.length() == 0) {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  public static String formatRecord(List<String> fields) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < fields.size(); i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      appendField(sb, fields.get(i));
+    }
+    return sb.toString();
+  }
+
+  public static void appendField(StringBuilder sb, String value) {
+    if (value == null) {
+      return;
+    }
+    boolean needsQuotes =
+      value.indexOf(',') >= 0 ||
+      value.indexOf('"') >= 0 ||
+      value.indexOf('\n') >= 0 ||
+      value.indexOf('\r') >= 0;
+    if (!needsQuotes) {
+      sb.append(value);
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        sb.append('"');
+      }
+      sb.append(c);
+    }
+    sb.append('"');
+  }
+}
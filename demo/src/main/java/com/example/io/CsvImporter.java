@@ -0,0 +1,402 @@
+package com.example.io;
+
+import com.example.DBConnection;
+import com.example.db.BatchResult;
+import com.example.models.Appointment;
+import com.example.models.Patient;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Streams a CSV file of patients or appointments into the database.
+ *
+ * <pre>
+ * java com.example.io.CsvImporter patients|appointments FILE.csv
+ *     [--rejects FILE] [--batch N] [--workers N] [--writers N]
+ * </pre>
+ *
+ * The file is read sequentially and handed out in chunks of {@code --batch}
+ * records to parser threads, which validate each record (gender and status
+ * enums, YYYY-MM-DD dates, HH:MM times) and pass the valid rows on to writer
+ * threads that store them with {@code saveAll}. Both hand-offs go through
+ * small bounded queues, so a slow database throttles the reader instead of
+ * filling the heap. Invalid records and rows the database refused are
+ * written to the reject file with the reason.
+ */
+public final class CsvImporter<T> {
+
+  private interface ChunkWriter<T> {
+    BatchResult<T> write(List<T> rows, int batchSize) throws SQLException;
+  }
+
+  private static final class Record {
+
+    final long number;
+    final List<String> fields;
+
+    Record(long number, List<String> fields) {
+      this.number = number;
+      this.fields = fields;
+    }
+  }
+
+  private static final class ParsedChunk<T> {
+
+    final List<T> rows = new ArrayList<>();
+    final Map<T, Record> sources = new IdentityHashMap<>();
+  }
+
+  private static final List<Record> END_OF_INPUT = new ArrayList<>();
+  private static final long QUEUE_POLL_MS = 100;
+  private static final long PROGRESS_INTERVAL_SECONDS = 5;
+
+  private final Path source;
+  private final Path rejects;
+  private final List<String> columns;
+  private final Function<List<String>, T> parser;
+  private final ChunkWriter<T> writer;
+  private final int batchSize;
+  private final int workers;
+  private final int writers;
+
+  private final AtomicLong read = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  private final ParsedChunk<T> endOfRows = new ParsedChunk<>();
+
+  private BufferedWriter rejectWriter;
+
+  private CsvImporter(
+    Path source,
+    Path rejects,
+    List<String> columns,
+    Function<List<String>, T> parser,
+    ChunkWriter<T> writer,
+    int batchSize,
+    int workers,
+    int writers
+  ) {
+    this.source = source;
+    this.rejects = rejects;
+    this.columns = columns;
+    this.parser = parser;
+    this.writer = writer;
+    this.batchSize = batchSize;
+    this.workers = workers;
+    this.writers = writers;
+  }
+
+  public static CsvImporter<Patient> patients(
+    Path source,
+    Path rejects,
+    int batchSize,
+    int workers,
+    int writers
+  ) {
+    return new CsvImporter<>(
+      source,
+      rejects,
+      RowParsers.PATIENT_COLUMNS,
+      RowParsers::patient,
+      Patient::saveAll,
+      batchSize,
+      workers,
+      writers
+    );
+  }
+
+  public static CsvImporter<Appointment> appointments(
+    Path source,
+    Path rejects,
+    int batchSize,
+    int workers,
+    int writers
+  ) {
+    return new CsvImporter<>(
+      source,
+      rejects,
+      RowParsers.APPOINTMENT_COLUMNS,
+      RowParsers::appointment,
+      Appointment::saveAll,
+      batchSize,
+      workers,
+      writers
+    );
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println(
+        "Usage: CsvImporter patients|appointments FILE.csv [--rejects FILE] " +
+        "[--batch N] [--workers N] [--writers N]"
+      );
+      return;
+    }
+    Path source = Paths.get(args[1]);
+    Path rejects = Paths.get(args[1] + ".rejects.csv");
+    int batchSize = 1000;
+    int workers = Runtime.getRuntime().availableProcessors();
+    int writers = 2;
+    for (int i = 2; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--rejects":
+          rejects = Paths.get(args[i + 1]);
+          break;
+        case "--batch":
+          batchSize = Integer.parseInt(args[i + 1]);
+          break;
+        case "--workers":
+          workers = Integer.parseInt(args[i + 1]);
+          break;
+        case "--writers":
+          writers = Integer.parseInt(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    CsvImporter<?> importer;
+    switch (args[0]) {
+      case "patients":
+        importer = patients(source, rejects, batchSize, workers, writers);
+        break;
+      case "appointments":
+        importer = appointments(source, rejects, batchSize, workers, writers);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown entity " + args[0]);
+    }
+    try {
+      importer.run();
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  public void run() throws Exception {
+    BlockingQueue<List<Record>> parseQueue = new ArrayBlockingQueue<>(
+      workers * 2
+    );
+    BlockingQueue<ParsedChunk<T>> writeQueue = new ArrayBlockingQueue<>(
+      writers * 2
+    );
+    ExecutorService parsers = Executors.newFixedThreadPool(workers);
+    ExecutorService dbWriters = Executors.newFixedThreadPool(writers);
+    ScheduledExecutorService progress =
+      Executors.newSingleThreadScheduledExecutor();
+    long startedAt = System.nanoTime();
+    progress.scheduleAtFixedRate(
+      () -> report("Progress", startedAt),
+      PROGRESS_INTERVAL_SECONDS,
+      PROGRESS_INTERVAL_SECONDS,
+      TimeUnit.SECONDS
+    );
+
+    try (
+      BufferedReader reader = Files.newBufferedReader(
+        source,
+        StandardCharsets.UTF_8
+      );
+      BufferedWriter rejectOut = Files.newBufferedWriter(
+        rejects,
+        StandardCharsets.UTF_8
+      )
+    ) {
+      rejectWriter = rejectOut;
+      List<String> rejectHeader = new ArrayList<>(columns);
+      rejectHeader.add("Record");
+      rejectHeader.add("Error");
+      rejectOut.write(Csv.formatRecord(rejectHeader));
+      rejectOut.newLine();
+
+      List<Future<?>> parserTasks = new ArrayList<>();
+      for (int i = 0; i < workers; i++) {
+        parserTasks.add(
+          parsers.submit(() -> parseLoop(parseQueue, writeQueue))
+        );
+      }
+      List<Future<?>> writerTasks = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        writerTasks.add(dbWriters.submit(() -> writeLoop(writeQueue)));
+      }
+
+      readLoop(reader, parseQueue);
+      for (int i = 0; i < workers; i++) {
+        put(parseQueue, END_OF_INPUT);
+      }
+      awaitAll(parserTasks);
+      for (int i = 0; i < writers; i++) {
+        put(writeQueue, endOfRows);
+      }
+      awaitAll(writerTasks);
+    } catch (InterruptedException e) {
+      // A stage failed and the others gave up; report the original cause
+      if (failure.get() == null) {
+        throw e;
+      }
+    } finally {
+      progress.shutdownNow();
+      parsers.shutdownNow();
+      dbWriters.shutdownNow();
+    }
+
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+    report("Finished", startedAt);
+  }
+
+  private void readLoop(
+    BufferedReader reader,
+    BlockingQueue<List<Record>> queue
+  ) throws IOException, InterruptedException {
+    List<Record> chunk = new ArrayList<>(batchSize);
+    List<String> fields;
+    long number = 0;
+    while (failure.get() == null && (fields = Csv.readRecord(reader)) != null) {
+      if (number == 0 && RowParsers.isHeader(fields, columns)) {
+        number++;
+        continue;
+      }
+      chunk.add(new Record(++number, fields));
+      read.incrementAndGet();
+      if (chunk.size() == batchSize) {
+        put(queue, chunk);
+        chunk = new ArrayList<>(batchSize);
+      }
+    }
+    if (!chunk.isEmpty()) {
+      put(queue, chunk);
+    }
+  }
+
+  private Void parseLoop(
+    BlockingQueue<List<Record>> in,
+    BlockingQueue<ParsedChunk<T>> out
+  ) throws Exception {
+    try {
+      List<Record> chunk;
+      while ((chunk = take(in)) != END_OF_INPUT) {
+        ParsedChunk<T> parsed = new ParsedChunk<>();
+        for (Record record : chunk) {
+          try {
+            T row = parser.apply(record.fields);
+            parsed.rows.add(row);
+            parsed.sources.put(row, record);
+          } catch (IllegalArgumentException e) {
+            reject(record, e.getMessage());
+          }
+        }
+        if (!parsed.rows.isEmpty()) {
+          put(out, parsed);
+        }
+      }
+      return null;
+    } catch (Exception e) {
+      failure.compareAndSet(null, e);
+      throw e;
+    }
+  }
+
+  private Void writeLoop(BlockingQueue<ParsedChunk<T>> in) throws Exception {
+    try {
+      ParsedChunk<T> chunk;
+      while ((chunk = take(in)) != endOfRows) {
+        BatchResult<T> result = writer.write(chunk.rows, batchSize);
+        written.addAndGet(result.getSavedCount());
+        for (BatchResult.Failure<T> rowFailure : result.getFailures()) {
+          reject(
+            chunk.sources.get(rowFailure.getRow()),
+            rowFailure.getError().getMessage()
+          );
+        }
+      }
+      return null;
+    } catch (Exception e) {
+      failure.compareAndSet(null, e);
+      throw e;
+    }
+  }
+
+  private void reject(Record record, String reason) throws IOException {
+    rejected.incrementAndGet();
+    List<String> fields = new ArrayList<>(record.fields);
+    fields.add(Long.toString(record.number));
+    fields.add(reason);
+    String line = Csv.formatRecord(fields);
+    synchronized (this) {
+      rejectWriter.write(line);
+      rejectWriter.newLine();
+    }
+  }
+
+  // Bounded hand-offs that give up once another stage has failed, so a dead
+  // writer cannot leave the reader blocked on a full queue
+  private <E> void put(BlockingQueue<E> queue, E item)
+    throws InterruptedException {
+    while (!queue.offer(item, QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) {
+      if (failure.get() != null) {
+        throw new InterruptedException("Import aborted");
+      }
+    }
+  }
+
+  private <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+    E item;
+    while ((item = queue.poll(QUEUE_POLL_MS, TimeUnit.MILLISECONDS)) == null) {
+      if (failure.get() != null) {
+        throw new InterruptedException("Import aborted");
+      }
+    }
+    return item;
+  }
+
+  private void awaitAll(List<Future<?>> tasks) throws InterruptedException {
+    for (Future<?> task : tasks) {
+      try {
+        task.get();
+      } catch (ExecutionException e) {
+        // Recorded in failure by the task itself
+      }
+    }
+  }
+
+  private void report(String label, long startedAt) {
+    double seconds = Math.max(
+      (System.nanoTime() - startedAt) / 1_000_000_000.0,
+      0.001
+    );
+    System.out.printf(
+      "%s: read %d, imported %d, rejected %d in %.1f s (%.0f rows/s)%n",
+      label,
+      read.get(),
+      written.get(),
+      rejected.get(),
+      seconds,
+      written.get() / seconds
+    );
+  }
+}
@@ -0,0 +1,55 @@
+package com.example.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/** Writes rows as RFC 4180 CSV with a header line. */
+final class CsvSink implements RowSink {
+
+  private final Writer out;
+  private final StringBuilder line = new StringBuilder(256);
+  private int columns;
+
+  CsvSink(OutputStream out) {
+    this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void start(ResultSetMetaData metaData)
+    throws SQLException, IOException {
+    columns = metaData.getColumnCount();
+    line.setLength(0);
+    for (int i = 1; i <= columns; i++) {
+      if (i > 1) {
+        line.append(',');
+      }
+      Csv.appendField(line, metaData.getColumnLabel(i));
+    }
+    line.append('\n');
+    out.write(line.toString());
+  }
+
+  @Override
+  public void write(ResultSet rs) throws SQLException, IOException {
+    line.setLength(0);
+    for (int i = 1; i <= columns; i++) {
+      if (i > 1) {
+        line.append(',');
+      }
+      Csv.appendField(line, rs.getString(i));
+    }
+    line.append('\n');
+    out.write(line.toString());
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,461 @@
+package com.example.io;
+
+import com.example.DBConnection;
+import com.example.db.ResultSetStream;
+import com.example.models.AppointmentStatusQueue;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a table or the appointment join straight from the result set into
+ * flat files.
+ *
+ * <pre>
+ * java com.example.io.Exporter appointments|bills|patients|doctors OUT_DIR
+ *     [--format csv|columnar] [--gzip] [--from YYYY-MM-DD] [--to YYYY-MM-DD]
+ *     [--partition none|month|day] [--threads N]
+ * </pre>
+ *
+ * Appointments and bills can be split by date into one file per month or
+ * day. Each partition runs its own range query on its own connection, and
+ * up to {@code --threads} partitions are written at once. Rows are read with
+ * the streaming fetch size and written through a buffered stream, so memory
+ * use does not grow with the size of the extract. Files are written under a
+ * {@code .part} name and renamed once complete.
+ */
+public final class Exporter {
+
+  public enum Format {
+    CSV(".csv"),
+    COLUMNAR(".hmsc");
+
+    private final String extension;
+
+    Format(String extension) {
+      this.extension = extension;
+    }
+  }
+
+  public enum Partitioning {
+    NONE,
+    MONTH,
+    DAY,
+  }
+
+  private static final class Dataset {
+
+    final String name;
+    final String sql;
+    final String dateColumn;
+    final String orderBy;
+    final String rangeSql;
+
+    Dataset(
+      String name,
+      String sql,
+      String dateColumn,
+      String orderBy,
+      String rangeSql
+    ) {
+      this.name = name;
+      this.sql = sql;
+      this.dateColumn = dateColumn;
+      this.orderBy = orderBy;
+      this.rangeSql = rangeSql;
+    }
+  }
+
+  private static final class Partition {
+
+    final String label;
+    final LocalDate from;
+    final LocalDate until;
+    final boolean undated;
+
+    Partition(String label, LocalDate from, LocalDate until, boolean undated) {
+      this.label = label;
+      this.from = from;
+      this.until = until;
+      this.undated = undated;
+    }
+  }
+
+  private static final Dataset APPOINTMENTS = new Dataset(
+    "appointments",
+    "SELECT a.appointmentID, p.patientID, p.Name as PatientName, d.doctorID, d.Name as DoctorName, a.Date, a.Time, a.Status " +
+    "FROM appointments a " +
+    "JOIN patients p ON a.patientID = p.patientID " +
+    "JOIN doctors d ON a.doctorID = d.doctorID",
+    "a.Date",
+    "a.Date, a.Time, a.appointmentID",
+    "SELECT MIN(Date), MAX(Date) FROM Appointments"
+  );
+  private static final Dataset BILLS = new Dataset(
+    "bills",
+    "SELECT BillID, AppointmentID, TotalAmount, DateOfPayment, PaymentStatus FROM Bills",
+    "DateOfPayment",
+    "BillID",
+    "SELECT MIN(DateOfPayment), MAX(DateOfPayment) FROM Bills"
+  );
+  private static final Dataset PATIENTS = new Dataset(
+    "patients",
+    "SELECT PatientID, Name, Age, Gender, Address, ContactNumber, MedicalHistory FROM Patients",
+    null,
+    "PatientID",
+    null
+  );
+  private static final Dataset DOCTORS = new Dataset(
+    "doctors",
+    "SELECT DoctorID, Name, Specialty, YearsOfExperience, ContactInformation FROM Doctors",
+    null,
+    "DoctorID",
+    null
+  );
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Dataset dataset;
+  private final Path directory;
+  private final Format format;
+  private final boolean gzip;
+  private final LocalDate from;
+  private final LocalDate to;
+  private final Partitioning partitioning;
+  private final int threads;
+
+  private Exporter(
+    Dataset dataset,
+    Path directory,
+    Format format,
+    boolean gzip,
+    LocalDate from,
+    LocalDate to,
+    Partitioning partitioning,
+    int threads
+  ) {
+    if (dataset.dateColumn == null && (from != null || to != null)) {
+      throw new IllegalArgumentException(
+        dataset.name + " cannot be filtered by date"
+      );
+    }
+    this.dataset = dataset;
+    this.directory = directory;
+    this.format = format;
+    this.gzip = gzip;
+    this.from = from;
+    this.to = to;
+    this.partitioning = dataset.dateColumn == null
+      ? Partitioning.NONE
+      : partitioning;
+    this.threads = Math.max(1, threads);
+  }
+
+  /**
+   * @param from first date to include, or {@code null} for no lower bound
+   * @param to last date to include, or {@code null} for no upper bound
+   */
+  public static Exporter of(
+    String dataset,
+    Path directory,
+    Format format,
+    boolean gzip,
+    LocalDate from,
+    LocalDate to,
+    Partitioning partitioning,
+    int threads
+  ) {
+    Dataset selected;
+    switch (dataset) {
+      case "appointments":
+        selected = APPOINTMENTS;
+        break;
+      case "bills":
+        selected = BILLS;
+        break;
+      case "patients":
+        selected = PATIENTS;
+        break;
+      case "doctors":
+        selected = DOCTORS;
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown dataset " + dataset);
+    }
+    return new Exporter(
+      selected,
+      directory,
+      format,
+      gzip,
+      from,
+      to,
+      partitioning,
+      threads
+    );
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      System.out.println(
+        "Usage: Exporter appointments|bills|patients|doctors OUT_DIR " +
+        "[--format csv|columnar] [--gzip] [--from YYYY-MM-DD] " +
+        "[--to YYYY-MM-DD] [--partition none|month|day] [--threads N]"
+      );
+      return;
+    }
+    Format format = Format.CSV;
+    boolean gzip = false;
+    LocalDate from = null;
+    LocalDate to = null;
+    Partitioning partitioning = Partitioning.NONE;
+    int threads = Math.min(4, DBConnection.getPool().getMaxSize());
+    for (int i = 2; i < args.length; i++) {
+      if (args[i].equals("--gzip")) {
+        gzip = true;
+        continue;
+      }
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+      String value = args[++i];
+      switch (args[i - 1]) {
+        case "--format":
+          format = Format.valueOf(value.toUpperCase());
+          break;
+        case "--from":
+          from = LocalDate.parse(value);
+          break;
+        case "--to":
+          to = LocalDate.parse(value);
+          break;
+        case "--partition":
+          partitioning = Partitioning.valueOf(value.toUpperCase());
+          break;
+        case "--threads":
+          threads = Integer.parseInt(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+      }
+    }
+
+    try {
+      of(
+        args[0],
+        Paths.get(args[1]),
+        format,
+        gzip,
+        from,
+        to,
+        partitioning,
+        threads
+      )
+        .run();
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  /** Writes every partition and returns the total number of rows exported. */
+  public long run() throws Exception {
+    if (dataset == APPOINTMENTS) {
+      // The extract reads the Status column, so queued changes go first
+      AppointmentStatusQueue.get().flush();
+    }
+    Files.createDirectories(directory);
+    List<Partition> partitions = partitions();
+    long startedAt = System.nanoTime();
+    ExecutorService workers = Executors.newFixedThreadPool(
+      Math.min(threads, Math.max(1, partitions.size()))
+    );
+    long total = 0;
+    try {
+      List<Future<Long>> tasks = new ArrayList<>();
+      for (Partition partition : partitions) {
+        tasks.add(workers.submit(() -> export(partition)));
+      }
+      for (Future<Long> task : tasks) {
+        try {
+          total += task.get();
+        } catch (ExecutionException e) {
+          workers.shutdownNow();
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw e;
+        }
+      }
+    } finally {
+      workers.shutdownNow();
+    }
+    double seconds = Math.max(
+      (System.nanoTime() - startedAt) / 1_000_000_000.0,
+      0.001
+    );
+    System.out.printf(
+      "Exported %d %s rows to %d file(s) in %.1f s (%.0f rows/s)%n",
+      total,
+      dataset.name,
+      partitions.size(),
+      seconds,
+      total / seconds
+    );
+    return total;
+  }
+
+  private List<Partition> partitions() throws SQLException {
+    List<Partition> partitions = new ArrayList<>();
+    if (partitioning == Partitioning.NONE) {
+      partitions.add(
+        new Partition(null, from, to == null ? null : to.plusDays(1), false)
+      );
+      return partitions;
+    }
+
+    LocalDate first = from;
+    LocalDate last = to;
+    if (first == null || last == null) {
+      LocalDate[] range = dateRange();
+      if (range == null) {
+        partitions.add(new Partition("undated", null, null, true));
+        return partitions;
+      }
+      first = first == null ? range[0] : first;
+      last = last == null ? range[1] : last;
+    }
+
+    LocalDate start = first;
+    while (!start.isAfter(last)) {
+      LocalDate next;
+      String label;
+      if (partitioning == Partitioning.MONTH) {
+        YearMonth month = YearMonth.from(start);
+        next = month.plusMonths(1).atDay(1);
+        label = month.toString();
+      } else {
+        next = start.plusDays(1);
+        label = start.toString();
+      }
+      LocalDate until = next.isAfter(last) ? last.plusDays(1) : next;
+      partitions.add(new Partition(label, start, until, false));
+      start = next;
+    }
+    // Without an explicit range the extract must be complete, rows with no
+    // date included
+    if (from == null && to == null) {
+      partitions.add(new Partition("undated", null, null, true));
+    }
+    return partitions;
+  }
+
+  private LocalDate[] dateRange() throws SQLException {
+    try (
+      Connection conn = DBConnection.getConnection();
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(dataset.rangeSql)
+    ) {
+      if (!rs.next() || rs.getDate(1) == null) {
+        return null;
+      }
+      return new LocalDate[] {
+        rs.getDate(1).toLocalDate(),
+        rs.getDate(2).toLocalDate(),
+      };
+    }
+  }
+
+  private long export(Partition partition) throws SQLException, IOException {
+    StringBuilder sql = new StringBuilder(dataset.sql);
+    List<Date> parameters = new ArrayList<>(2);
+    if (partition.undated) {
+      sql.append(" WHERE ").append(dataset.dateColumn).append(" IS NULL");
+    } else if (partition.from != null || partition.until != null) {
+      sql.append(" WHERE ");
+      if (partition.from != null) {
+        sql.append(dataset.dateColumn).append(" >= ?");
+        parameters.add(Date.valueOf(partition.from));
+      }
+      if (partition.until != null) {
+        if (partition.from != null) {
+          sql.append(" AND ");
+        }
+        sql.append(dataset.dateColumn).append(" < ?");
+        parameters.add(Date.valueOf(partition.until));
+      }
+    }
+    sql.append(" ORDER BY ").append(dataset.orderBy);
+
+    String fileName =
+      dataset.name +
+      (partition.label == null ? "" : "-" + partition.label) +
+      format.extension +
+      (gzip ? ".gz" : "");
+    Path target = directory.resolve(fileName);
+    Path part = directory.resolve(fileName + ".part");
+
+    long rows = 0;
+    int fetchSize = ResultSetStream.defaultFetchSize();
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(
+        sql.toString(),
+        ResultSet.TYPE_FORWARD_ONLY,
+        ResultSet.CONCUR_READ_ONLY
+      )
+    ) {
+      pstmt.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+      for (int i = 0; i < parameters.size(); i++) {
+        pstmt.setDate(i + 1, parameters.get(i));
+      }
+      try (
+        ResultSet rs = pstmt.executeQuery();
+        RowSink sink = open(part)
+      ) {
+        sink.start(rs.getMetaData());
+        while (rs.next()) {
+          sink.write(rs);
+          rows++;
+        }
+      }
+    } catch (SQLException | IOException | RuntimeException e) {
+      Files.deleteIfExists(part);
+      throw e;
+    }
+    Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+    return rows;
+  }
+
+  private RowSink open(Path file) throws IOException {
+    OutputStream out = Files.newOutputStream(file);
+    if (gzip) {
+      try {
+        out = new GZIPOutputStream(out, BUFFER_SIZE);
+      } catch (IOException e) {
+        out.close();
+        throw e;
+      }
+    }
+    // Sinks write a field at a time; batch those into large blocks
+    out = new BufferedOutputStream(out, BUFFER_SIZE);
+    return format == Format.CSV ? new CsvSink(out) : new ColumnarSink(out);
+  }
+}
@@ -0,0 +1,158 @@
+package com.example.io;
+
+import com.example.models.Appointment;
+import com.example.models.Patient;
+import java.sql.Date;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Validates CSV records and turns them into models. Every check throws
+ * {@link IllegalArgumentException} with a message that ends up in the reject
+ * file.
+ */
+final class RowParsers {
+
+  static final List<String> PATIENT_COLUMNS = List.of(
+    "Name",
+    "Age",
+    "Gender",
+    "Address",
+    "ContactNumber",
+    "MedicalHistory"
+  );
+
+  static final List<String> APPOINTMENT_COLUMNS = List.of(
+    "PatientID",
+    "DoctorID",
+    "Date",
+    "Time",
+    "Status"
+  );
+
+  private static final Set<String> GENDERS = Set.of("Male", "Female", "Other");
+  private static final Set<String> STATUSES = Set.of(
+    "Scheduled",
+    "Completed",
+    "Cancelled"
+  );
+
+  private RowParsers() {}
+
+  static Patient patient(List<String> fields) {
+    expectColumns(fields, PATIENT_COLUMNS);
+    String name = required(fields.get(0), "Name");
+    maxLength(name, 100, "Name");
+    int age = parseInt(fields.get(1), "Age");
+    if (age < 0 || age > 150) {
+      throw new IllegalArgumentException("Age out of range: " + age);
+    }
+    String gender = oneOf(fields.get(2), GENDERS, "Gender");
+    String address = fields.get(3);
+    maxLength(address, 255, "Address");
+    String contactNumber = fields.get(4);
+    maxLength(contactNumber, 15, "ContactNumber");
+    return new Patient(
+      name,
+      age,
+      gender,
+      address,
+      contactNumber,
+      fields.get(5)
+    );
+  }
+
+  static Appointment appointment(List<String> fields) {
+    expectColumns(fields, APPOINTMENT_COLUMNS);
+    int patientId = parseInt(fields.get(0), "PatientID");
+    int doctorId = parseInt(fields.get(1), "DoctorID");
+    if (patientId <= 0 || doctorId <= 0) {
+      throw new IllegalArgumentException("IDs must be positive");
+    }
+    Date date;
+    try {
+      date = Date.valueOf(LocalDate.parse(fields.get(2).trim()));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(
+        "Date must be YYYY-MM-DD: " + fields.get(2)
+      );
+    }
+    Time time;
+    try {
+      // Same HH:MM format Main asks for; seconds are optional
+      time = Time.valueOf(LocalTime.parse(fields.get(3).trim()));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException(
+        "Time must be HH:MM or HH:MM:SS: " + fields.get(3)
+      );
+    }
+    String status = fields.get(4).trim().isEmpty()
+      ? "Scheduled"
+      : oneOf(fields.get(4), STATUSES, "Status");
+    return new Appointment(patientId, doctorId, date, time, status);
+  }
+
+  static boolean isHeader(List<String> fields, List<String> columns) {
+    return (
+      !fields.isEmpty() && fields.get(0).trim().equalsIgnoreCase(columns.get(0))
+    );
+  }
+
+  private static void expectColumns(List<String> fields, List<String> columns) {
+    if (fields.size() != columns.size()) {
+      throw new IllegalArgumentException(
+        "Expected " +
+        columns.size() +
+        " columns " +
+        columns +
+        " but found " +
+        fields.size()
+      );
+    }
+  }
+
+  private static String required(String value, String column) {
+    if (value == null || value.trim().isEmpty()) {
+      throw new IllegalArgumentException(column + " is required");
+    }
+    return value.trim();
+  }
+
+  private static void maxLength(String value, int max, String column) {
+    if (value != null && value.length() > max) {
+      throw new IllegalArgumentException(
+        column + " longer than " + max + " characters"
+      );
+    }
+  }
+
+  private static int parseInt(String value, String column) {
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(
+        column + " is not a number: " + value
+      );
+    }
+  }
+
+  private static String oneOf(
+    String value,
+    Set<String> allowed,
+    String column
+  ) {
+    String trimmed = value.trim();
+    for (String candidate : allowed) {
+      if (candidate.equalsIgnoreCase(trimmed)) {
+        return candidate;
+      }
+    }
+    throw new IllegalArgumentException(
+      column + " must be one of " + allowed + ": " + value
+    );
+  }
+}
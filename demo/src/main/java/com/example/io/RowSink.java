@@ -0,0 +1,16 @@
+package com.example.io;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/** Destination for rows streamed straight off a {@link ResultSet}. */
+interface RowSink extends AutoCloseable {
+  void start(ResultSetMetaData metaData) throws SQLException, IOException;
+
+  void write(ResultSet rs) throws SQLException, IOException;
+
+  @Override
+  void close() throws IOException;
+}
@@ -0,0 +1,36 @@
+package com.example.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/** A value sampled on demand, such as the number of idle connections. */
+public final class Gauge implements GaugeMBean {
+
+  private final String name;
+  private final String help;
+  private final DoubleSupplier supplier;
+
+  Gauge(String name, String help, DoubleSupplier supplier) {
+    this.name = name;
+    this.help = help;
+    this.supplier = supplier;
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String getHelp() {
+    return help;
+  }
+
+  @Override
+  public double getValue() {
+    try {
+      return supplier.getAsDouble();
+    } catch (RuntimeException e) {
+      return Double.NaN;
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package com.example.metrics;
+
+/** JMX view of a {@link Metrics#gauge registered gauge}. */
+public interface GaugeMBean {
+  String getName();
+
+  String getHelp();
+
+  double getValue();
+}
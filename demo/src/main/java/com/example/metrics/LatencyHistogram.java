@@ -0,0 +1,126 @@
+package com.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free latency histogram in the style of HdrHistogram.
+ *
+ * Values are nanoseconds. Each power of two is split into 128 linear
+ * sub-buckets, so any recorded value is reported within 1% of its true value
+ * across the whole range from 1 ns to several centuries, using about 58 KB
+ * no matter how many values are recorded.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = 64 - SUB_BUCKET_BITS + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(
+    BUCKETS * SUB_BUCKETS
+  );
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(indexOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current;
+    while (value > (current = max.get())) {
+      if (max.compareAndSet(current, value)) {
+        break;
+      }
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public long getSum() {
+    return sum.get();
+  }
+
+  public double getMean() {
+    long n = count.get();
+    return n == 0 ? 0 : (double) sum.get() / n;
+  }
+
+  /**
+   * Smallest recorded value such that {@code percentile} percent of all
+   * values are at or below it, rounded up to its bucket's upper bound.
+   */
+  public long getValueAtPercentile(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(
+      1,
+      (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * n)
+    );
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueAt(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length(); i++) {
+      long c = other.counts.get(i);
+      if (c != 0) {
+        counts.addAndGet(i, c);
+      }
+    }
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+    long otherMax = other.max.get();
+    long current;
+    while (otherMax > (current = max.get())) {
+      if (max.compareAndSet(current, otherMax)) {
+        break;
+      }
+    }
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    count.set(0);
+    sum.set(0);
+    max.set(0);
+  }
+
+  private static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int bucket = exponent - SUB_BUCKET_BITS + 1;
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) -
+    SUB_BUCKETS;
+    return bucket * SUB_BUCKETS + subBucket;
+  }
+
+  private static long highestValueAt(int index) {
+    int bucket = index / SUB_BUCKETS;
+    int subBucket = index % SUB_BUCKETS;
+    if (bucket == 0) {
+      return subBucket;
+    }
+    return ((long) (SUB_BUCKETS + subBucket + 1) << (bucket - 1)) - 1;
+  }
+}
@@ -0,0 +1,315 @@
+package com.example.metrics;
+
+import com.example.db.DBConfig;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of operation timings and gauges.
+ *
+ * <pre>
+ * try (Metrics.Timer timer = Metrics.start("Patient.getAll")) {
+ *   ...
+ *   timer.rows(patients.size());
+ *   timer.success();
+ * }
+ * </pre>
+ *
+ * A timer that is closed without {@link Timer#success()} counts as an error.
+ * Every operation and gauge is registered as an MBean under
+ * {@code com.example:type=Operation} or {@code com.example:type=Gauge} when
+ * {@code metrics.jmx} is true, and the whole registry is written in the
+ * Prometheus text format to {@code metrics.prometheusFile} every
+ * {@code metrics.prometheusIntervalSeconds} when a file is configured. Set
+ * {@code metrics.enabled=false} to turn timing off altogether.
+ */
+public final class Metrics {
+
+  private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+
+  private static final boolean ENABLED;
+  private static final boolean JMX;
+  private static final ConcurrentMap<String, OperationMetrics> OPERATIONS =
+    new ConcurrentHashMap<>();
+  private static final ConcurrentMap<String, Gauge> GAUGES =
+    new ConcurrentHashMap<>();
+  private static final Timer DISABLED = new Timer(null);
+
+  static {
+    DBConfig config = DBConfig.get();
+    ENABLED = config.getBoolean("metrics.enabled", true);
+    JMX = config.getBoolean("metrics.jmx", true);
+    String file = config.getString("metrics.prometheusFile", "");
+    if (ENABLED && !file.isEmpty()) {
+      Path path = Paths.get(file);
+      long interval = config.getLong("metrics.prometheusIntervalSeconds", 15);
+      ScheduledExecutorService dumper =
+        Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "metrics-prometheus-dump");
+          thread.setDaemon(true);
+          return thread;
+        });
+      dumper.scheduleWithFixedDelay(
+        () -> {
+          try {
+            dump(path);
+          } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Cannot write metrics to " + path, e);
+          }
+        },
+        interval,
+        interval,
+        TimeUnit.SECONDS
+      );
+    }
+  }
+
+  private Metrics() {}
+
+  /** Times one execution of {@code operation}; close it when done. */
+  public static Timer start(String operation) {
+    return ENABLED ? new Timer(operation(operation)) : DISABLED;
+  }
+
+  public static OperationMetrics operation(String name) {
+    OperationMetrics metrics = OPERATIONS.get(name);
+    if (metrics == null) {
+      OperationMetrics created = new OperationMetrics(name);
+      metrics = OPERATIONS.putIfAbsent(name, created);
+      if (metrics == null) {
+        metrics = created;
+        register("Operation", name, created);
+      }
+    }
+    return metrics;
+  }
+
+  /**
+   * Registers a sampled value under a Prometheus-style name such as
+   * {@code hms_db_pool_idle_connections}, replacing any gauge of that name.
+   */
+  public static void gauge(String name, String help, DoubleSupplier supplier) {
+    Gauge gauge = new Gauge(name, help, supplier);
+    if (GAUGES.put(name, gauge) != null) {
+      unregister("Gauge", name);
+    }
+    register("Gauge", name, gauge);
+  }
+
+  /** All operations recorded so far, by name. */
+  public static List<OperationMetrics> getOperations() {
+    List<OperationMetrics> operations = new ArrayList<>(OPERATIONS.values());
+    operations.sort(Comparator.comparing(OperationMetrics::getName));
+    return operations;
+  }
+
+  public static List<Gauge> getGauges() {
+    List<Gauge> gauges = new ArrayList<>(GAUGES.values());
+    gauges.sort(Comparator.comparing(Gauge::getName));
+    return gauges;
+  }
+
+  public static void reset() {
+    for (OperationMetrics metrics : OPERATIONS.values()) {
+      metrics.reset();
+    }
+  }
+
+  /** Writes the registry atomically to {@code file} in Prometheus format. */
+  public static void dump(Path file) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      writePrometheus(out);
+    }
+    Files.move(
+      temp,
+      file,
+      StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE
+    );
+  }
+
+  public static void writePrometheus(Appendable out) throws IOException {
+    Collection<OperationMetrics> operations = getOperations();
+    if (!operations.isEmpty()) {
+      header(
+        out,
+        "hms_operation_seconds",
+        "summary",
+        "Latency of database operations"
+      );
+      for (OperationMetrics metrics : operations) {
+        LatencyHistogram latency = metrics.getLatency();
+        String label = "operation=\"" + escape(metrics.getName()) + "\"";
+        for (double quantile : new double[] { 0.5, 0.99, 0.999 }) {
+          sample(
+            out,
+            "hms_operation_seconds",
+            label + ",quantile=\"" + quantile + "\"",
+            latency.getValueAtPercentile(quantile * 100) / 1e9
+          );
+        }
+        sample(out, "hms_operation_seconds_sum", label, latency.getSum() / 1e9);
+        sample(out, "hms_operation_seconds_count", label, latency.getCount());
+      }
+      header(
+        out,
+        "hms_operation_errors_total",
+        "counter",
+        "Database operations that threw"
+      );
+      for (OperationMetrics metrics : operations) {
+        sample(
+          out,
+          "hms_operation_errors_total",
+          "operation=\"" + escape(metrics.getName()) + "\"",
+          metrics.getErrors()
+        );
+      }
+      header(
+        out,
+        "hms_operation_rows_total",
+        "counter",
+        "Rows returned by reads or affected by writes"
+      );
+      for (OperationMetrics metrics : operations) {
+        sample(
+          out,
+          "hms_operation_rows_total",
+          "operation=\"" + escape(metrics.getName()) + "\"",
+          metrics.getRows()
+        );
+      }
+    }
+    for (Gauge gauge : getGauges()) {
+      header(out, gauge.getName(), "gauge", gauge.getHelp());
+      sample(out, gauge.getName(), null, gauge.getValue());
+    }
+  }
+
+  private static void header(
+    Appendable out,
+    String name,
+    String type,
+    String help
+  ) throws IOException {
+    out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(
+    Appendable out,
+    String name,
+    String labels,
+    double value
+  ) throws IOException {
+    out.append(name);
+    if (labels != null) {
+      out.append('{').append(labels).append('}');
+    }
+    out.append(' ');
+    if (value == Math.rint(value) && !Double.isInfinite(value)) {
+      out.append(Long.toString((long) value));
+    } else {
+      out.append(String.format(Locale.ROOT, "%.9g", value));
+    }
+    out.append('\n');
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  private static void register(String type, String name, Object mbean) {
+    if (!JMX) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = objectName(type, name);
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(mbean, objectName);
+      }
+    } catch (JMException | RuntimeException e) {
+      LOG.log(Level.FINE, "Cannot register MBean for " + name, e);
+    }
+  }
+
+  private static void unregister(String type, String name) {
+    if (!JMX) {
+      return;
+    }
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = objectName(type, name);
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (JMException | RuntimeException e) {
+      LOG.log(Level.FINE, "Cannot unregister MBean for " + name, e);
+    }
+  }
+
+  private static ObjectName objectName(String type, String name)
+    throws JMException {
+    return new ObjectName(
+      "com.example:type=" + type + ",name=" + ObjectName.quote(name)
+    );
+  }
+
+  /** One timed execution; see {@link Metrics}. */
+  public static final class Timer implements AutoCloseable {
+
+    private final OperationMetrics metrics;
+    private final long startedAt;
+    private long rows;
+    private boolean succeeded;
+
+    private Timer(OperationMetrics metrics) {
+      this.metrics = metrics;
+      this.startedAt = metrics == null ? 0 : System.nanoTime();
+    }
+
+    /** Adds to the rows returned or affected by this execution. */
+    public void rows(long count) {
+      rows += count;
+    }
+
+    public void success() {
+      succeeded = true;
+    }
+
+    @Override
+    public void close() {
+      if (metrics != null) {
+        metrics.record(System.nanoTime() - startedAt, rows, !succeeded);
+      }
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Call count, error count, rows and latency for one named operation. */
+public final class OperationMetrics implements OperationMetricsMBean {
+
+  private final String name;
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong rows = new AtomicLong();
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  OperationMetrics(String name) {
+    this.name = name;
+  }
+
+  void record(long nanos, long rowCount, boolean failed) {
+    latency.record(nanos);
+    if (rowCount > 0) {
+      rows.addAndGet(rowCount);
+    }
+    if (failed) {
+      errors.incrementAndGet();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public long getCount() {
+    return latency.getCount();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.get();
+  }
+
+  @Override
+  public long getRows() {
+    return rows.get();
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return latency.getMean() / 1_000_000.0;
+  }
+
+  @Override
+  public double getP50Millis() {
+    return latency.getValueAtPercentile(50) / 1_000_000.0;
+  }
+
+  @Override
+  public double getP99Millis() {
+    return latency.getValueAtPercentile(99) / 1_000_000.0;
+  }
+
+  @Override
+  public double getP999Millis() {
+    return latency.getValueAtPercentile(99.9) / 1_000_000.0;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return latency.getMax() / 1_000_000.0;
+  }
+
+  @Override
+  public void reset() {
+    latency.reset();
+    errors.set(0);
+    rows.set(0);
+  }
+}
@@ -0,0 +1,24 @@
+package com.example.metrics;
+
+/** JMX view of one {@link OperationMetrics}; latencies are milliseconds. */
+public interface OperationMetricsMBean {
+  String getName();
+
+  long getCount();
+
+  long getErrors();
+
+  long getRows();
+
+  double getMeanMillis();
+
+  double getP50Millis();
+
+  double getP99Millis();
+
+  double getP999Millis();
+
+  double getMaxMillis();
+
+  void reset();
+}
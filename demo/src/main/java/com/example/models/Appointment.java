@@ -1,9 +1,37 @@
 package com.example.models;
 
 import com.example.DBConnection;
+import com.example.cache.IntObjectMap;
+import com.example.db.BatchResult;
+import com.example.db.BatchWriter;
+import com.example.db.InList;
+import com.example.db.Page;
+import com.example.db.PageToken;
+import com.example.db.PartialUpdate;
+import com.example.db.ResultSetStream;
+import com.example.db.UncheckedSQLException;
+import com.example.events.ChangeEvent;
+import com.example.events.ChangeEventBus;
+import com.example.index.AvailabilityIndex;
+import com.example.index.SpecialtyPopularity;
+import com.example.index.VisitCounters;
+import com.example.metrics.Metrics;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Appointment {
 
@@ -16,6 +44,18 @@ public class Appointment {
   private Time time;
   private String status;
 
+  // Columns changed since the row was loaded or last saved, as UPDATE bits;
+  // an object that did not come from the database counts as all changed
+  private int dirty = UPDATE.allColumns();
+
+  // Last committed values, so a write can tell the availability index which
+  // slot it freed and the visit counters which month it left
+  private int persistedPatientId;
+  private int persistedDoctorId;
+  private Date persistedDate;
+  private Time persistedTime;
+  private String persistedStatus;
+
   // Constructors
   public Appointment() {}
 
@@ -63,7 +103,10 @@ public class Appointment {
   }
 
   public void setPatientId(int patientId) {
-    this.patientId = patientId;
+    if (this.patientId != patientId) {
+      this.patientId = patientId;
+      dirty |= PATIENT_ID;
+    }
   }
 
   public int getDoctorId() {
@@ -71,7 +114,10 @@ public class Appointment {
   }
 
   public void setDoctorId(int doctorId) {
-    this.doctorId = doctorId;
+    if (this.doctorId != doctorId) {
+      this.doctorId = doctorId;
+      dirty |= DOCTOR_ID;
+    }
   }
 
   public Date getDate() {
@@ -79,7 +125,10 @@ public class Appointment {
   }
 
   public void setDate(Date date) {
-    this.date = date;
+    if (!Objects.equals(this.date, date)) {
+      this.date = date;
+      dirty |= DATE;
+    }
   }
 
   public Time getTime() {
@@ -87,7 +136,10 @@ public class Appointment {
   }
 
   public void setTime(Time time) {
-    this.time = time;
+    if (!Objects.equals(this.time, time)) {
+      this.time = time;
+      dirty |= TIME;
+    }
   }
 
   public String getStatus() {
@@ -95,27 +147,104 @@ public class Appointment {
   }
 
   public void setStatus(String status) {
-    this.status = status;
+    if (!Objects.equals(this.status, status)) {
+      this.status = status;
+      dirty |= STATUS;
+    }
   }
 
   // Database operations
+  private static final String INSERT_SQL =
+    "INSERT INTO Appointments (PatientID, DoctorID, Date, Time, Status) VALUES (?, ?, ?, ?, ?)";
+  // Patient and doctor names come from their NameDictionary, not a join
+  private static final String SELECT_ALL_SQL =
+    "SELECT a.appointmentID, a.patientID, a.doctorID, a.Date, a.Time, a.Status " +
+    "FROM Appointments a";
+  private static final PartialUpdate UPDATE = new PartialUpdate(
+    "Appointments",
+    "AppointmentID",
+    "PatientID",
+    "DoctorID",
+    "Date",
+    "Time",
+    "Status"
+  );
+  private static final int PATIENT_ID = 1 << 0;
+  private static final int DOCTOR_ID = 1 << 1;
+  private static final int DATE = 1 << 2;
+  private static final int TIME = 1 << 3;
+  private static final int STATUS = 1 << 4;
+
+  private void bindInsert(PreparedStatement pstmt) throws SQLException {
+    pstmt.setInt(1, this.patientId);
+    pstmt.setInt(2, this.doctorId);
+    pstmt.setDate(3, this.date);
+    pstmt.setTime(4, this.time);
+    pstmt.setString(5, this.status);
+  }
+
+  // Binds the changed columns in UPDATE column order, then the key
+  private void bindUpdate(PreparedStatement pstmt) throws SQLException {
+    int index = 1;
+    if ((dirty & PATIENT_ID) != 0) {
+      pstmt.setInt(index++, this.patientId);
+    }
+    if ((dirty & DOCTOR_ID) != 0) {
+      pstmt.setInt(index++, this.doctorId);
+    }
+    if ((dirty & DATE) != 0) {
+      pstmt.setDate(index++, this.date);
+    }
+    if ((dirty & TIME) != 0) {
+      pstmt.setTime(index++, this.time);
+    }
+    if ((dirty & STATUS) != 0) {
+      pstmt.setString(index++, this.status);
+    }
+    pstmt.setInt(index, this.appointmentId);
+  }
+
   public void save() throws SQLException {
+    if (this.appointmentId != 0 && this.dirty == 0) {
+      // Nothing changed since the row was loaded or last saved
+      return;
+    }
+    if (this.appointmentId != 0) {
+      AppointmentStatusQueue queue = AppointmentStatusQueue.get();
+      if (
+        this.dirty == STATUS &&
+        queue.isEnabled() &&
+        queue.enqueue(
+          this.appointmentId,
+          this.doctorId,
+          this.date,
+          this.time,
+          this.persistedStatus,
+          this.status
+        )
+      ) {
+        // Written by the queue's next flush
+        this.dirty = 0;
+        markPersisted();
+        return;
+      }
+      queue.flushIfPending(this.appointmentId);
+    }
+    ChangeEvent.Type type = this.appointmentId == 0
+      ? ChangeEvent.Type.INSERT
+      : ChangeEvent.Type.UPDATE;
+    int changed = this.dirty;
     if (this.appointmentId == 0) {
       // This is a new appointment, so insert
-      String sql =
-        "INSERT INTO Appointments (PatientID, DoctorID, Date, Time, Status) VALUES (?, ?, ?, ?, ?)";
       try (
+        Metrics.Timer timer = Metrics.start("Appointment.save.insert");
         Connection conn = DBConnection.getConnection();
         PreparedStatement pstmt = conn.prepareStatement(
-          sql,
+          INSERT_SQL,
           Statement.RETURN_GENERATED_KEYS
         )
       ) {
-        pstmt.setInt(1, this.patientId);
-        pstmt.setInt(2, this.doctorId);
-        pstmt.setDate(3, this.date);
-        pstmt.setTime(4, this.time);
-        pstmt.setString(5, this.status);
+        bindInsert(pstmt);
 
         int affectedRows = pstmt.executeUpdate();
         if (affectedRows > 0) {
@@ -125,98 +254,509 @@ public class Appointment {
             }
           }
         }
+        timer.rows(affectedRows);
+        timer.success();
+        this.dirty = 0;
       }
     } else {
-      // This is an existing appointment, so update
-      String sql =
-        "UPDATE Appointments SET PatientID = ?, DoctorID = ?, Date = ?, Time = ?, Status = ? WHERE AppointmentID = ?";
+      // This is an existing appointment, so update the columns that changed
       try (
+        Metrics.Timer timer = Metrics.start("Appointment.save.update");
         Connection conn = DBConnection.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)
+        PreparedStatement pstmt = conn.prepareStatement(UPDATE.sql(dirty))
+      ) {
+        bindUpdate(pstmt);
+
+        timer.rows(pstmt.executeUpdate());
+        timer.success();
+        this.dirty = 0;
+      }
+    }
+    if (this.appointmentId != 0) {
+      afterWrite(type, changed);
+    }
+  }
+
+  public static BatchResult<Appointment> saveAll(Collection<Appointment> appointments)
+    throws SQLException {
+    return saveAll(appointments, BatchWriter.defaultBatchSize());
+  }
+
+  public static BatchResult<Appointment> saveAll(
+    Collection<Appointment> appointments,
+    int batchSize
+  ) throws SQLException {
+    // Queued status changes to these rows go first, so the writes land
+    // after them
+    AppointmentStatusQueue queue = AppointmentStatusQueue.get();
+    for (Appointment appointment : appointments) {
+      if (
+        appointment.dirty != 0 &&
+        queue.pendingStatus(appointment.appointmentId) != null
       ) {
-        pstmt.setInt(1, this.patientId);
-        pstmt.setInt(2, this.doctorId);
-        pstmt.setDate(3, this.date);
-        pstmt.setTime(4, this.time);
-        pstmt.setString(5, this.status);
-        pstmt.setInt(6, this.appointmentId);
-
-        pstmt.executeUpdate();
+        queue.flush();
+        break;
+      }
+    }
+    List<Appointment> inserts = new ArrayList<>();
+    // Rows with the same changed columns share one UPDATE statement
+    Map<Integer, List<Appointment>> updates = new HashMap<>();
+    List<Appointment> unchanged = new ArrayList<>();
+    for (Appointment appointment : appointments) {
+      if (appointment.appointmentId == 0) {
+        inserts.add(appointment);
+      } else if (appointment.dirty == 0) {
+        unchanged.add(appointment);
+      } else {
+        updates
+          .computeIfAbsent(appointment.dirty, mask -> new ArrayList<>())
+          .add(appointment);
       }
     }
+
+    Set<Appointment> inserted = new HashSet<>(inserts);
+    BatchResult<Appointment> result = new BatchResult<>();
+    try (Metrics.Timer timer = Metrics.start("Appointment.saveAll")) {
+      BatchWriter.write(
+        INSERT_SQL,
+        inserts,
+        batchSize,
+        Appointment::bindInsert,
+        Appointment::setAppointmentId,
+        result
+      );
+      for (Map.Entry<Integer, List<Appointment>> group : updates.entrySet()) {
+        BatchWriter.write(
+          UPDATE.sql(group.getKey()),
+          group.getValue(),
+          batchSize,
+          Appointment::bindUpdate,
+          null,
+          result
+        );
+      }
+      BatchWriter.skip(unchanged, result);
+      timer.rows(result.getSavedCount());
+      timer.success();
+    }
+    for (Appointment saved : result.getSaved()) {
+      if (saved.dirty == 0) {
+        // Unchanged rows are reported as saved without being written
+        continue;
+      }
+      int changed = saved.dirty;
+      saved.dirty = 0;
+      saved.afterWrite(
+        inserted.contains(saved)
+          ? ChangeEvent.Type.INSERT
+          : ChangeEvent.Type.UPDATE,
+        changed
+      );
+    }
+    return result;
   }
 
   public void delete() throws SQLException {
+    AppointmentStatusQueue.get().flushIfPending(this.appointmentId);
     String sql = "DELETE FROM Appointments WHERE AppointmentID = ?";
     try (
+      Metrics.Timer timer = Metrics.start("Appointment.delete");
       Connection conn = DBConnection.getConnection();
       PreparedStatement pstmt = conn.prepareStatement(sql)
     ) {
       pstmt.setInt(1, this.appointmentId);
-      pstmt.executeUpdate();
+      int affectedRows = pstmt.executeUpdate();
+      timer.rows(affectedRows);
+      timer.success();
+      if (affectedRows > 0) {
+        afterDelete();
+      }
     }
   }
 
+  private void afterWrite(ChangeEvent.Type type, int changed) {
+    AvailabilityIndex
+      .get()
+      .onAppointmentChanged(
+        persistedDoctorId,
+        persistedDate,
+        persistedTime,
+        persistedStatus,
+        doctorId,
+        date,
+        time,
+        status
+      );
+    VisitCounters
+      .get()
+      .onAppointmentChanged(persistedPatientId, persistedDate, patientId, date);
+    SpecialtyPopularity
+      .get()
+      .onAppointmentChanged(
+        persistedDoctorId,
+        persistedStatus,
+        doctorId,
+        status
+      );
+    publish(type, changed, persistedStatus, status);
+    markPersisted();
+  }
+
+  private void afterDelete() {
+    if (persistedStatus == null) {
+      markPersisted();
+    }
+    AvailabilityIndex
+      .get()
+      .onAppointmentChanged(
+        persistedDoctorId,
+        persistedDate,
+        persistedTime,
+        persistedStatus,
+        0,
+        null,
+        null,
+        null
+      );
+    VisitCounters
+      .get()
+      .onAppointmentChanged(persistedPatientId, persistedDate, 0, null);
+    SpecialtyPopularity
+      .get()
+      .onAppointmentChanged(persistedDoctorId, persistedStatus, 0, null);
+    publish(ChangeEvent.Type.DELETE, 0, persistedStatus, null);
+  }
+
+  private void publish(
+    ChangeEvent.Type type,
+    int changed,
+    String oldStatus,
+    String newStatus
+  ) {
+    ChangeEventBus
+      .get()
+      .publish(
+        ChangeEvent.Entity.APPOINTMENT,
+        type,
+        this.appointmentId,
+        changed,
+        UPDATE,
+        oldStatus,
+        newStatus
+      );
+  }
+
+  /**
+   * Publishes a status change the status queue committed; the in-memory
+   * indexes took it when it was queued.
+   */
+  static void afterStatusFlush(
+    int appointmentId,
+    String oldStatus,
+    String newStatus
+  ) {
+    ChangeEventBus
+      .get()
+      .publish(
+        ChangeEvent.Entity.APPOINTMENT,
+        ChangeEvent.Type.UPDATE,
+        appointmentId,
+        STATUS,
+        UPDATE,
+        oldStatus,
+        newStatus
+      );
+  }
+
+  private void markPersisted() {
+    persistedPatientId = patientId;
+    persistedDoctorId = doctorId;
+    persistedDate = date;
+    persistedTime = time;
+    persistedStatus = status;
+  }
+
   public static Appointment getById(int appointmentId) throws SQLException {
-    String sql =
-      "SELECT a.appointmentID, p.patientID, p.Name as PatientName, d.doctorID, d.Name as DoctorName, a.Date, a.Time, a.Status " +
-      "FROM appointments a " +
-      "JOIN patients p ON a.patientID = p.patientID " +
-      "JOIN doctors d ON a.doctorID = d.doctorID " +
-      "WHERE a.appointmentID = ?";
+    String sql = SELECT_ALL_SQL + " WHERE a.appointmentID = ?";
 
     try (
+      Metrics.Timer timer = Metrics.start("Appointment.getById");
       Connection conn = DBConnection.getConnection();
       PreparedStatement pstmt = conn.prepareStatement(sql)
     ) {
       pstmt.setInt(1, appointmentId);
 
       try (ResultSet rs = pstmt.executeQuery()) {
-        if (rs.next()) {
-          Appointment appointment = new Appointment();
-          appointment.setAppointmentId(rs.getInt("appointmentID"));
-          appointment.setPatientId(rs.getInt("patientID"));
-          appointment.setPatientName(rs.getString("PatientName"));
-          appointment.setDoctorId(rs.getInt("doctorID"));
-          appointment.setDoctorName(rs.getString("DoctorName"));
-          appointment.setDate(rs.getDate("Date"));
-          appointment.setTime(rs.getTime("Time"));
-          appointment.setStatus(rs.getString("Status"));
-          return appointment;
+        Appointment appointment = rs.next() ? fromResultSet(rs) : null;
+        timer.rows(appointment == null ? 0 : 1);
+        timer.success();
+        if (appointment != null) {
+          fillNames(Collections.singletonList(appointment));
         }
+        return appointment;
       }
     }
-    return null;
   }
 
-  public static List<Appointment> getAll() throws SQLException {
+  public static List<Appointment> getByPatient(int patientId)
+    throws SQLException {
     List<Appointment> appointments = new ArrayList<>();
     String sql =
-      "SELECT a.appointmentID, p.patientID, p.Name as PatientName, d.doctorID, d.Name as DoctorName, a.Date, a.Time, a.Status " +
-      "FROM appointments a " +
-      "JOIN patients p ON a.patientID = p.patientID " +
-      "JOIN doctors d ON a.doctorID = d.doctorID";
+      SELECT_ALL_SQL + " WHERE a.patientID = ? ORDER BY a.Date, a.Time";
+    try (
+      Metrics.Timer timer = Metrics.start("Appointment.getByPatient");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, patientId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          appointments.add(fromResultSet(rs));
+        }
+      }
+      timer.rows(appointments.size());
+      timer.success();
+    }
+    fillNames(appointments);
+    return appointments;
+  }
+
+  public static List<Appointment> getAll() throws SQLException {
+    List<Appointment> appointments = new ArrayList<>();
     try (
+      Metrics.Timer timer = Metrics.start("Appointment.getAll");
       Connection conn = DBConnection.getConnection();
       Statement stmt = conn.createStatement();
-      ResultSet rs = stmt.executeQuery(sql)
+      ResultSet rs = stmt.executeQuery(SELECT_ALL_SQL)
     ) {
       while (rs.next()) {
-        Appointment appointment = new Appointment();
-        appointment.setAppointmentId(rs.getInt("appointmentID"));
-        appointment.setPatientId(rs.getInt("patientID"));
-        appointment.setPatientName(rs.getString("PatientName"));
-        appointment.setDoctorId(rs.getInt("doctorID"));
-        appointment.setDoctorName(rs.getString("DoctorName"));
-        appointment.setDate(rs.getDate("Date"));
-        appointment.setTime(rs.getTime("Time"));
-        appointment.setStatus(rs.getString("Status"));
-        appointments.add(appointment);
+        appointments.add(fromResultSet(rs));
       }
+      timer.rows(appointments.size());
+      timer.success();
     }
+    fillNames(appointments);
     return appointments;
   }
 
+  public static Stream<Appointment> stream() throws SQLException {
+    return stream(ResultSetStream.defaultFetchSize());
+  }
+
+  public static Stream<Appointment> stream(int fetchSize) throws SQLException {
+    return withNames(
+      ResultSetStream.open(
+        "Appointment.stream",
+        SELECT_ALL_SQL,
+        null,
+        fetchSize,
+        Appointment::fromResultSet
+      )
+    );
+  }
+
+  // Buffers InList.MAX_SIZE rows at a time so each buffer's names are
+  // resolved together
+  private static Stream<Appointment> withNames(Stream<Appointment> rows) {
+    Iterator<Appointment> source = rows.iterator();
+    Spliterator<Appointment> named =
+      new Spliterators.AbstractSpliterator<Appointment>(
+        Long.MAX_VALUE,
+        Spliterator.ORDERED | Spliterator.NONNULL
+      ) {
+        private final List<Appointment> buffer = new ArrayList<>();
+        private int next;
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Appointment> action) {
+          if (next == buffer.size()) {
+            buffer.clear();
+            next = 0;
+            while (buffer.size() < InList.MAX_SIZE && source.hasNext()) {
+              buffer.add(source.next());
+            }
+            if (buffer.isEmpty()) {
+              return false;
+            }
+            try {
+              fillNames(buffer);
+            } catch (SQLException e) {
+              throw new UncheckedSQLException(e);
+            }
+          }
+          action.accept(buffer.get(next++));
+          return true;
+        }
+      };
+    return StreamSupport.stream(named, false).onClose(rows::close);
+  }
+
+  private static void fillNames(List<Appointment> appointments)
+    throws SQLException {
+    if (appointments.isEmpty()) {
+      return;
+    }
+    int[] patientIds = new int[appointments.size()];
+    int[] doctorIds = new int[appointments.size()];
+    for (int i = 0; i < patientIds.length; i++) {
+      patientIds[i] = appointments.get(i).patientId;
+      doctorIds[i] = appointments.get(i).doctorId;
+    }
+    IntObjectMap<String> patientNames = Patient.NAMES.resolve(patientIds);
+    IntObjectMap<String> doctorNames = Doctor.NAMES.resolve(doctorIds);
+    for (Appointment appointment : appointments) {
+      appointment.patientName = patientNames.get(appointment.patientId);
+      appointment.doctorName = doctorNames.get(appointment.doctorId);
+    }
+  }
+
+  public static Page<Appointment> page(int afterId, int limit)
+    throws SQLException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    String sql =
+      SELECT_ALL_SQL +
+      " WHERE a.appointmentID > ? ORDER BY a.appointmentID LIMIT ?";
+    List<Appointment> appointments = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("Appointment.page");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, afterId);
+      pstmt.setInt(2, limit + 1);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          appointments.add(fromResultSet(rs));
+        }
+      }
+      timer.rows(appointments.size());
+      timer.success();
+    }
+
+    String nextToken = null;
+    if (appointments.size() > limit) {
+      appointments.remove(limit);
+      nextToken = PageToken.encode(appointments.get(limit - 1).appointmentId);
+    }
+    fillNames(appointments);
+    return new Page<>(appointments, nextToken);
+  }
+
+  public static Page<Appointment> page(String token, int limit)
+    throws SQLException {
+    int afterId = token == null
+      ? 0
+      : Integer.parseInt(PageToken.decode(token, 1)[0]);
+    return page(afterId, limit);
+  }
+
+  // Pages in schedule order, seeking past the (Date, Time, AppointmentID)
+  // of the last row instead of skipping rows with OFFSET. Appointments
+  // without a date or time have no place in the schedule and are left out:
+  // a NULL key could not be encoded in the token nor compared past.
+  public static Page<Appointment> pageBySchedule(String token, int limit)
+    throws SQLException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    String scheduled = " WHERE a.Date IS NOT NULL AND a.Time IS NOT NULL";
+    String order = " ORDER BY a.Date, a.Time, a.appointmentID LIMIT ?";
+    String sql = token == null
+      ? SELECT_ALL_SQL + scheduled + order
+      : SELECT_ALL_SQL +
+      scheduled +
+      " AND (a.Date, a.Time, a.appointmentID) > (?, ?, ?)" +
+      order;
+    List<Appointment> appointments = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("Appointment.pageBySchedule");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      int index = 1;
+      if (token != null) {
+        String[] key = PageToken.decode(token, 3);
+        pstmt.setDate(index++, Date.valueOf(key[0]));
+        pstmt.setTime(index++, Time.valueOf(key[1]));
+        pstmt.setInt(index++, Integer.parseInt(key[2]));
+      }
+      pstmt.setInt(index, limit + 1);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          appointments.add(fromResultSet(rs));
+        }
+      }
+      timer.rows(appointments.size());
+      timer.success();
+    }
+
+    String nextToken = null;
+    if (appointments.size() > limit) {
+      appointments.remove(limit);
+      Appointment last = appointments.get(limit - 1);
+      nextToken = PageToken.encode(last.date, last.time, last.appointmentId);
+    }
+    fillNames(appointments);
+    return new Page<>(appointments, nextToken);
+  }
+
+  private static Appointment fromResultSet(ResultSet rs) throws SQLException {
+    Appointment appointment = new Appointment();
+    appointment.setAppointmentId(rs.getInt("appointmentID"));
+    appointment.setPatientId(rs.getInt("patientID"));
+    appointment.setDoctorId(rs.getInt("doctorID"));
+    appointment.setDate(rs.getDate("Date"));
+    appointment.setTime(rs.getTime("Time"));
+    appointment.setStatus(rs.getString("Status"));
+    String queued = AppointmentStatusQueue
+      .get()
+      .pendingStatus(appointment.appointmentId);
+    if (queued != null) {
+      appointment.setStatus(queued);
+    }
+    appointment.markPersisted();
+    appointment.dirty = 0;
+    return appointment;
+  }
+
+  /**
+   * Times of the doctor's Scheduled appointments on {@code date}, counting
+   * status changes still in the status queue.
+   */
+  public static List<Time> getBookedTimes(int doctorId, Date date)
+    throws SQLException {
+    AppointmentStatusQueue queue = AppointmentStatusQueue.get();
+    List<Time> times = new ArrayList<>();
+    // Every status, so queued changes can be laid over the committed one
+    String sql =
+      "SELECT AppointmentID, Time, Status FROM Appointments WHERE DoctorID = ? AND Date = ?";
+    try (
+      Metrics.Timer timer = Metrics.start("Appointment.getBookedTimes");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, doctorId);
+      pstmt.setDate(2, date);
+
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          String status = queue.pendingStatus(rs.getInt("AppointmentID"));
+          if (status == null) {
+            status = rs.getString("Status");
+          }
+          if ("Scheduled".equals(status)) {
+            times.add(rs.getTime("Time"));
+          }
+        }
+      }
+      timer.rows(times.size());
+      timer.success();
+    }
+    return times;
+  }
+
   @Override
   public String toString() {
     return String.format(
@@ -0,0 +1,895 @@
+package com.example.models;
+
+import com.example.DBConnection;
+import com.example.db.DBConfig;
+import com.example.db.InList;
+import com.example.index.AvailabilityIndex;
+import com.example.index.SpecialtyPopularity;
+import com.example.metrics.Metrics;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Time;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind queue for appointment status changes, for the end of clinic
+ * when hundreds of appointments are marked Completed or Cancelled one after
+ * another.
+ *
+ * With {@code statusQueue.enabled=true}, {@link Appointment#save()} of an
+ * appointment whose only change is its status appends the change to a local
+ * journal ({@code statusQueue.journal}, forced to disk unless
+ * {@code statusQueue.fsync=false}) and returns. A background thread writes
+ * the queued changes every {@code statusQueue.flushMillis}, or as soon as
+ * {@code statusQueue.batchSize} are waiting, in one transaction: the rows
+ * are locked with one {@code SELECT ... FOR UPDATE}, then updated with one
+ * {@code UPDATE ... WHERE Status = ? AND AppointmentID IN (...)} per pair
+ * of old and new status. Repeated changes to one appointment collapse into
+ * one from the status it was loaded with to the last.
+ *
+ * Only the statuses the column allows are queued; anything else is written
+ * directly and fails there. Each change carries the status it replaces, and
+ * is written only while the row still has it: a row already at the new
+ * status is left alone, and one some other write has moved on is logged
+ * and skipped, so a replayed change never overwrites a newer one. When a
+ * batch fails, its changes are retried one at a time; one that fails on its
+ * own is dropped from the queue and appended to the dead-letter file
+ * ({@code statusQueue.journal} with {@code .dead} added). Connection errors
+ * leave the changes queued for the next round.
+ *
+ * Reads do not wait for a flush. Appointments read through the model, and
+ * the booked times and specialty counts the in-memory indexes load, show
+ * the queued status over the committed one. The indexes take a change when
+ * it is queued; when a flush leaves one unwritten, because the row moved on
+ * or the change was dead-lettered, they are dropped and reloaded. A direct
+ * write to an appointment with a queued status flushes the queue first, so
+ * the writes land in order, and so do bulk reads in SQL (billing, exports,
+ * reports). The change event bus hears of a change after its flush commits.
+ * Entries in the journal at startup, from a crash or an unflushed exit, are
+ * queued again and flushed under the same rules.
+ */
+public final class AppointmentStatusQueue {
+
+  private static final Logger LOG = Logger.getLogger(
+    AppointmentStatusQueue.class.getName()
+  );
+
+  private static final String SELECT_SQL =
+    "SELECT AppointmentID, DoctorID, Date, Time, Status FROM Appointments " +
+    "WHERE AppointmentID IN (";
+  private static final String UPDATE_SQL =
+    "UPDATE Appointments SET Status = ? WHERE Status = ? AND AppointmentID IN (";
+
+  // Appointments.Status ENUM; an entry's expected statuses are bits in this
+  private static final List<String> STATUSES = List.of(
+    "Scheduled",
+    "Completed",
+    "Cancelled"
+  );
+
+  private static final AppointmentStatusQueue INSTANCE = fromConfig();
+
+  private static final class Entry {
+
+    // Statuses the row may have for the change to apply: the one it was
+    // loaded with, and after a failed or interrupted flush, the ones that
+    // flush may or may not have committed
+    final int expected;
+    final String status;
+    // When the oldest change this entry stands for was queued
+    final long queuedAt;
+
+    Entry(int expected, String status, long queuedAt) {
+      this.expected = expected;
+      this.status = status;
+      this.queuedAt = queuedAt;
+    }
+
+    boolean expects(String current) {
+      return (
+        isStatus(current) &&
+        (expected & (1 << STATUSES.indexOf(current))) != 0
+      );
+    }
+
+    String expectedNames() {
+      StringBuilder names = new StringBuilder();
+      for (int i = 0; i < STATUSES.size(); i++) {
+        if ((expected & (1 << i)) != 0) {
+          names.append(names.length() == 0 ? "" : ",").append(STATUSES.get(i));
+        }
+      }
+      return names.toString();
+    }
+
+    // The journal line: id, expected statuses, new status
+    String line(int appointmentId) {
+      return appointmentId + "\t" + expectedNames() + "\t" + status + "\n";
+    }
+  }
+
+  private final boolean enabled;
+  private final Path journal;
+  private final Path deadLetters;
+  private final boolean fsync;
+  private final int batchSize;
+  private final long flushMillis;
+
+  // Queued changes by appointment id, oldest first
+  private LinkedHashMap<Integer, Entry> pending = new LinkedHashMap<>();
+  // Changes taken by the flush in progress, until it commits
+  private LinkedHashMap<Integer, Entry> flushing = new LinkedHashMap<>();
+  // pending.size() + flushing.size(), readable without the lock
+  private volatile int outstanding;
+  private volatile int deadLetterCount;
+  private FileChannel channel;
+  // One flush at a time, and not while a direct write waits on one
+  private final Object flushLock = new Object();
+
+  private AppointmentStatusQueue(
+    boolean enabled,
+    Path journal,
+    boolean fsync,
+    int batchSize,
+    long flushMillis
+  ) {
+    this.enabled = enabled;
+    this.journal = journal;
+    this.deadLetters = journal.resolveSibling(journal.getFileName() + ".dead");
+    this.fsync = fsync;
+    this.batchSize = batchSize;
+    this.flushMillis = flushMillis;
+  }
+
+  private static AppointmentStatusQueue fromConfig() {
+    DBConfig config = DBConfig.get();
+    AppointmentStatusQueue queue = new AppointmentStatusQueue(
+      config.getBoolean("statusQueue.enabled", false),
+      Paths
+        .get(
+          config.getString(
+            "statusQueue.journal",
+            "data/appointment-status.journal"
+          )
+        )
+        .toAbsolutePath(),
+      config.getBoolean("statusQueue.fsync", true),
+      config.getInt("statusQueue.batchSize", 500),
+      config.getLong("statusQueue.flushMillis", 1000)
+    );
+    queue.recover();
+    if (queue.enabled || queue.outstanding > 0) {
+      Thread thread = new Thread(queue::runFlusher, "appointment-status-queue");
+      thread.setDaemon(true);
+      thread.start();
+      Metrics.gauge(
+        "hms_status_queue_pending",
+        "Appointment status changes queued and not yet committed",
+        () -> queue.outstanding
+      );
+      Metrics.gauge(
+        "hms_status_queue_lag_seconds",
+        "Age of the oldest appointment status change not yet committed",
+        queue::getLagSeconds
+      );
+      Metrics.gauge(
+        "hms_status_queue_dead_letters",
+        "Appointment status changes dropped after failing on their own",
+        () -> queue.deadLetterCount
+      );
+    }
+    return queue;
+  }
+
+  public static AppointmentStatusQueue get() {
+    return INSTANCE;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Changes queued or being flushed. */
+  public int getPendingCount() {
+    return outstanding;
+  }
+
+  /** Changes dropped to the dead-letter file since start. */
+  public int getDeadLetterCount() {
+    return deadLetterCount;
+  }
+
+  /** Seconds since the oldest change not yet committed was queued. */
+  public synchronized double getLagSeconds() {
+    long oldest = Long.MAX_VALUE;
+    if (!flushing.isEmpty()) {
+      oldest = flushing.values().iterator().next().queuedAt;
+    }
+    if (!pending.isEmpty()) {
+      oldest = Math.min(oldest, pending.values().iterator().next().queuedAt);
+    }
+    return oldest == Long.MAX_VALUE
+      ? 0
+      : (System.nanoTime() - oldest) / 1e9;
+  }
+
+  /**
+   * Writes every queued change now.
+   *
+   * @return the appointments whose status changed
+   */
+  public int flush() throws SQLException {
+    List<Change> changes = new ArrayList<>();
+    try {
+      synchronized (flushLock) {
+        // Changes queued while this runs are left to the next flush
+        for (
+          int left = outstanding;
+          left > 0 && takeBatch();
+          left -= batchSize
+        ) {
+          flushBatch(changes);
+        }
+      }
+    } finally {
+      // Outside the lock: publishing waits while the bus is full, and a
+      // subscriber may be waiting on the lock to write an appointment
+      for (Change change : changes) {
+        Appointment.afterStatusFlush(
+          change.appointmentId,
+          change.oldStatus,
+          change.newStatus
+        );
+      }
+    }
+    return changes.size();
+  }
+
+  /**
+   * Queues a change from {@code expected}, the status the appointment was
+   * loaded with, to {@code status}, and applies it to the in-memory indexes;
+   * {@code false} when it has to be written directly instead, because either
+   * is not a status the column allows or the journal cannot take it.
+   */
+  boolean enqueue(
+    int appointmentId,
+    int doctorId,
+    Date date,
+    Time time,
+    String expected,
+    String status
+  ) {
+    if (!isStatus(expected) || !isStatus(status)) {
+      return false;
+    }
+    synchronized (this) {
+      // Replacing keeps the entry's place, so the first is still the oldest,
+      // and its expected status, which is the row's until it is flushed
+      Entry previous = pending.get(appointmentId);
+      Entry entry = previous == null
+        ? new Entry(
+          1 << STATUSES.indexOf(expected),
+          status,
+          System.nanoTime()
+        )
+        : new Entry(previous.expected, status, previous.queuedAt);
+      try {
+        append(entry.line(appointmentId));
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Cannot write to " + journal, e);
+        return false;
+      }
+      pending.put(appointmentId, entry);
+      outstanding = pending.size() + flushing.size();
+      // Under the lock, so an index load that read the rows before this
+      // either sees the entry or a write count that has moved on
+      AvailabilityIndex
+        .get()
+        .onAppointmentChanged(
+          doctorId,
+          date,
+          time,
+          expected,
+          doctorId,
+          date,
+          time,
+          status
+        );
+      SpecialtyPopularity
+        .get()
+        .onAppointmentChanged(doctorId, expected, doctorId, status);
+      if (pending.size() >= batchSize) {
+        notifyAll();
+      }
+    }
+    return true;
+  }
+
+  /** Queued status of the appointment, or {@code null} for none. */
+  String pendingStatus(int appointmentId) {
+    if (outstanding == 0) {
+      return null;
+    }
+    synchronized (this) {
+      Entry entry = pending.get(appointmentId);
+      if (entry == null) {
+        entry = flushing.get(appointmentId);
+      }
+      return entry == null ? null : entry.status;
+    }
+  }
+
+  /**
+   * Queued status of every appointment that has one, for laying over rows
+   * read from MySQL.
+   */
+  public Map<Integer, String> pendingStatuses() {
+    Map<Integer, String> statuses = new HashMap<>();
+    if (outstanding == 0) {
+      return statuses;
+    }
+    synchronized (this) {
+      for (Map.Entry<Integer, Entry> entry : flushing.entrySet()) {
+        statuses.put(entry.getKey(), entry.getValue().status);
+      }
+      // A change queued behind the one being flushed is the later one
+      for (Map.Entry<Integer, Entry> entry : pending.entrySet()) {
+        statuses.put(entry.getKey(), entry.getValue().status);
+      }
+    }
+    return statuses;
+  }
+
+  /** Flushes the queue when it holds a change to the appointment. */
+  void flushIfPending(int appointmentId) throws SQLException {
+    if (pendingStatus(appointmentId) != null) {
+      flush();
+    }
+  }
+
+  private void runFlusher() {
+    while (true) {
+      synchronized (this) {
+        try {
+          if (pending.size() < batchSize) {
+            wait(flushMillis);
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      try {
+        flush();
+      } catch (SQLException | RuntimeException e) {
+        // The changes stay queued for the next round
+        LOG.log(Level.WARNING, "Cannot flush appointment status changes", e);
+        try {
+          TimeUnit.MILLISECONDS.sleep(flushMillis);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+      }
+    }
+  }
+
+  // Moves the oldest statusQueue.batchSize changes to the flush
+  private synchronized boolean takeBatch() {
+    if (pending.isEmpty()) {
+      return false;
+    }
+    flushing = new LinkedHashMap<>();
+    Iterator<Map.Entry<Integer, Entry>> entries = pending.entrySet().iterator();
+    while (entries.hasNext() && flushing.size() < batchSize) {
+      Map.Entry<Integer, Entry> entry = entries.next();
+      flushing.put(entry.getKey(), entry.getValue());
+      entries.remove();
+    }
+    return true;
+  }
+
+  // Writes the batch taken by takeBatch, adding its committed changes to
+  // changes
+  private void flushBatch(List<Change> changes) throws SQLException {
+    LinkedHashMap<Integer, Entry> batch;
+    synchronized (this) {
+      batch = flushing;
+    }
+    // Changes committed by earlier batches
+    int earlier = changes.size();
+
+    // Changes left to write when a connection error stops the flush
+    LinkedHashMap<Integer, Entry> unwritten = new LinkedHashMap<>();
+    SQLException failure = null;
+    try {
+      try {
+        write(batch, changes);
+      } catch (SQLException e) {
+        if (isTransient(e)) {
+          unwritten = batch;
+          failure = e;
+        } else {
+          LOG.log(
+            Level.WARNING,
+            "Cannot write " +
+            batch.size() +
+            " appointment status change(s) together; retrying one at a time",
+            e
+          );
+          failure = writeEach(batch, changes, unwritten);
+        }
+      }
+    } catch (RuntimeException e) {
+      // Changes that did commit are found applied when retried
+      requeue(batch);
+      throw e;
+    }
+
+    settleIndexes(
+      changes.subList(earlier, changes.size()),
+      changes.size() - earlier + unwritten.size() < batch.size()
+    );
+    synchronized (this) {
+      if (unwritten.isEmpty()) {
+        flushing = new LinkedHashMap<>();
+        outstanding = pending.size();
+      } else {
+        requeue(unwritten);
+      }
+      try {
+        compact();
+      } catch (IOException e) {
+        // The journal still holds committed changes; replayed, they find
+        // the row at their status and are skipped
+        LOG.log(Level.WARNING, "Cannot compact " + journal, e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Writes {@code entries} in one transaction and adds the committed
+   * changes to {@code changes}.
+   */
+  private static void write(Map<Integer, Entry> entries, List<Change> changes)
+    throws SQLException {
+    int[] ids = new int[entries.size()];
+    int n = 0;
+    for (int id : entries.keySet()) {
+      ids[n++] = id;
+    }
+
+    List<Change> written = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("AppointmentStatusQueue.flush");
+      Connection conn = DBConnection.getConnection()
+    ) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try {
+        lockRows(conn, ids, entries, written);
+        updateRows(conn, written);
+        conn.commit();
+        timer.rows(written.size());
+        timer.success();
+      } catch (SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+    changes.addAll(written);
+  }
+
+  /**
+   * Writes {@code batch} one change per transaction, dead-lettering those
+   * that fail. Stops at a connection error, which it returns after moving
+   * the changes not yet written to {@code unwritten}.
+   */
+  private SQLException writeEach(
+    LinkedHashMap<Integer, Entry> batch,
+    List<Change> changes,
+    LinkedHashMap<Integer, Entry> unwritten
+  ) {
+    Iterator<Map.Entry<Integer, Entry>> entries = batch.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<Integer, Entry> entry = entries.next();
+      try {
+        write(Map.of(entry.getKey(), entry.getValue()), changes);
+      } catch (SQLException e) {
+        if (isTransient(e)) {
+          unwritten.put(entry.getKey(), entry.getValue());
+          entries.forEachRemaining(rest ->
+            unwritten.put(rest.getKey(), rest.getValue())
+          );
+          return e;
+        }
+        deadLetter(entry.getKey(), entry.getValue(), e);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Called before a flushed batch leaves the overlay. The indexes took each
+   * change when it was queued, so for the ones {@code committed} this only
+   * tells loads in flight, which may have read the row before the commit
+   * and the overlay after it, that a row changed under them. When some
+   * change was not written as queued ({@code diverged}: the row already had
+   * the status, had moved on or was gone, or the change was dead-lettered)
+   * the indexes are dropped, since they may show a status the row does not
+   * have.
+   */
+  private static void settleIndexes(List<Change> committed, boolean diverged) {
+    if (diverged) {
+      AvailabilityIndex.get().clear();
+      SpecialtyPopularity.get().invalidate();
+      return;
+    }
+    for (Change change : committed) {
+      AvailabilityIndex
+        .get()
+        .onAppointmentChanged(
+          change.doctorId,
+          change.date,
+          change.time,
+          change.newStatus,
+          change.doctorId,
+          change.date,
+          change.time,
+          change.newStatus
+        );
+      SpecialtyPopularity
+        .get()
+        .onAppointmentChanged(
+          change.doctorId,
+          change.newStatus,
+          change.doctorId,
+          change.newStatus
+        );
+    }
+  }
+
+  // Errors that say nothing about the change itself: lost connections,
+  // timeouts, deadlocks
+  private static boolean isTransient(SQLException e) {
+    String state = e.getSQLState();
+    return (
+      e instanceof SQLTransientException ||
+      e instanceof SQLRecoverableException ||
+      e instanceof SQLNonTransientConnectionException ||
+      (state != null &&
+        (state.startsWith("08") ||
+          state.startsWith("40") ||
+          state.startsWith("HYT")))
+    );
+  }
+
+  private void deadLetter(int appointmentId, Entry entry, SQLException e) {
+    LOG.log(
+      Level.WARNING,
+      "Dropping status change of appointment " +
+      appointmentId +
+      " to " +
+      entry.status +
+      "; recorded in " +
+      deadLetters,
+      e
+    );
+    String reason = String
+      .valueOf(e.getMessage())
+      .replaceAll("[\\t\\n\\r]", " ");
+    String line = entry.line(appointmentId);
+    line = line.substring(0, line.length() - 1) + "\t" + reason + "\n";
+    synchronized (this) {
+      deadLetterCount++;
+      try {
+        Files.write(
+          deadLetters,
+          line.getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+        );
+      } catch (IOException io) {
+        LOG.log(Level.WARNING, "Cannot write to " + deadLetters, io);
+      }
+    }
+  }
+
+  /** A committed change, for the indexes and the change event bus. */
+  private static final class Change {
+
+    final int appointmentId;
+    final int doctorId;
+    final Date date;
+    final Time time;
+    final String oldStatus;
+    final String newStatus;
+
+    Change(
+      int appointmentId,
+      int doctorId,
+      Date date,
+      Time time,
+      String oldStatus,
+      String newStatus
+    ) {
+      this.appointmentId = appointmentId;
+      this.doctorId = doctorId;
+      this.date = date;
+      this.time = time;
+      this.oldStatus = oldStatus;
+      this.newStatus = newStatus;
+    }
+  }
+
+  // Reads the current row of every queued id, locking it until commit, and
+  // keeps the ones still at their expected status; rows already at the new
+  // status and deleted rows drop out, as do rows changed since, with a note
+  private static void lockRows(
+    Connection conn,
+    int[] ids,
+    Map<Integer, Entry> batch,
+    List<Change> changes
+  ) throws SQLException {
+    for (int from = 0; from < ids.length; from += InList.MAX_SIZE) {
+      int count = Math.min(InList.MAX_SIZE, ids.length - from);
+      int size = InList.size(count);
+      String sql = SELECT_SQL + InList.placeholders(size) + ") FOR UPDATE";
+      try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        InList.bind(pstmt, 1, ids, from, count, size);
+        try (ResultSet rs = pstmt.executeQuery()) {
+          while (rs.next()) {
+            int id = rs.getInt(1);
+            String oldStatus = rs.getString(5);
+            Entry entry = batch.get(id);
+            if (entry.status.equals(oldStatus)) {
+              continue;
+            }
+            if (!entry.expects(oldStatus)) {
+              LOG.warning(
+                "Skipping queued status change of appointment " +
+                id +
+                " from " +
+                entry.expectedNames() +
+                " to " +
+                entry.status +
+                ": it is " +
+                oldStatus +
+                " now"
+              );
+              continue;
+            }
+            changes.add(
+              new Change(
+                id,
+                rs.getInt(2),
+                rs.getDate(3),
+                rs.getTime(4),
+                oldStatus,
+                entry.status
+              )
+            );
+          }
+        }
+      }
+    }
+  }
+
+  private static void updateRows(Connection conn, List<Change> changes)
+    throws SQLException {
+    // Rows going from the same status to the same status share a statement
+    Map<String, List<Integer>> byStatus = new LinkedHashMap<>();
+    for (Change change : changes) {
+      byStatus
+        .computeIfAbsent(
+          change.oldStatus + "\t" + change.newStatus,
+          statuses -> new ArrayList<>()
+        )
+        .add(change.appointmentId);
+    }
+    for (Map.Entry<String, List<Integer>> group : byStatus.entrySet()) {
+      String[] statuses = group.getKey().split("\t");
+      List<Integer> ids = group.getValue();
+      for (int from = 0; from < ids.size(); from += InList.MAX_SIZE) {
+        List<Integer> chunk = ids.subList(
+          from,
+          Math.min(ids.size(), from + InList.MAX_SIZE)
+        );
+        int size = InList.size(chunk.size());
+        String sql = UPDATE_SQL + InList.placeholders(size) + ")";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+          pstmt.setString(1, statuses[1]);
+          pstmt.setString(2, statuses[0]);
+          InList.bind(pstmt, 3, chunk, size);
+          pstmt.executeUpdate();
+        }
+      }
+    }
+  }
+
+  // Puts a failed batch back in front of what was queued since, unless a
+  // later change to the same appointment replaced it
+  private synchronized void requeue(LinkedHashMap<Integer, Entry> batch) {
+    LinkedHashMap<Integer, Entry> merged = new LinkedHashMap<>(batch);
+    for (Map.Entry<Integer, Entry> entry : pending.entrySet()) {
+      merged.merge(
+        entry.getKey(),
+        entry.getValue(),
+        AppointmentStatusQueue::chain
+      );
+    }
+    pending = merged;
+    flushing = new LinkedHashMap<>();
+    outstanding = pending.size();
+  }
+
+  // One entry for a change queued behind another to the same appointment
+  // that may or may not have been written: the later change applies from
+  // the start of either
+  private static Entry chain(Entry older, Entry newer) {
+    return new Entry(
+      older.expected | newer.expected,
+      newer.status,
+      older.queuedAt
+    );
+  }
+
+  private void append(String line) throws IOException {
+    if (channel == null) {
+      Files.createDirectories(journal.getParent());
+      channel =
+        FileChannel.open(
+          journal,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE,
+          StandardOpenOption.APPEND
+        );
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    if (fsync) {
+      channel.force(false);
+    }
+  }
+
+  // Rewrites the journal with just the changes still queued
+  private void compact() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+    if (pending.isEmpty()) {
+      Files.deleteIfExists(journal);
+      return;
+    }
+    StringBuilder lines = new StringBuilder();
+    for (Map.Entry<Integer, Entry> entry : pending.entrySet()) {
+      lines.append(entry.getValue().line(entry.getKey()));
+    }
+    Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+    try (
+      FileChannel out = FileChannel.open(
+        temp,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING
+      )
+    ) {
+      ByteBuffer buffer = ByteBuffer.wrap(
+        lines.toString().getBytes(StandardCharsets.UTF_8)
+      );
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+      out.force(false);
+    }
+    Files.move(
+      temp,
+      journal,
+      StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE
+    );
+  }
+
+  private synchronized void recover() {
+    if (!Files.exists(journal)) {
+      return;
+    }
+    String text;
+    try {
+      text = new String(Files.readAllBytes(journal), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Cannot read " + journal, e);
+      return;
+    }
+    // Whatever follows the last newline is an append torn by a crash
+    long now = System.nanoTime();
+    text = text.substring(0, text.lastIndexOf('\n') + 1);
+    for (String line : text.split("\n")) {
+      Entry entry = parse(line, now);
+      if (entry == null) {
+        if (!line.isEmpty()) {
+          LOG.warning("Skipping unreadable line in " + journal + ": " + line);
+        }
+        continue;
+      }
+      // Lines for one appointment are in the order queued, and the journal
+      // does not say which of them were flushed
+      pending.merge(
+        Integer.parseInt(line.substring(0, line.indexOf('\t'))),
+        entry,
+        AppointmentStatusQueue::chain
+      );
+    }
+    outstanding = pending.size();
+    try {
+      // Rewritten without the lines skipped, so they are not read again
+      compact();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Cannot compact " + journal, e);
+    }
+    if (outstanding > 0) {
+      LOG.info(
+        "Requeued " +
+        outstanding +
+        " appointment status change(s) from " +
+        journal
+      );
+    }
+  }
+
+  private static boolean isStatus(String status) {
+    return status != null && STATUSES.contains(status);
+  }
+
+  // A journal line, or null when it is not one with known statuses
+  private static Entry parse(String line, long queuedAt) {
+    String[] fields = line.split("\t", -1);
+    if (fields.length != 3 || !STATUSES.contains(fields[2])) {
+      return null;
+    }
+    try {
+      Integer.parseInt(fields[0]);
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    int expected = 0;
+    for (String status : fields[1].split(",")) {
+      int index = STATUSES.indexOf(status);
+      if (index < 0) {
+        return null;
+      }
+      expected |= 1 << index;
+    }
+    return new Entry(expected, fields[2], queuedAt);
+  }
+}
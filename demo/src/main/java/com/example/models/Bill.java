@@ -0,0 +1,46 @@
+package com.example.models;
+
+import com.example.DBConnection;
+import com.example.metrics.Metrics;
+import java.sql.*;
+
+public class Bill {
+
+  // Database operations
+  public static void generate(int appointmentId, double totalAmount)
+    throws SQLException {
+    String sql = "CALL GenerateBill(?, ?)";
+    try (
+      Metrics.Timer timer = Metrics.start("GenerateBill");
+      Connection conn = DBConnection.getConnection();
+      CallableStatement cstmt = conn.prepareCall(sql)
+    ) {
+      cstmt.setInt(1, appointmentId);
+      cstmt.setDouble(2, totalAmount);
+
+      cstmt.execute();
+      timer.success();
+    }
+  }
+
+  /**
+   * Marks an unpaid bill as paid today.
+   *
+   * @return {@code false} if there is no such bill or it was already paid
+   */
+  public static boolean markPaid(int billId) throws SQLException {
+    String sql =
+      "UPDATE Bills SET PaymentStatus = 'Paid', DateOfPayment = CURDATE() WHERE BillID = ? AND PaymentStatus = 'Unpaid'";
+    try (
+      Metrics.Timer timer = Metrics.start("Bill.markPaid");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, billId);
+      int updated = pstmt.executeUpdate();
+      timer.rows(updated);
+      timer.success();
+      return updated > 0;
+    }
+  }
+}
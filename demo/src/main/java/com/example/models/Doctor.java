@@ -1,9 +1,31 @@
 package com.example.models;
 
 import com.example.DBConnection;
+import com.example.cache.CacheStats;
+import com.example.cache.EntityCache;
+import com.example.cache.NameDictionary;
+import com.example.db.BatchResult;
+import com.example.db.BatchWriter;
+import com.example.db.Page;
+import com.example.db.PageToken;
+import com.example.db.PartialUpdate;
+import com.example.db.ResultSetStream;
+import com.example.events.ChangeEvent;
+import com.example.events.ChangeEventBus;
+import com.example.index.AvailabilityIndex;
+import com.example.index.SpecialtyPopularity;
+import com.example.index.VisitCounters;
+import com.example.metrics.Metrics;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class Doctor {
 
@@ -13,6 +35,21 @@ public class Doctor {
   private int yearsOfExperience;
   private String contactInformation;
 
+  // Columns changed since the row was loaded or last saved, as UPDATE bits;
+  // an object that did not come from the database counts as all changed
+  private int dirty = UPDATE.allColumns();
+
+  private static final EntityCache<Integer, Doctor> CACHE =
+    EntityCache.fromConfig("doctor", Doctor::copy);
+
+  // Names by id for listings that show this doctor without joining its table
+  static final NameDictionary NAMES = NameDictionary.fromConfig(
+    "doctor",
+    "Doctors",
+    "DoctorID",
+    "Name"
+  );
+
   // Constructors
   public Doctor() {}
 
@@ -28,6 +65,17 @@ public class Doctor {
     this.contactInformation = contactInformation;
   }
 
+  private static Doctor copy(Doctor source) {
+    Doctor copy = new Doctor();
+    copy.doctorId = source.doctorId;
+    copy.name = source.name;
+    copy.specialty = source.specialty;
+    copy.yearsOfExperience = source.yearsOfExperience;
+    copy.contactInformation = source.contactInformation;
+    copy.dirty = source.dirty;
+    return copy;
+  }
+
   // Getters and Setters
   public int getDoctorId() {
     return doctorId;
@@ -42,7 +90,10 @@ public class Doctor {
   }
 
   public void setName(String name) {
-    this.name = name;
+    if (!Objects.equals(this.name, name)) {
+      this.name = name;
+      dirty |= NAME;
+    }
   }
 
   public String getSpecialty() {
@@ -50,7 +101,10 @@ public class Doctor {
   }
 
   public void setSpecialty(String specialty) {
-    this.specialty = specialty;
+    if (!Objects.equals(this.specialty, specialty)) {
+      this.specialty = specialty;
+      dirty |= SPECIALTY;
+    }
   }
 
   public int getYearsOfExperience() {
@@ -58,7 +112,10 @@ public class Doctor {
   }
 
   public void setYearsOfExperience(int yearsOfExperience) {
-    this.yearsOfExperience = yearsOfExperience;
+    if (this.yearsOfExperience != yearsOfExperience) {
+      this.yearsOfExperience = yearsOfExperience;
+      dirty |= YEARS_OF_EXPERIENCE;
+    }
   }
 
   public String getContactInformation() {
@@ -66,26 +123,75 @@ public class Doctor {
   }
 
   public void setContactInformation(String contactInformation) {
-    this.contactInformation = contactInformation;
+    if (!Objects.equals(this.contactInformation, contactInformation)) {
+      this.contactInformation = contactInformation;
+      dirty |= CONTACT_INFORMATION;
+    }
   }
 
   // Database operations
+  private static final String INSERT_SQL =
+    "INSERT INTO Doctors (Name, Specialty, YearsOfExperience, ContactInformation) VALUES (?, ?, ?, ?)";
+  private static final String SELECT_ALL_SQL =
+    "SELECT DoctorID, Name, Specialty, YearsOfExperience, ContactInformation FROM Doctors";
+  private static final PartialUpdate UPDATE = new PartialUpdate(
+    "Doctors",
+    "DoctorID",
+    "Name",
+    "Specialty",
+    "YearsOfExperience",
+    "ContactInformation"
+  );
+  private static final int NAME = 1 << 0;
+  private static final int SPECIALTY = 1 << 1;
+  private static final int YEARS_OF_EXPERIENCE = 1 << 2;
+  private static final int CONTACT_INFORMATION = 1 << 3;
+
+  private void bindInsert(PreparedStatement pstmt) throws SQLException {
+    pstmt.setString(1, this.name);
+    pstmt.setString(2, this.specialty);
+    pstmt.setInt(3, this.yearsOfExperience);
+    pstmt.setString(4, this.contactInformation);
+  }
+
+  // Binds the changed columns in UPDATE column order, then the key
+  private void bindUpdate(PreparedStatement pstmt) throws SQLException {
+    int index = 1;
+    if ((dirty & NAME) != 0) {
+      pstmt.setString(index++, this.name);
+    }
+    if ((dirty & SPECIALTY) != 0) {
+      pstmt.setString(index++, this.specialty);
+    }
+    if ((dirty & YEARS_OF_EXPERIENCE) != 0) {
+      pstmt.setInt(index++, this.yearsOfExperience);
+    }
+    if ((dirty & CONTACT_INFORMATION) != 0) {
+      pstmt.setString(index++, this.contactInformation);
+    }
+    pstmt.setInt(index, this.doctorId);
+  }
+
   public void save() throws SQLException {
+    if (this.doctorId != 0 && this.dirty == 0) {
+      // Nothing changed since the row was loaded or last saved
+      return;
+    }
+    ChangeEvent.Type type = this.doctorId == 0
+      ? ChangeEvent.Type.INSERT
+      : ChangeEvent.Type.UPDATE;
+    int changed = this.dirty;
     if (this.doctorId == 0) {
       // This is a new doctor, so insert
-      String sql =
-        "INSERT INTO Doctors (Name, Specialty, YearsOfExperience, ContactInformation) VALUES (?, ?, ?, ?)";
       try (
+        Metrics.Timer timer = Metrics.start("Doctor.save.insert");
         Connection conn = DBConnection.getConnection();
         PreparedStatement pstmt = conn.prepareStatement(
-          sql,
+          INSERT_SQL,
           Statement.RETURN_GENERATED_KEYS
         )
       ) {
-        pstmt.setString(1, this.name);
-        pstmt.setString(2, this.specialty);
-        pstmt.setInt(3, this.yearsOfExperience);
-        pstmt.setString(4, this.contactInformation);
+        bindInsert(pstmt);
 
         int affectedRows = pstmt.executeUpdate();
         if (affectedRows > 0) {
@@ -95,39 +201,161 @@ public class Doctor {
             }
           }
         }
+        timer.rows(affectedRows);
+        timer.success();
+        this.dirty = 0;
       }
     } else {
-      // This is an existing doctor, so update
-      String sql =
-        "UPDATE Doctors SET Name = ?, Specialty = ?, YearsOfExperience = ?, ContactInformation = ? WHERE DoctorID = ?";
+      // This is an existing doctor, so update the columns that changed
       try (
+        Metrics.Timer timer = Metrics.start("Doctor.save.update");
         Connection conn = DBConnection.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)
+        PreparedStatement pstmt = conn.prepareStatement(UPDATE.sql(dirty))
       ) {
-        pstmt.setString(1, this.name);
-        pstmt.setString(2, this.specialty);
-        pstmt.setInt(3, this.yearsOfExperience);
-        pstmt.setString(4, this.contactInformation);
-        pstmt.setInt(5, this.doctorId);
+        bindUpdate(pstmt);
 
-        pstmt.executeUpdate();
+        timer.rows(pstmt.executeUpdate());
+        timer.success();
+        this.dirty = 0;
       }
     }
+    if (this.doctorId != 0) {
+      CACHE.put(this.doctorId, this);
+      NAMES.put(this.doctorId, this.name);
+      SpecialtyPopularity.get().onDoctorSaved(this.doctorId, this.specialty);
+      publish(type, changed);
+    }
+  }
+
+  public static BatchResult<Doctor> saveAll(Collection<Doctor> doctors)
+    throws SQLException {
+    return saveAll(doctors, BatchWriter.defaultBatchSize());
+  }
+
+  public static BatchResult<Doctor> saveAll(
+    Collection<Doctor> doctors,
+    int batchSize
+  ) throws SQLException {
+    List<Doctor> inserts = new ArrayList<>();
+    // Rows with the same changed columns share one UPDATE statement
+    Map<Integer, List<Doctor>> updates = new HashMap<>();
+    List<Doctor> unchanged = new ArrayList<>();
+    for (Doctor doctor : doctors) {
+      if (doctor.doctorId == 0) {
+        inserts.add(doctor);
+      } else if (doctor.dirty == 0) {
+        unchanged.add(doctor);
+      } else {
+        updates
+          .computeIfAbsent(doctor.dirty, mask -> new ArrayList<>())
+          .add(doctor);
+      }
+    }
+
+    Set<Doctor> inserted = new HashSet<>(inserts);
+    BatchResult<Doctor> result = new BatchResult<>();
+    try (Metrics.Timer timer = Metrics.start("Doctor.saveAll")) {
+      BatchWriter.write(
+        INSERT_SQL,
+        inserts,
+        batchSize,
+        Doctor::bindInsert,
+        Doctor::setDoctorId,
+        result
+      );
+      for (Map.Entry<Integer, List<Doctor>> group : updates.entrySet()) {
+        BatchWriter.write(
+          UPDATE.sql(group.getKey()),
+          group.getValue(),
+          batchSize,
+          Doctor::bindUpdate,
+          null,
+          result
+        );
+      }
+      BatchWriter.skip(unchanged, result);
+      timer.rows(result.getSavedCount());
+      timer.success();
+    }
+    for (Doctor saved : result.getSaved()) {
+      if (saved.dirty != 0) {
+        saved.publish(
+          inserted.contains(saved)
+            ? ChangeEvent.Type.INSERT
+            : ChangeEvent.Type.UPDATE,
+          saved.dirty
+        );
+      }
+      saved.dirty = 0;
+      CACHE.put(saved.doctorId, saved);
+      NAMES.put(saved.doctorId, saved.name);
+      SpecialtyPopularity.get().onDoctorSaved(saved.doctorId, saved.specialty);
+    }
+    return result;
   }
 
   public void delete() throws SQLException {
     String sql = "DELETE FROM Doctors WHERE DoctorID = ?";
     try (
+      Metrics.Timer timer = Metrics.start("Doctor.delete");
       Connection conn = DBConnection.getConnection();
       PreparedStatement pstmt = conn.prepareStatement(sql)
     ) {
       pstmt.setInt(1, this.doctorId);
-      pstmt.executeUpdate();
+      int affectedRows = pstmt.executeUpdate();
+      timer.rows(affectedRows);
+      timer.success();
+      if (affectedRows > 0) {
+        publish(ChangeEvent.Type.DELETE, 0);
+      }
+    } finally {
+      CACHE.invalidate(this.doctorId);
+      NAMES.remove(this.doctorId);
+      // The doctor's appointments went too, through ON DELETE CASCADE
+      VisitCounters.get().clear();
+      SpecialtyPopularity.get().invalidate();
+      AvailabilityIndex.get().invalidate(this.doctorId);
     }
   }
 
+  private void publish(ChangeEvent.Type type, int changed) {
+    ChangeEventBus
+      .get()
+      .publish(
+        ChangeEvent.Entity.DOCTOR,
+        type,
+        this.doctorId,
+        changed,
+        UPDATE,
+        null,
+        null
+      );
+  }
+
   public static Doctor getById(int doctorId) throws SQLException {
-    String sql = "SELECT * FROM Doctors WHERE DoctorID = ?";
+    try (Metrics.Timer timer = Metrics.start("Doctor.getById")) {
+      Doctor doctor = CACHE.get(doctorId, Doctor::loadById);
+      timer.rows(doctor == null ? 0 : 1);
+      timer.success();
+      return doctor;
+    }
+  }
+
+  public static CacheStats getCacheStats() {
+    return CACHE.getStats();
+  }
+
+  /**
+   * Empties the cache and the name dictionary, for rows changed behind the
+   * model's back and for measuring cold reads.
+   */
+  public static void clearCaches() {
+    CACHE.invalidateAll();
+    NAMES.clear();
+  }
+
+  private static Doctor loadById(int doctorId) throws SQLException {
+    String sql = SELECT_ALL_SQL + " WHERE DoctorID = ?";
     try (
       Connection conn = DBConnection.getConnection();
       PreparedStatement pstmt = conn.prepareStatement(sql)
@@ -135,13 +363,7 @@ public class Doctor {
       pstmt.setInt(1, doctorId);
       try (ResultSet rs = pstmt.executeQuery()) {
         if (rs.next()) {
-          Doctor doctor = new Doctor();
-          doctor.setDoctorId(rs.getInt("DoctorID"));
-          doctor.setName(rs.getString("Name"));
-          doctor.setSpecialty(rs.getString("Specialty"));
-          doctor.setYearsOfExperience(rs.getInt("YearsOfExperience"));
-          doctor.setContactInformation(rs.getString("ContactInformation"));
-          return doctor;
+          return fromResultSet(rs);
         }
       }
     }
@@ -150,25 +372,99 @@ public class Doctor {
 
   public static List<Doctor> getAll() throws SQLException {
     List<Doctor> doctors = new ArrayList<>();
-    String sql = "SELECT * FROM Doctors";
     try (
+      Metrics.Timer timer = Metrics.start("Doctor.getAll");
       Connection conn = DBConnection.getConnection();
       Statement stmt = conn.createStatement();
-      ResultSet rs = stmt.executeQuery(sql)
+      ResultSet rs = stmt.executeQuery(SELECT_ALL_SQL)
     ) {
       while (rs.next()) {
-        Doctor doctor = new Doctor();
-        doctor.setDoctorId(rs.getInt("DoctorID"));
-        doctor.setName(rs.getString("Name"));
-        doctor.setSpecialty(rs.getString("Specialty"));
-        doctor.setYearsOfExperience(rs.getInt("YearsOfExperience"));
-        doctor.setContactInformation(rs.getString("ContactInformation"));
-        doctors.add(doctor);
+        doctors.add(fromResultSet(rs));
       }
+      timer.rows(doctors.size());
+      timer.success();
     }
     return doctors;
   }
 
+  public static Stream<Doctor> stream() throws SQLException {
+    return stream(ResultSetStream.defaultFetchSize());
+  }
+
+  public static Stream<Doctor> stream(int fetchSize) throws SQLException {
+    return ResultSetStream.open(
+      "Doctor.stream",
+      SELECT_ALL_SQL,
+      null,
+      fetchSize,
+      Doctor::fromResultSet
+    );
+  }
+
+  public static Page<Doctor> page(int afterId, int limit)
+    throws SQLException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    List<Doctor> doctors = new ArrayList<>();
+    String sql =
+      SELECT_ALL_SQL + " WHERE DoctorID > ? ORDER BY DoctorID LIMIT ?";
+    try (
+      Metrics.Timer timer = Metrics.start("Doctor.page");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, afterId);
+      pstmt.setInt(2, limit + 1);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          doctors.add(fromResultSet(rs));
+        }
+      }
+      timer.rows(doctors.size());
+      timer.success();
+    }
+
+    String nextToken = null;
+    if (doctors.size() > limit) {
+      doctors.remove(limit);
+      nextToken = PageToken.encode(doctors.get(limit - 1).doctorId);
+    }
+    return new Page<>(doctors, nextToken);
+  }
+
+  public static Page<Doctor> page(String token, int limit)
+    throws SQLException {
+    int afterId = token == null
+      ? 0
+      : Integer.parseInt(PageToken.decode(token, 1)[0]);
+    return page(afterId, limit);
+  }
+
+  public static boolean exists(int doctorId) throws SQLException {
+    String sql = "SELECT 1 FROM Doctors WHERE DoctorID = ?";
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, doctorId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  private static Doctor fromResultSet(ResultSet rs) throws SQLException {
+    Doctor doctor = new Doctor();
+    doctor.setDoctorId(rs.getInt("DoctorID"));
+    doctor.setName(rs.getString("Name"));
+    doctor.setSpecialty(rs.getString("Specialty"));
+    doctor.setYearsOfExperience(rs.getInt("YearsOfExperience"));
+    doctor.setContactInformation(rs.getString("ContactInformation"));
+    doctor.dirty = 0;
+    return doctor;
+  }
+
   @Override
   public String toString() {
     return String.format(
@@ -0,0 +1,95 @@
+package com.example.models;
+
+import com.example.DBConnection;
+import com.example.db.ResultSetStream;
+import com.example.metrics.Metrics;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * A doctor's id, name and specialty, for pick lists and reports that do not
+ * need the rest of the row.
+ */
+public class DoctorSummary {
+
+  private static final String SELECT_SQL =
+    "SELECT DoctorID, Name, Specialty FROM Doctors";
+
+  private final int doctorId;
+  private final String name;
+  private final String specialty;
+
+  private DoctorSummary(int doctorId, String name, String specialty) {
+    this.doctorId = doctorId;
+    this.name = name;
+    this.specialty = specialty;
+  }
+
+  public int getDoctorId() {
+    return doctorId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getSpecialty() {
+    return specialty;
+  }
+
+  public static DoctorSummary getById(int doctorId) throws SQLException {
+    String sql = SELECT_SQL + " WHERE DoctorID = ?";
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, doctorId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? fromResultSet(rs) : null;
+      }
+    }
+  }
+
+  public static List<DoctorSummary> getAll() throws SQLException {
+    List<DoctorSummary> doctors = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("DoctorSummary.getAll");
+      Connection conn = DBConnection.getConnection();
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(SELECT_SQL)
+    ) {
+      while (rs.next()) {
+        doctors.add(fromResultSet(rs));
+      }
+      timer.rows(doctors.size());
+      timer.success();
+    }
+    return doctors;
+  }
+
+  public static Stream<DoctorSummary> stream() throws SQLException {
+    return ResultSetStream.open(
+      "DoctorSummary.stream",
+      SELECT_SQL,
+      null,
+      ResultSetStream.defaultFetchSize(),
+      DoctorSummary::fromResultSet
+    );
+  }
+
+  private static DoctorSummary fromResultSet(ResultSet rs)
+    throws SQLException {
+    return new DoctorSummary(
+      rs.getInt("DoctorID"),
+      rs.getString("Name"),
+      rs.getString("Specialty")
+    );
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d: %s (%s)", doctorId, name, specialty);
+  }
+}
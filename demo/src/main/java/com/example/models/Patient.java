@@ -1,9 +1,33 @@
 package com.example.models;
 
 import com.example.DBConnection;
+import com.example.cache.CacheStats;
+import com.example.cache.EntityCache;
+import com.example.cache.NameDictionary;
+import com.example.db.BatchResult;
+import com.example.db.BatchWriter;
+import com.example.db.InList;
+import com.example.db.Page;
+import com.example.db.PageToken;
+import com.example.db.PartialUpdate;
+import com.example.db.ResultSetStream;
+import com.example.db.UncheckedSQLException;
+import com.example.events.ChangeEvent;
+import com.example.events.ChangeEventBus;
+import com.example.index.AvailabilityIndex;
+import com.example.index.SpecialtyPopularity;
+import com.example.index.VisitCounters;
+import com.example.metrics.Metrics;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 public class Patient {
 
@@ -15,6 +39,26 @@ public class Patient {
   private String contactNumber;
   private String medicalHistory;
 
+  // Columns changed since the row was loaded or last saved, as UPDATE bits;
+  // an object that did not come from the database counts as all changed
+  private int dirty = UPDATE.allColumns();
+
+  // MedicalHistory is left out of list and lookup queries; a row read
+  // without it loads it on first access, together with the rest of its batch
+  private boolean historyLoaded = true;
+  private HistoryBatch historyBatch;
+
+  private static final EntityCache<Integer, Patient> CACHE =
+    EntityCache.fromConfig("patient", Patient::copy);
+
+  // Names by id for listings that show this patient without joining its table
+  static final NameDictionary NAMES = NameDictionary.fromConfig(
+    "patient",
+    "Patients",
+    "PatientID",
+    "Name"
+  );
+
   // Constructors
   public Patient() {}
 
@@ -34,6 +78,20 @@ public class Patient {
     this.medicalHistory = medicalHistory;
   }
 
+  private static Patient copy(Patient source) {
+    Patient copy = new Patient();
+    copy.patientId = source.patientId;
+    copy.name = source.name;
+    copy.age = source.age;
+    copy.gender = source.gender;
+    copy.address = source.address;
+    copy.contactNumber = source.contactNumber;
+    copy.medicalHistory = source.medicalHistory;
+    copy.historyLoaded = source.historyLoaded;
+    copy.dirty = source.dirty;
+    return copy;
+  }
+
   // Getters and Setters
 
   public int getPatientId() {
@@ -49,7 +107,10 @@ public class Patient {
   }
 
   public void setName(String name) {
-    this.name = name;
+    if (!Objects.equals(this.name, name)) {
+      this.name = name;
+      dirty |= NAME;
+    }
   }
 
   public int getAge() {
@@ -57,7 +118,10 @@ public class Patient {
   }
 
   public void setAge(int age) {
-    this.age = age;
+    if (this.age != age) {
+      this.age = age;
+      dirty |= AGE;
+    }
   }
 
   public String getGender() {
@@ -65,7 +129,10 @@ public class Patient {
   }
 
   public void setGender(String gender) {
-    this.gender = gender;
+    if (!Objects.equals(this.gender, gender)) {
+      this.gender = gender;
+      dirty |= GENDER;
+    }
   }
 
   public String getAddress() {
@@ -73,7 +140,10 @@ public class Patient {
   }
 
   public void setAddress(String address) {
-    this.address = address;
+    if (!Objects.equals(this.address, address)) {
+      this.address = address;
+      dirty |= ADDRESS;
+    }
   }
 
   public String getContactNumber() {
@@ -81,36 +151,118 @@ public class Patient {
   }
 
   public void setContactNumber(String contactNumber) {
-    this.contactNumber = contactNumber;
+    if (!Objects.equals(this.contactNumber, contactNumber)) {
+      this.contactNumber = contactNumber;
+      dirty |= CONTACT_NUMBER;
+    }
   }
 
+  /**
+   * Loads the history on first call for a patient read without it, through
+   * {@link UncheckedSQLException} if that query fails.
+   */
   public String getMedicalHistory() {
+    if (!historyLoaded) {
+      try {
+        loadMedicalHistory();
+      } catch (SQLException e) {
+        throw new UncheckedSQLException(e);
+      }
+    }
     return medicalHistory;
   }
 
   public void setMedicalHistory(String medicalHistory) {
-    this.medicalHistory = medicalHistory;
+    // Without the stored value there is nothing to compare against
+    if (
+      !historyLoaded || !Objects.equals(this.medicalHistory, medicalHistory)
+    ) {
+      this.medicalHistory = medicalHistory;
+      historyLoaded = true;
+      historyBatch = null;
+      dirty |= MEDICAL_HISTORY;
+    }
   }
 
   // Database operations
+  private static final String INSERT_SQL =
+    "INSERT INTO Patients (Name, Age, Gender, Address, ContactNumber, MedicalHistory) VALUES (?, ?, ?, ?, ?, ?)";
+  private static final String COLUMNS =
+    "PatientID, Name, Age, Gender, Address, ContactNumber";
+  private static final String SELECT_SQL =
+    "SELECT " + COLUMNS + " FROM Patients";
+  private static final String SELECT_ALL_SQL =
+    "SELECT " + COLUMNS + ", MedicalHistory FROM Patients";
+  private static final PartialUpdate UPDATE = new PartialUpdate(
+    "Patients",
+    "PatientID",
+    "Name",
+    "Age",
+    "Gender",
+    "Address",
+    "ContactNumber",
+    "MedicalHistory"
+  );
+  private static final int NAME = 1 << 0;
+  private static final int AGE = 1 << 1;
+  private static final int GENDER = 1 << 2;
+  private static final int ADDRESS = 1 << 3;
+  private static final int CONTACT_NUMBER = 1 << 4;
+  private static final int MEDICAL_HISTORY = 1 << 5;
+
+  private void bindInsert(PreparedStatement pstmt) throws SQLException {
+    pstmt.setString(1, this.name);
+    pstmt.setInt(2, this.age);
+    pstmt.setString(3, this.gender);
+    pstmt.setString(4, this.address);
+    pstmt.setString(5, this.contactNumber);
+    pstmt.setString(6, this.medicalHistory);
+  }
+
+  // Binds the changed columns in UPDATE column order, then the key
+  private void bindUpdate(PreparedStatement pstmt) throws SQLException {
+    int index = 1;
+    if ((dirty & NAME) != 0) {
+      pstmt.setString(index++, this.name);
+    }
+    if ((dirty & AGE) != 0) {
+      pstmt.setInt(index++, this.age);
+    }
+    if ((dirty & GENDER) != 0) {
+      pstmt.setString(index++, this.gender);
+    }
+    if ((dirty & ADDRESS) != 0) {
+      pstmt.setString(index++, this.address);
+    }
+    if ((dirty & CONTACT_NUMBER) != 0) {
+      pstmt.setString(index++, this.contactNumber);
+    }
+    if ((dirty & MEDICAL_HISTORY) != 0) {
+      pstmt.setString(index++, this.medicalHistory);
+    }
+    pstmt.setInt(index, this.patientId);
+  }
+
   public void save() throws SQLException {
+    if (this.patientId != 0 && this.dirty == 0) {
+      // Nothing changed since the row was loaded or last saved
+      return;
+    }
+    ChangeEvent.Type type = this.patientId == 0
+      ? ChangeEvent.Type.INSERT
+      : ChangeEvent.Type.UPDATE;
+    int changed = this.dirty;
     if (this.patientId == 0) {
       // This is a new patient, so insert
-      String sql =
-        "INSERT INTO Patients (Name, Age, Gender, Address, ContactNumber, MedicalHistory) VALUES (?, ?, ?, ?, ?, ?)";
       try (
+        Metrics.Timer timer = Metrics.start("Patient.save.insert");
         Connection conn = DBConnection.getConnection();
         PreparedStatement pstmt = conn.prepareStatement(
-          sql,
+          INSERT_SQL,
           Statement.RETURN_GENERATED_KEYS
         )
       ) {
-        pstmt.setString(1, this.name);
-        pstmt.setInt(2, this.age);
-        pstmt.setString(3, this.gender);
-        pstmt.setString(4, this.address);
-        pstmt.setString(5, this.contactNumber);
-        pstmt.setString(6, this.medicalHistory);
+        bindInsert(pstmt);
 
         int affectedRows = pstmt.executeUpdate();
         if (affectedRows > 0) {
@@ -120,41 +272,161 @@ public class Patient {
             }
           }
         }
+        timer.rows(affectedRows);
+        timer.success();
+        this.dirty = 0;
       }
     } else {
-      // This is an existing patient, so update
-      String sql =
-        "UPDATE Patients SET Name = ?, Age = ?, Gender = ?, Address = ?, ContactNumber = ?, MedicalHistory = ? WHERE PatientID = ?";
+      // This is an existing patient, so update the columns that changed
       try (
+        Metrics.Timer timer = Metrics.start("Patient.save.update");
         Connection conn = DBConnection.getConnection();
-        PreparedStatement pstmt = conn.prepareStatement(sql)
+        PreparedStatement pstmt = conn.prepareStatement(UPDATE.sql(dirty))
       ) {
-        pstmt.setString(1, this.name);
-        pstmt.setInt(2, this.age);
-        pstmt.setString(3, this.gender);
-        pstmt.setString(4, this.address);
-        pstmt.setString(5, this.contactNumber);
-        pstmt.setString(6, this.medicalHistory);
-        pstmt.setInt(7, this.patientId);
-
-        pstmt.executeUpdate();
+        bindUpdate(pstmt);
+
+        timer.rows(pstmt.executeUpdate());
+        timer.success();
+        this.dirty = 0;
+      }
+    }
+    if (this.patientId != 0) {
+      CACHE.put(this.patientId, this);
+      NAMES.put(this.patientId, this.name);
+      publish(type, changed);
+    }
+  }
+
+  public static BatchResult<Patient> saveAll(Collection<Patient> patients)
+    throws SQLException {
+    return saveAll(patients, BatchWriter.defaultBatchSize());
+  }
+
+  public static BatchResult<Patient> saveAll(
+    Collection<Patient> patients,
+    int batchSize
+  ) throws SQLException {
+    List<Patient> inserts = new ArrayList<>();
+    // Rows with the same changed columns share one UPDATE statement
+    Map<Integer, List<Patient>> updates = new HashMap<>();
+    List<Patient> unchanged = new ArrayList<>();
+    for (Patient patient : patients) {
+      if (patient.patientId == 0) {
+        inserts.add(patient);
+      } else if (patient.dirty == 0) {
+        unchanged.add(patient);
+      } else {
+        updates
+          .computeIfAbsent(patient.dirty, mask -> new ArrayList<>())
+          .add(patient);
+      }
+    }
+
+    Set<Patient> inserted = new HashSet<>(inserts);
+    BatchResult<Patient> result = new BatchResult<>();
+    try (Metrics.Timer timer = Metrics.start("Patient.saveAll")) {
+      BatchWriter.write(
+        INSERT_SQL,
+        inserts,
+        batchSize,
+        Patient::bindInsert,
+        Patient::setPatientId,
+        result
+      );
+      for (Map.Entry<Integer, List<Patient>> group : updates.entrySet()) {
+        BatchWriter.write(
+          UPDATE.sql(group.getKey()),
+          group.getValue(),
+          batchSize,
+          Patient::bindUpdate,
+          null,
+          result
+        );
+      }
+      BatchWriter.skip(unchanged, result);
+      timer.rows(result.getSavedCount());
+      timer.success();
+    }
+    for (Patient saved : result.getSaved()) {
+      if (saved.dirty != 0) {
+        saved.publish(
+          inserted.contains(saved)
+            ? ChangeEvent.Type.INSERT
+            : ChangeEvent.Type.UPDATE,
+          saved.dirty
+        );
       }
+      saved.dirty = 0;
+      CACHE.put(saved.patientId, saved);
+      NAMES.put(saved.patientId, saved.name);
     }
+    return result;
   }
 
   public void delete() throws SQLException {
     String sql = "DELETE FROM Patients WHERE PatientID = ?";
     try (
+      Metrics.Timer timer = Metrics.start("Patient.delete");
       Connection conn = DBConnection.getConnection();
       PreparedStatement pstmt = conn.prepareStatement(sql)
     ) {
       pstmt.setInt(1, this.patientId);
-      pstmt.executeUpdate();
+      int affectedRows = pstmt.executeUpdate();
+      timer.rows(affectedRows);
+      timer.success();
+      if (affectedRows > 0) {
+        publish(ChangeEvent.Type.DELETE, 0);
+      }
+    } finally {
+      CACHE.invalidate(this.patientId);
+      NAMES.remove(this.patientId);
+      VisitCounters.get().onPatientDeleted(this.patientId);
+      // As are their appointments, without passing through Appointment
+      SpecialtyPopularity.get().invalidate();
+      AvailabilityIndex.get().clear();
     }
   }
 
+  private void publish(ChangeEvent.Type type, int changed) {
+    ChangeEventBus
+      .get()
+      .publish(
+        ChangeEvent.Entity.PATIENT,
+        type,
+        this.patientId,
+        changed,
+        UPDATE,
+        null,
+        null
+      );
+  }
+
   public static Patient getById(int patientId) throws SQLException {
-    String sql = "SELECT * FROM Patients WHERE PatientID = ?";
+    try (Metrics.Timer timer = Metrics.start("Patient.getById")) {
+      Patient patient = CACHE.get(patientId, Patient::loadById);
+      timer.rows(patient == null ? 0 : 1);
+      timer.success();
+      return patient;
+    }
+  }
+
+  public static CacheStats getCacheStats() {
+    return CACHE.getStats();
+  }
+
+  /**
+   * Empties the cache and the name dictionary, for rows changed behind the
+   * model's back and for measuring cold reads.
+   */
+  public static void clearCaches() {
+    CACHE.invalidateAll();
+    NAMES.clear();
+  }
+
+  // A single row gains nothing from deferring its history, and the cache
+  // keeps what was read: a copy without it would reload it on every get
+  private static Patient loadById(int patientId) throws SQLException {
+    String sql = SELECT_ALL_SQL + " WHERE PatientID = ?";
     try (
       Connection conn = DBConnection.getConnection();
       PreparedStatement pstmt = conn.prepareStatement(sql)
@@ -162,15 +434,7 @@ public class Patient {
       pstmt.setInt(1, patientId);
       try (ResultSet rs = pstmt.executeQuery()) {
         if (rs.next()) {
-          Patient patient = new Patient();
-          patient.setPatientId(rs.getInt("PatientID"));
-          patient.setName(rs.getString("Name"));
-          patient.setAge(rs.getInt("Age"));
-          patient.setGender(rs.getString("Gender"));
-          patient.setAddress(rs.getString("Address"));
-          patient.setContactNumber(rs.getString("ContactNumber"));
-          patient.setMedicalHistory(rs.getString("MedicalHistory"));
-          return patient;
+          return fromResultSet(rs, true);
         }
       }
     }
@@ -179,27 +443,190 @@ public class Patient {
 
   public static List<Patient> getAll() throws SQLException {
     List<Patient> patients = new ArrayList<>();
-    String sql = "SELECT * FROM Patients";
     try (
+      Metrics.Timer timer = Metrics.start("Patient.getAll");
       Connection conn = DBConnection.getConnection();
       Statement stmt = conn.createStatement();
-      ResultSet rs = stmt.executeQuery(sql)
+      ResultSet rs = stmt.executeQuery(SELECT_SQL)
     ) {
       while (rs.next()) {
-        Patient patient = new Patient();
-        patient.setPatientId(rs.getInt("PatientID"));
-        patient.setName(rs.getString("Name"));
-        patient.setAge(rs.getInt("Age"));
-        patient.setGender(rs.getString("Gender"));
-        patient.setAddress(rs.getString("Address"));
-        patient.setContactNumber(rs.getString("ContactNumber"));
-        patient.setMedicalHistory(rs.getString("MedicalHistory"));
-        patients.add(patient);
+        patients.add(fromResultSet(rs, false));
       }
+      timer.rows(patients.size());
+      timer.success();
     }
+    HistoryBatch.attach(patients);
     return patients;
   }
 
+  public static Stream<Patient> stream() throws SQLException {
+    return stream(ResultSetStream.defaultFetchSize());
+  }
+
+  /**
+   * Streams every patient with its medical history: a stream is read once,
+   * front to back, so there is no later batch to load it with.
+   */
+  public static Stream<Patient> stream(int fetchSize) throws SQLException {
+    return ResultSetStream.open(
+      "Patient.stream",
+      SELECT_ALL_SQL,
+      null,
+      fetchSize,
+      rs -> fromResultSet(rs, true)
+    );
+  }
+
+  public static Page<Patient> page(int afterId, int limit)
+    throws SQLException {
+    if (limit < 1) {
+      throw new IllegalArgumentException("limit must be positive");
+    }
+    List<Patient> patients = new ArrayList<>();
+    String sql =
+      SELECT_SQL + " WHERE PatientID > ? ORDER BY PatientID LIMIT ?";
+    try (
+      Metrics.Timer timer = Metrics.start("Patient.page");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, afterId);
+      pstmt.setInt(2, limit + 1);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          patients.add(fromResultSet(rs, false));
+        }
+      }
+      timer.rows(patients.size());
+      timer.success();
+    }
+
+    String nextToken = null;
+    if (patients.size() > limit) {
+      patients.remove(limit);
+      nextToken = PageToken.encode(patients.get(limit - 1).patientId);
+    }
+    HistoryBatch.attach(patients);
+    return new Page<>(patients, nextToken);
+  }
+
+  public static Page<Patient> page(String token, int limit)
+    throws SQLException {
+    int afterId = token == null
+      ? 0
+      : Integer.parseInt(PageToken.decode(token, 1)[0]);
+    return page(afterId, limit);
+  }
+
+  public static boolean exists(int patientId) throws SQLException {
+    String sql = "SELECT 1 FROM Patients WHERE PatientID = ?";
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, patientId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next();
+      }
+    }
+  }
+
+  /**
+   * Fills in the medical history of this patient and of every other patient
+   * of its batch still without one, in a single query.
+   */
+  private void loadMedicalHistory() throws SQLException {
+    List<Patient> pending = new ArrayList<>();
+    if (historyBatch == null) {
+      pending.add(this);
+    } else {
+      for (Patient member : historyBatch.members) {
+        if (!member.historyLoaded) {
+          pending.add(member);
+        }
+      }
+    }
+    List<Integer> ids = new ArrayList<>(pending.size());
+    for (Patient patient : pending) {
+      ids.add(patient.patientId);
+    }
+
+    int size = InList.size(ids.size());
+    String sql =
+      "SELECT PatientID, MedicalHistory FROM Patients WHERE PatientID IN (" +
+      InList.placeholders(size) +
+      ")";
+    Map<Integer, String> histories = new HashMap<>();
+    try (
+      Metrics.Timer timer = Metrics.start("Patient.loadMedicalHistory");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      InList.bind(pstmt, 1, ids, size);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          histories.put(rs.getInt(1), rs.getString(2));
+        }
+      }
+      timer.rows(histories.size());
+      timer.success();
+    }
+
+    // A row deleted in the meantime reads as having no history
+    for (Patient patient : pending) {
+      if (!patient.historyLoaded) {
+        patient.medicalHistory = histories.get(patient.patientId);
+        patient.historyLoaded = true;
+      }
+      patient.historyBatch = null;
+    }
+  }
+
+  private static Patient fromResultSet(ResultSet rs, boolean withHistory)
+    throws SQLException {
+    Patient patient = new Patient();
+    patient.setPatientId(rs.getInt("PatientID"));
+    patient.setName(rs.getString("Name"));
+    patient.setAge(rs.getInt("Age"));
+    patient.setGender(rs.getString("Gender"));
+    patient.setAddress(rs.getString("Address"));
+    patient.setContactNumber(rs.getString("ContactNumber"));
+    if (withHistory) {
+      patient.setMedicalHistory(rs.getString("MedicalHistory"));
+    } else {
+      patient.historyLoaded = false;
+    }
+    patient.dirty = 0;
+    return patient;
+  }
+
+  /**
+   * Patients read by the same list or page query, so that the first one
+   * asked for its history loads it for all of them. Groups are capped at
+   * {@link InList#MAX_SIZE} so that takes one statement, and so a patient
+   * kept from a large list does not keep the whole list reachable.
+   */
+  private static final class HistoryBatch {
+
+    final List<Patient> members;
+
+    private HistoryBatch(List<Patient> members) {
+      this.members = members;
+    }
+
+    static void attach(List<Patient> patients) {
+      for (int from = 0; from < patients.size(); from += InList.MAX_SIZE) {
+        int to = Math.min(patients.size(), from + InList.MAX_SIZE);
+        HistoryBatch batch = new HistoryBatch(
+          new ArrayList<>(patients.subList(from, to))
+        );
+        for (int i = from; i < to; i++) {
+          patients.get(i).historyBatch = batch;
+        }
+      }
+    }
+  }
+
   @Override
   public String toString() {
     return String.format(
@@ -217,7 +644,7 @@ public class Patient {
       gender,
       address,
       contactNumber,
-      medicalHistory
+      getMedicalHistory()
     );
   }
 }
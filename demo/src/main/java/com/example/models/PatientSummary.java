@@ -0,0 +1,160 @@
+package com.example.models;
+
+import com.example.DBConnection;
+import com.example.cache.IntObjectMap;
+import com.example.db.InList;
+import com.example.db.ResultSetStream;
+import com.example.metrics.Metrics;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The columns of a patient needed to identify and contact them, read without
+ * the rest of the row. Use it where a full {@link Patient} would only be
+ * printed or looked up by name.
+ */
+public class PatientSummary {
+
+  private static final String SELECT_SQL =
+    "SELECT PatientID, Name, Age, ContactNumber FROM Patients";
+
+  private final int patientId;
+  private final String name;
+  private final int age;
+  private final String contactNumber;
+
+  private PatientSummary(
+    int patientId,
+    String name,
+    int age,
+    String contactNumber
+  ) {
+    this.patientId = patientId;
+    this.name = name;
+    this.age = age;
+    this.contactNumber = contactNumber;
+  }
+
+  public int getPatientId() {
+    return patientId;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getAge() {
+    return age;
+  }
+
+  public String getContactNumber() {
+    return contactNumber;
+  }
+
+  public static PatientSummary getById(int patientId) throws SQLException {
+    String sql = SELECT_SQL + " WHERE PatientID = ?";
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, patientId);
+      try (ResultSet rs = pstmt.executeQuery()) {
+        return rs.next() ? fromResultSet(rs) : null;
+      }
+    }
+  }
+
+  /**
+   * Summaries for {@code ids} in their order, in one query per
+   * {@link InList#MAX_SIZE} ids. Ids without a row are left out.
+   */
+  public static List<PatientSummary> getByIds(int[] ids) throws SQLException {
+    IntObjectMap<PatientSummary> found = new IntObjectMap<>(ids.length);
+    if (ids.length > 0) {
+      try (
+        Metrics.Timer timer = Metrics.start("PatientSummary.getByIds");
+        Connection conn = DBConnection.getConnection()
+      ) {
+        for (int from = 0; from < ids.length; from += InList.MAX_SIZE) {
+          int count = Math.min(InList.MAX_SIZE, ids.length - from);
+          int size = InList.size(count);
+          String sql =
+            SELECT_SQL +
+            " WHERE PatientID IN (" +
+            InList.placeholders(size) +
+            ")";
+          try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            InList.bind(pstmt, 1, ids, from, count, size);
+            try (ResultSet rs = pstmt.executeQuery()) {
+              while (rs.next()) {
+                PatientSummary patient = fromResultSet(rs);
+                found.put(patient.patientId, patient);
+              }
+            }
+          }
+        }
+        timer.rows(found.size());
+        timer.success();
+      }
+    }
+
+    List<PatientSummary> patients = new ArrayList<>(found.size());
+    for (int id : ids) {
+      PatientSummary patient = found.get(id);
+      if (patient != null) {
+        patients.add(patient);
+      }
+    }
+    return patients;
+  }
+
+  public static List<PatientSummary> getAll() throws SQLException {
+    List<PatientSummary> patients = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("PatientSummary.getAll");
+      Connection conn = DBConnection.getConnection();
+      Statement stmt = conn.createStatement();
+      ResultSet rs = stmt.executeQuery(SELECT_SQL)
+    ) {
+      while (rs.next()) {
+        patients.add(fromResultSet(rs));
+      }
+      timer.rows(patients.size());
+      timer.success();
+    }
+    return patients;
+  }
+
+  public static Stream<PatientSummary> stream() throws SQLException {
+    return ResultSetStream.open(
+      "PatientSummary.stream",
+      SELECT_SQL,
+      null,
+      ResultSetStream.defaultFetchSize(),
+      PatientSummary::fromResultSet
+    );
+  }
+
+  private static PatientSummary fromResultSet(ResultSet rs)
+    throws SQLException {
+    return new PatientSummary(
+      rs.getInt("PatientID"),
+      rs.getString("Name"),
+      rs.getInt("Age"),
+      rs.getString("ContactNumber")
+    );
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      "%d: %s (%d), %s",
+      patientId,
+      name,
+      age,
+      contactNumber
+    );
+  }
+}
@@ -0,0 +1,348 @@
+package com.example.reports;
+
+import com.example.DBConnection;
+import com.example.db.ResultSetStream;
+import com.example.metrics.Metrics;
+import com.example.models.AppointmentStatusQueue;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Unpaid bills grouped by how many days ago they were issued.
+ *
+ * <pre>
+ * java com.example.reports.AgingReport [totals|0-30|31-60|61-90|90+|rebuild]
+ * </pre>
+ *
+ * Bucket totals come from {@code UnpaidBillsDaily}, one row per bill date
+ * kept current by triggers on {@code Bills} (migration V6), so a dashboard
+ * refresh costs the same however many bills there are. The bills of a
+ * bucket are streamed with a date range on
+ * {@code (PaymentStatus, DateOfPayment)}, which the V2 index serves, rather
+ * than with {@code DATEDIFF} on the column. Bills without a date are not
+ * aged.
+ */
+public final class AgingReport {
+
+  public enum Bucket {
+    DAYS_0_30("0-30", 0, 30),
+    DAYS_31_60("31-60", 31, 60),
+    DAYS_61_90("61-90", 61, 90),
+    OVER_90("90+", 91, Integer.MAX_VALUE);
+
+    private final String label;
+    private final int minDays;
+    private final int maxDays;
+
+    Bucket(String label, int minDays, int maxDays) {
+      this.label = label;
+      this.minDays = minDays;
+      this.maxDays = maxDays;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    /** Earliest bill date in the bucket, or {@code null} for none. */
+    LocalDate firstDate(LocalDate asOf) {
+      return maxDays == Integer.MAX_VALUE ? null : asOf.minusDays(maxDays);
+    }
+
+    /**
+     * Latest bill date in the bucket, or {@code null} for none: bills dated
+     * after {@code asOf} count as new.
+     */
+    LocalDate lastDate(LocalDate asOf) {
+      return minDays == 0 ? null : asOf.minusDays(minDays);
+    }
+
+    public static Bucket forLabel(String label) {
+      for (Bucket bucket : values()) {
+        if (bucket.label.equals(label)) {
+          return bucket;
+        }
+      }
+      throw new IllegalArgumentException("Unknown bucket " + label);
+    }
+  }
+
+  /** Number and amount of the unpaid bills in one bucket. */
+  public static final class BucketTotal {
+
+    private final Bucket bucket;
+    private final long billCount;
+    private final BigDecimal totalAmount;
+
+    BucketTotal(Bucket bucket, long billCount, BigDecimal totalAmount) {
+      this.bucket = bucket;
+      this.billCount = billCount;
+      this.totalAmount = totalAmount;
+    }
+
+    public Bucket getBucket() {
+      return bucket;
+    }
+
+    public long getBillCount() {
+      return billCount;
+    }
+
+    public BigDecimal getTotalAmount() {
+      return totalAmount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "%-6s days: %d bill(s), %s",
+        bucket.label,
+        billCount,
+        totalAmount.toPlainString()
+      );
+    }
+  }
+
+  /** An unpaid bill with the patient it is for. */
+  public static final class AgedBill {
+
+    private final int billId;
+    private final int patientId;
+    private final String patientName;
+    private final BigDecimal totalAmount;
+    private final LocalDate billDate;
+
+    AgedBill(
+      int billId,
+      int patientId,
+      String patientName,
+      BigDecimal totalAmount,
+      LocalDate billDate
+    ) {
+      this.billId = billId;
+      this.patientId = patientId;
+      this.patientName = patientName;
+      this.totalAmount = totalAmount;
+      this.billDate = billDate;
+    }
+
+    public int getBillId() {
+      return billId;
+    }
+
+    public int getPatientId() {
+      return patientId;
+    }
+
+    public String getPatientName() {
+      return patientName;
+    }
+
+    public BigDecimal getTotalAmount() {
+      return totalAmount;
+    }
+
+    public LocalDate getBillDate() {
+      return billDate;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "Bill %d  %s  %s (ID: %d)  %s",
+        billId,
+        billDate,
+        patientName,
+        patientId,
+        totalAmount == null ? "-" : totalAmount.toPlainString()
+      );
+    }
+  }
+
+  private static final String TOTALS_SQL =
+    "SELECT CASE WHEN DateOfPayment >= ? THEN 0 WHEN DateOfPayment >= ? THEN 1 " +
+    "WHEN DateOfPayment >= ? THEN 2 ELSE 3 END AS Bucket, " +
+    "SUM(BillCount), SUM(TotalAmount) " +
+    "FROM UnpaidBillsDaily WHERE BillCount > 0 GROUP BY Bucket";
+  private static final String BILLS_SQL =
+    "SELECT b.BillID, a.PatientID, p.Name, b.TotalAmount, b.DateOfPayment " +
+    "FROM Bills b " +
+    "JOIN Appointments a ON a.AppointmentID = b.AppointmentID " +
+    "JOIN Patients p ON p.PatientID = a.PatientID " +
+    "WHERE b.PaymentStatus = 'Unpaid'";
+
+  private AgingReport() {}
+
+  public static void main(String[] args) throws Exception {
+    String command = args.length == 0 ? "totals" : args[0];
+    try {
+      if (command.equals("totals")) {
+        totals(LocalDate.now()).values().forEach(System.out::println);
+      } else if (command.equals("rebuild")) {
+        rebuild();
+        System.out.println("Rebuilt the unpaid bill summary");
+      } else {
+        try (
+          Stream<AgedBill> bills = stream(
+            Bucket.forLabel(command),
+            LocalDate.now()
+          )
+        ) {
+          bills.forEach(System.out::println);
+        }
+      }
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  /** Totals of every bucket as of {@code asOf}, empty buckets included. */
+  public static Map<Bucket, BucketTotal> totals(LocalDate asOf)
+    throws SQLException {
+    Bucket[] buckets = Bucket.values();
+    long[] counts = new long[buckets.length];
+    BigDecimal[] amounts = new BigDecimal[buckets.length];
+    try (
+      Metrics.Timer timer = Metrics.start("AgingReport.totals");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(TOTALS_SQL)
+    ) {
+      for (int i = 0; i < buckets.length - 1; i++) {
+        pstmt.setDate(i + 1, Date.valueOf(buckets[i].firstDate(asOf)));
+      }
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          int bucket = rs.getInt(1);
+          counts[bucket] = rs.getLong(2);
+          amounts[bucket] = rs.getBigDecimal(3);
+        }
+      }
+      timer.success();
+    }
+
+    Map<Bucket, BucketTotal> totals = new EnumMap<>(Bucket.class);
+    for (int i = 0; i < buckets.length; i++) {
+      totals.put(
+        buckets[i],
+        new BucketTotal(
+          buckets[i],
+          counts[i],
+          amounts[i] == null ? BigDecimal.ZERO : amounts[i]
+        )
+      );
+    }
+    return totals;
+  }
+
+  /** The unpaid bills of one bucket as of {@code asOf}, oldest first. */
+  public static Stream<AgedBill> stream(Bucket bucket, LocalDate asOf)
+    throws SQLException {
+    LocalDate first = bucket.firstDate(asOf);
+    LocalDate last = bucket.lastDate(asOf);
+    return stream(
+      "AgingReport.stream",
+      first == null ? null : Date.valueOf(first),
+      last == null ? null : Date.valueOf(last)
+    );
+  }
+
+  /**
+   * Unpaid bills issued at least {@code days} days before {@code asOf},
+   * oldest first: the "not paid within 30 days" report for {@code 30}.
+   */
+  public static Stream<AgedBill> overdue(int days, LocalDate asOf)
+    throws SQLException {
+    return stream(
+      "AgingReport.overdue",
+      null,
+      Date.valueOf(asOf.minusDays(days))
+    );
+  }
+
+  /**
+   * Recomputes {@code UnpaidBillsDaily} from {@code Bills}, for bills
+   * changed with the triggers disabled or to repair drift.
+   */
+  public static void rebuild() throws SQLException {
+    try (
+      Metrics.Timer timer = Metrics.start("AgingReport.rebuild");
+      Connection conn = DBConnection.getConnection()
+    ) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try (Statement stmt = conn.createStatement()) {
+        stmt.executeUpdate("DELETE FROM UnpaidBillsDaily");
+        int rows = stmt.executeUpdate(
+          "INSERT INTO UnpaidBillsDaily (DateOfPayment, BillCount, TotalAmount) " +
+          "SELECT DateOfPayment, COUNT(*), COALESCE(SUM(TotalAmount), 0) " +
+          "FROM Bills WHERE PaymentStatus = 'Unpaid' AND DateOfPayment IS NOT NULL " +
+          "GROUP BY DateOfPayment " +
+          // A bill's trigger may have recreated a row since the DELETE
+          "ON DUPLICATE KEY UPDATE BillCount = VALUES(BillCount), " +
+          "TotalAmount = VALUES(TotalAmount)"
+        );
+        conn.commit();
+        timer.rows(rows);
+        timer.success();
+      } catch (SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+  }
+
+  // Bills dated within [first, last]; a null bound is open
+  private static Stream<AgedBill> stream(
+    String operation,
+    Date first,
+    Date last
+  ) throws SQLException {
+    // The bills are joined to appointments read as the model shows them
+    AppointmentStatusQueue.get().flush();
+    StringBuilder sql = new StringBuilder(BILLS_SQL);
+    sql.append(" AND b.DateOfPayment ");
+    if (first != null && last != null) {
+      sql.append("BETWEEN ? AND ?");
+    } else if (first != null) {
+      sql.append(">= ?");
+    } else if (last != null) {
+      sql.append("<= ?");
+    } else {
+      sql.append("IS NOT NULL");
+    }
+    sql.append(" ORDER BY b.DateOfPayment, b.BillID");
+    return ResultSetStream.open(
+      operation,
+      sql.toString(),
+      pstmt -> {
+        int index = 1;
+        if (first != null) {
+          pstmt.setDate(index++, first);
+        }
+        if (last != null) {
+          pstmt.setDate(index, last);
+        }
+      },
+      ResultSetStream.defaultFetchSize(),
+      rs ->
+        new AgedBill(
+          rs.getInt(1),
+          rs.getInt(2),
+          rs.getString(3),
+          rs.getBigDecimal(4),
+          rs.getDate(5).toLocalDate()
+        )
+    );
+  }
+}
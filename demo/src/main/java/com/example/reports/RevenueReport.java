@@ -0,0 +1,269 @@
+package com.example.reports;
+
+import com.example.DBConnection;
+import com.example.metrics.Metrics;
+import com.example.models.AppointmentStatusQueue;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Billed revenue per doctor and month, read from the
+ * {@code DoctorMonthlyRevenue} summary table.
+ *
+ * <pre>
+ * java com.example.reports.RevenueReport show DOCTOR_ID YYYY-MM
+ * java com.example.reports.RevenueReport rebuild [FROM_YYYY-MM [TO_YYYY-MM]]
+ * </pre>
+ *
+ * The summary is kept current by triggers on {@code Bills},
+ * {@code Appointments}, {@code Patients} and {@code Doctors} (migration V5),
+ * so reading it is a primary key lookup. Bills count towards the month of
+ * their appointment's date. {@link #rebuild} recomputes months from the
+ * bills themselves, for backfills after bulk loads that bypassed the
+ * triggers or to repair drift.
+ */
+public final class RevenueReport {
+
+  private static final String SELECT_SQL =
+    "SELECT DoctorID, Month, TotalRevenue, BillCount FROM DoctorMonthlyRevenue";
+  private static final String MONTH_START =
+    "a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY";
+  private static final String REBUILD_SQL =
+    "INSERT INTO DoctorMonthlyRevenue (DoctorID, Month, TotalRevenue, BillCount) " +
+    "SELECT a.DoctorID, " +
+    MONTH_START +
+    ", COALESCE(SUM(b.TotalAmount), 0), COUNT(*) " +
+    "FROM Appointments a JOIN Bills b ON b.AppointmentID = a.AppointmentID " +
+    "WHERE a.DoctorID IS NOT NULL AND a.Date BETWEEN ? AND ? " +
+    "GROUP BY a.DoctorID, " +
+    MONTH_START +
+    // A bill's trigger may have recreated a row since the DELETE
+    " ON DUPLICATE KEY UPDATE TotalRevenue = VALUES(TotalRevenue), " +
+    "BillCount = VALUES(BillCount)";
+
+  /** One row of the summary. */
+  public static final class DoctorRevenue {
+
+    private final int doctorId;
+    private final YearMonth month;
+    private final BigDecimal totalRevenue;
+    private final int billCount;
+
+    DoctorRevenue(
+      int doctorId,
+      YearMonth month,
+      BigDecimal totalRevenue,
+      int billCount
+    ) {
+      this.doctorId = doctorId;
+      this.month = month;
+      this.totalRevenue = totalRevenue;
+      this.billCount = billCount;
+    }
+
+    public int getDoctorId() {
+      return doctorId;
+    }
+
+    public YearMonth getMonth() {
+      return month;
+    }
+
+    public BigDecimal getTotalRevenue() {
+      return totalRevenue;
+    }
+
+    public int getBillCount() {
+      return billCount;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+        "Doctor %d, %s: %s from %d bill(s)",
+        doctorId,
+        month,
+        totalRevenue.toPlainString(),
+        billCount
+      );
+    }
+  }
+
+  private RevenueReport() {}
+
+  public static void main(String[] args) throws Exception {
+    if (args.length == 0) {
+      System.out.println(
+        "Usage: RevenueReport show DOCTOR_ID YYYY-MM | " +
+        "rebuild [FROM_YYYY-MM [TO_YYYY-MM]]"
+      );
+      return;
+    }
+    try {
+      switch (args[0]) {
+        case "show":
+          System.out.println(
+            forDoctor(Integer.parseInt(args[1]), YearMonth.parse(args[2]))
+          );
+          break;
+        case "rebuild":
+          int rows = args.length == 1
+            ? rebuild()
+            : rebuild(
+              YearMonth.parse(args[1]),
+              YearMonth.parse(args.length > 2 ? args[2] : args[1])
+            );
+          System.out.println(
+            "Rebuilt the revenue summary (" + rows + " rows affected)"
+          );
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown command " + args[0]);
+      }
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  /**
+   * Revenue of one doctor in one month; zero with no bills when the doctor
+   * billed nothing that month.
+   */
+  public static DoctorRevenue forDoctor(int doctorId, YearMonth month)
+    throws SQLException {
+    String sql = SELECT_SQL + " WHERE DoctorID = ? AND Month = ?";
+    try (
+      Metrics.Timer timer = Metrics.start("RevenueReport.forDoctor");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, doctorId);
+      pstmt.setDate(2, Date.valueOf(month.atDay(1)));
+      try (ResultSet rs = pstmt.executeQuery()) {
+        DoctorRevenue revenue = rs.next()
+          ? fromResultSet(rs)
+          : new DoctorRevenue(doctorId, month, BigDecimal.ZERO, 0);
+        timer.rows(1);
+        timer.success();
+        return revenue;
+      }
+    }
+  }
+
+  /** Month by month revenue of one doctor over {@code [from, to]}. */
+  public static List<DoctorRevenue> forDoctor(
+    int doctorId,
+    YearMonth from,
+    YearMonth to
+  ) throws SQLException {
+    String sql =
+      SELECT_SQL + " WHERE DoctorID = ? AND Month BETWEEN ? AND ? ORDER BY Month";
+    List<DoctorRevenue> revenues = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("RevenueReport.forDoctorRange");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setInt(1, doctorId);
+      pstmt.setDate(2, Date.valueOf(from.atDay(1)));
+      pstmt.setDate(3, Date.valueOf(to.atDay(1)));
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          revenues.add(fromResultSet(rs));
+        }
+      }
+      timer.rows(revenues.size());
+      timer.success();
+    }
+    return revenues;
+  }
+
+  /** Every doctor with bills in {@code month}, highest revenue first. */
+  public static List<DoctorRevenue> forMonth(YearMonth month)
+    throws SQLException {
+    String sql = SELECT_SQL + " WHERE Month = ? ORDER BY TotalRevenue DESC";
+    List<DoctorRevenue> revenues = new ArrayList<>();
+    try (
+      Metrics.Timer timer = Metrics.start("RevenueReport.forMonth");
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql)
+    ) {
+      pstmt.setDate(1, Date.valueOf(month.atDay(1)));
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          revenues.add(fromResultSet(rs));
+        }
+      }
+      timer.rows(revenues.size());
+      timer.success();
+    }
+    return revenues;
+  }
+
+  /** Recomputes every month that has bills, and drops the rest. */
+  public static int rebuild() throws SQLException {
+    return rebuild(YearMonth.of(1000, 1), YearMonth.of(9999, 12));
+  }
+
+  /**
+   * Recomputes the months {@code [from, to]} from {@code Bills} in one
+   * transaction, replacing what the summary held for them.
+   *
+   * @return the rows affected by the recompute, as MySQL counts them
+   */
+  public static int rebuild(YearMonth from, YearMonth to) throws SQLException {
+    if (from.isAfter(to)) {
+      throw new IllegalArgumentException(from + " is after " + to);
+    }
+    Date start = Date.valueOf(from.atDay(1));
+    Date end = Date.valueOf(to.atEndOfMonth());
+    // Read the appointments as the model shows them
+    AppointmentStatusQueue.get().flush();
+    try (
+      Metrics.Timer timer = Metrics.start("RevenueReport.rebuild");
+      Connection conn = DBConnection.getConnection()
+    ) {
+      boolean autoCommit = conn.getAutoCommit();
+      conn.setAutoCommit(false);
+      try (
+        PreparedStatement delete = conn.prepareStatement(
+          "DELETE FROM DoctorMonthlyRevenue WHERE Month BETWEEN ? AND ?"
+        );
+        PreparedStatement insert = conn.prepareStatement(REBUILD_SQL)
+      ) {
+        delete.setDate(1, start);
+        delete.setDate(2, end);
+        delete.executeUpdate();
+        insert.setDate(1, start);
+        insert.setDate(2, end);
+        int rows = insert.executeUpdate();
+        conn.commit();
+        timer.rows(rows);
+        timer.success();
+        return rows;
+      } catch (SQLException | RuntimeException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(autoCommit);
+      }
+    }
+  }
+
+  private static DoctorRevenue fromResultSet(ResultSet rs)
+    throws SQLException {
+    return new DoctorRevenue(
+      rs.getInt("DoctorID"),
+      YearMonth.from(rs.getDate("Month").toLocalDate()),
+      rs.getBigDecimal("TotalRevenue"),
+      rs.getInt("BillCount")
+    );
+  }
+}
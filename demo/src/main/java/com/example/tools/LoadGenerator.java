@@ -0,0 +1,547 @@
+package com.example.tools;
+
+import com.example.DBConnection;
+import com.example.index.AvailabilityIndex;
+import com.example.index.SpecialtyPopularity;
+import com.example.index.VisitCounters;
+import com.example.metrics.LatencyHistogram;
+import com.example.models.Appointment;
+import com.example.models.Bill;
+import com.example.models.Patient;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Headless load generator that replays a weighted mix of the operations
+ * behind the interactive menu.
+ *
+ * <pre>
+ * java com.example.tools.LoadGenerator [--clients N] [--rate OPS_PER_SEC]
+ *     [--duration SECONDS] [--warmup SECONDS] [--seed N] [--keep]
+ *     [--mix add-patient=5,schedule=20,availability=40,bill=5,list=1,update=15,cancel=14]
+ * </pre>
+ *
+ * Scheduling is open loop: every client has a fixed timetable of intended
+ * start times derived from the target rate, and a slow operation does not
+ * push the next one back. Response time is measured from the intended start,
+ * so time spent queued behind a stalled database is counted instead of
+ * silently omitted; service time, measured from the actual start, is
+ * reported next to it.
+ *
+ * Reads use existing patients and doctors. Writes only touch rows the
+ * generator created itself (patients named {@value #MARKER}, appointments in
+ * {@value #FIRST_YEAR} and later), which are deleted at the end unless
+ * {@code --keep} is given.
+ */
+public final class LoadGenerator {
+
+  static final String MARKER = "loadgen";
+  static final int FIRST_YEAR = 2040;
+
+  private static final int SAMPLE_SIZE = 10_000;
+  private static final int DAYS = 365;
+  private static final int SLOTS_PER_DAY = 20;
+  private static final int CLEANUP_BATCH = 500;
+
+  private interface Operation {
+    void run(SplittableRandom random) throws Exception;
+  }
+
+  private static final class OperationStats {
+
+    final String name;
+    final int weight;
+    final Operation operation;
+    final LatencyHistogram response = new LatencyHistogram();
+    final LatencyHistogram service = new LatencyHistogram();
+    final AtomicLong errors = new AtomicLong();
+    volatile Exception lastError;
+
+    OperationStats(String name, int weight, Operation operation) {
+      this.name = name;
+      this.weight = weight;
+      this.operation = operation;
+    }
+  }
+
+  private final int clients;
+  private final double rate;
+  private final long durationNanos;
+  private final long warmupNanos;
+  private final long seed;
+  private final boolean keep;
+  private final List<OperationStats> mix = new ArrayList<>();
+  private final int totalWeight;
+
+  private int[] patientIds;
+  private int[] doctorIds;
+  private final List<Integer> createdAppointments =
+    new CopyOnWriteArrayList<>();
+  private final AtomicLong createdPatients = new AtomicLong();
+  private final AtomicLong sequence = new AtomicLong();
+  private final AtomicLong late = new AtomicLong();
+
+  public LoadGenerator(
+    int clients,
+    double rate,
+    long durationSeconds,
+    long warmupSeconds,
+    Map<String, Integer> weights,
+    long seed,
+    boolean keep
+  ) {
+    if (clients < 1 || rate <= 0) {
+      throw new IllegalArgumentException(
+        "clients and rate must be positive"
+      );
+    }
+    this.clients = clients;
+    this.rate = rate;
+    this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+    this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+    this.seed = seed;
+    this.keep = keep;
+
+    Map<String, Operation> operations = new LinkedHashMap<>();
+    operations.put("add-patient", this::addPatient);
+    operations.put("schedule", this::scheduleAppointment);
+    operations.put("availability", this::checkDoctorAvailability);
+    operations.put("bill", this::generateBill);
+    operations.put("list", this::listAllAppointments);
+    operations.put("update", this::updateAppointment);
+    operations.put("cancel", this::cancelAppointment);
+    int total = 0;
+    for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+      Operation operation = operations.get(entry.getKey());
+      if (operation == null) {
+        throw new IllegalArgumentException(
+          "Unknown operation " +
+          entry.getKey() +
+          "; expected one of " +
+          operations.keySet()
+        );
+      }
+      if (entry.getValue() > 0) {
+        mix.add(new OperationStats(entry.getKey(), entry.getValue(), operation));
+        total += entry.getValue();
+      }
+    }
+    if (total == 0) {
+      throw new IllegalArgumentException("The operation mix is empty");
+    }
+    this.totalWeight = total;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int clients = 8;
+    double rate = 200;
+    long duration = 60;
+    long warmup = 10;
+    long seed = System.nanoTime();
+    boolean keep = false;
+    Map<String, Integer> weights = parseMix(
+      "add-patient=5,schedule=20,availability=40,bill=5,list=1,update=15,cancel=14"
+    );
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--keep")) {
+        keep = true;
+        continue;
+      }
+      if (args[i].equals("-h") || args[i].equals("--help")) {
+        System.out.println(
+          "Usage: LoadGenerator [--clients N] [--rate OPS_PER_SEC] " +
+          "[--duration SECONDS] [--warmup SECONDS] [--seed N] [--keep] " +
+          "[--mix name=weight,...]"
+        );
+        return;
+      }
+      if (i + 1 >= args.length) {
+        throw new IllegalArgumentException("Missing value for " + args[i]);
+      }
+      String value = args[++i];
+      switch (args[i - 1]) {
+        case "--clients":
+          clients = Integer.parseInt(value);
+          break;
+        case "--rate":
+          rate = Double.parseDouble(value);
+          break;
+        case "--duration":
+          duration = Long.parseLong(value);
+          break;
+        case "--warmup":
+          warmup = Long.parseLong(value);
+          break;
+        case "--seed":
+          seed = Long.parseLong(value);
+          break;
+        case "--mix":
+          weights = parseMix(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+      }
+    }
+
+    try {
+      new LoadGenerator(clients, rate, duration, warmup, weights, seed, keep)
+        .run();
+    } finally {
+      DBConnection.shutdown();
+    }
+  }
+
+  private static Map<String, Integer> parseMix(String spec) {
+    Map<String, Integer> weights = new LinkedHashMap<>();
+    for (String part : spec.split(",")) {
+      String[] pair = part.trim().split("=");
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("Bad mix entry " + part);
+      }
+      weights.put(pair[0].trim(), Integer.parseInt(pair[1].trim()));
+    }
+    return weights;
+  }
+
+  public void run() throws Exception {
+    patientIds = sampleIds("SELECT PatientID FROM Patients");
+    doctorIds = sampleIds("SELECT DoctorID FROM Doctors");
+    if (patientIds.length == 0 || doctorIds.length == 0) {
+      throw new IllegalStateException(
+        "The database needs at least one patient and one doctor"
+      );
+    }
+    System.out.printf(
+      "Running %d clients at %.0f ops/s for %d s (+%d s warm-up), seed %d%n",
+      clients,
+      rate,
+      TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+      TimeUnit.NANOSECONDS.toSeconds(warmupNanos),
+      seed
+    );
+
+    long intervalNanos = (long) (clients * 1_000_000_000.0 / rate);
+    long startAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+    long measureFrom = startAt + warmupNanos;
+    long endAt = measureFrom + durationNanos;
+    ExecutorService pool = Executors.newFixedThreadPool(clients);
+    try {
+      List<Future<?>> tasks = new ArrayList<>();
+      for (int c = 0; c < clients; c++) {
+        long firstStart = startAt + intervalNanos * c / clients;
+        SplittableRandom random = new SplittableRandom(seed + c);
+        tasks.add(
+          pool.submit(() ->
+            clientLoop(random, firstStart, intervalNanos, measureFrom, endAt)
+          )
+        );
+      }
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } finally {
+      pool.shutdownNow();
+      if (!keep) {
+        cleanUp();
+      }
+    }
+    report(durationNanos);
+  }
+
+  private Void clientLoop(
+    SplittableRandom random,
+    long firstStart,
+    long intervalNanos,
+    long measureFrom,
+    long endAt
+  ) {
+    for (
+      long intended = firstStart;
+      intended < endAt;
+      intended += intervalNanos
+    ) {
+      long now = System.nanoTime();
+      if (now < intended) {
+        LockSupport.parkNanos(intended - now);
+        now = System.nanoTime();
+      } else if (now - intended > intervalNanos) {
+        late.incrementAndGet();
+      }
+      OperationStats stats = pick(random);
+      boolean failed = false;
+      try {
+        stats.operation.run(random);
+      } catch (Exception e) {
+        failed = true;
+        stats.lastError = e;
+      }
+      long finished = System.nanoTime();
+      if (intended >= measureFrom) {
+        if (failed) {
+          stats.errors.incrementAndGet();
+        }
+        stats.response.record(finished - intended);
+        stats.service.record(finished - now);
+      }
+      if (Thread.currentThread().isInterrupted()) {
+        break;
+      }
+    }
+    return null;
+  }
+
+  private OperationStats pick(SplittableRandom random) {
+    int ticket = random.nextInt(totalWeight);
+    for (OperationStats stats : mix) {
+      ticket -= stats.weight;
+      if (ticket < 0) {
+        return stats;
+      }
+    }
+    return mix.get(mix.size() - 1);
+  }
+
+  private void addPatient(SplittableRandom random) throws SQLException {
+    long n = sequence.incrementAndGet();
+    Patient patient = new Patient(
+      MARKER + " patient " + n,
+      18 + random.nextInt(70),
+      random.nextBoolean() ? "Female" : "Male",
+      n + " Load St",
+      String.format("555-%04d", n % 10000),
+      "Synthetic history " + n
+    );
+    patient.save();
+    createdPatients.incrementAndGet();
+  }
+
+  private void scheduleAppointment(SplittableRandom random)
+    throws SQLException {
+    Appointment appointment = new Appointment(
+      patientIds[random.nextInt(patientIds.length)],
+      doctorIds[random.nextInt(doctorIds.length)],
+      randomDate(random),
+      randomTime(random),
+      "Scheduled"
+    );
+    appointment.save();
+    createdAppointments.add(appointment.getAppointmentId());
+  }
+
+  private void checkDoctorAvailability(SplittableRandom random)
+    throws SQLException {
+    AvailabilityIndex
+      .get()
+      .getFreeSlots(
+        doctorIds[random.nextInt(doctorIds.length)],
+        randomDate(random).toLocalDate()
+      );
+  }
+
+  private void generateBill(SplittableRandom random) throws SQLException {
+    Integer appointmentId = randomCreatedAppointment(random);
+    if (appointmentId == null) {
+      scheduleAppointment(random);
+      return;
+    }
+    Bill.generate(appointmentId, 50 + random.nextInt(950));
+  }
+
+  private void listAllAppointments(SplittableRandom random)
+    throws SQLException {
+    try (Stream<Appointment> appointments = Appointment.stream()) {
+      appointments.count();
+    }
+  }
+
+  private void updateAppointment(SplittableRandom random)
+    throws SQLException {
+    Appointment appointment = loadCreatedAppointment(random);
+    if (appointment == null) {
+      scheduleAppointment(random);
+      return;
+    }
+    appointment.setDate(randomDate(random));
+    appointment.setTime(randomTime(random));
+    appointment.save();
+  }
+
+  private void cancelAppointment(SplittableRandom random)
+    throws SQLException {
+    Appointment appointment = loadCreatedAppointment(random);
+    if (appointment == null) {
+      scheduleAppointment(random);
+      return;
+    }
+    appointment.setStatus("Cancelled");
+    appointment.save();
+  }
+
+  private Appointment loadCreatedAppointment(SplittableRandom random)
+    throws SQLException {
+    Integer appointmentId = randomCreatedAppointment(random);
+    return appointmentId == null ? null : Appointment.getById(appointmentId);
+  }
+
+  private Integer randomCreatedAppointment(SplittableRandom random) {
+    int size = createdAppointments.size();
+    return size == 0 ? null : createdAppointments.get(random.nextInt(size));
+  }
+
+  private static Date randomDate(SplittableRandom random) {
+    return Date.valueOf(
+      LocalDate.of(FIRST_YEAR, 1, 1).plusDays(random.nextInt(DAYS))
+    );
+  }
+
+  private static Time randomTime(SplittableRandom random) {
+    return Time.valueOf(
+      LocalTime.of(8, 0).plusMinutes(30L * random.nextInt(SLOTS_PER_DAY))
+    );
+  }
+
+  private static int[] sampleIds(String sql) throws SQLException {
+    try (
+      Connection conn = DBConnection.getConnection();
+      PreparedStatement pstmt = conn.prepareStatement(sql + " LIMIT ?")
+    ) {
+      pstmt.setInt(1, SAMPLE_SIZE);
+      List<Integer> ids = new ArrayList<>();
+      try (ResultSet rs = pstmt.executeQuery()) {
+        while (rs.next()) {
+          ids.add(rs.getInt(1));
+        }
+      }
+      return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+  }
+
+  private void cleanUp() throws SQLException {
+    List<Integer> appointments = new ArrayList<>(createdAppointments);
+    try (
+      Connection conn = DBConnection.getConnection();
+      Statement stmt = conn.createStatement()
+    ) {
+      // Bills go with their appointments through ON DELETE CASCADE
+      for (int i = 0; i < appointments.size(); i += CLEANUP_BATCH) {
+        StringBuilder ids = new StringBuilder();
+        for (
+          int j = i;
+          j < Math.min(appointments.size(), i + CLEANUP_BATCH);
+          j++
+        ) {
+          if (ids.length() > 0) {
+            ids.append(',');
+          }
+          ids.append(appointments.get(j));
+        }
+        stmt.executeUpdate(
+          "DELETE FROM Appointments WHERE AppointmentID IN (" + ids + ")"
+        );
+      }
+      stmt.executeUpdate(
+        "DELETE FROM Patients WHERE Name LIKE '" + MARKER + " %'"
+      );
+    }
+    AvailabilityIndex.get().clear();
+    VisitCounters.get().clear();
+    SpecialtyPopularity.get().invalidate();
+    System.out.printf(
+      "Removed %d generated appointments and %d generated patients%n",
+      appointments.size(),
+      createdPatients.get()
+    );
+  }
+
+  private void report(long measuredNanos) {
+    double seconds = measuredNanos / 1_000_000_000.0;
+    System.out.println();
+    System.out.printf(
+      "%-13s %9s %7s %9s %10s %10s %10s %10s %12s%n",
+      "operation",
+      "count",
+      "errors",
+      "ops/s",
+      "p50 ms",
+      "p99 ms",
+      "p99.9 ms",
+      "max ms",
+      "svc p99 ms"
+    );
+    LatencyHistogram allResponse = new LatencyHistogram();
+    LatencyHistogram allService = new LatencyHistogram();
+    long allErrors = 0;
+    for (OperationStats stats : mix) {
+      printRow(
+        stats.name,
+        stats.response,
+        stats.service,
+        stats.errors.get(),
+        seconds
+      );
+      allResponse.add(stats.response);
+      allService.add(stats.service);
+      allErrors += stats.errors.get();
+    }
+    printRow("total", allResponse, allService, allErrors, seconds);
+    System.out.printf(
+      "%nTarget %.0f ops/s, achieved %.0f ops/s; %d operations started more " +
+      "than one interval late%n",
+      rate,
+      allResponse.getCount() / seconds,
+      late.get()
+    );
+    for (OperationStats stats : mix) {
+      if (stats.lastError != null) {
+        System.out.println(
+          "Last " + stats.name + " error: " + stats.lastError.getMessage()
+        );
+      }
+    }
+  }
+
+  private static void printRow(
+    String name,
+    LatencyHistogram response,
+    LatencyHistogram service,
+    long errors,
+    double seconds
+  ) {
+    System.out.printf(
+      "%-13s %9d %7d %9.1f %10.2f %10.2f %10.2f %10.2f %12.2f%n",
+      name,
+      response.getCount(),
+      errors,
+      response.getCount() / seconds,
+      millis(response.getValueAtPercentile(50)),
+      millis(response.getValueAtPercentile(99)),
+      millis(response.getValueAtPercentile(99.9)),
+      millis(response.getMax()),
+      millis(service.getValueAtPercentile(99))
+    );
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1_000_000.0;
+  }
+}
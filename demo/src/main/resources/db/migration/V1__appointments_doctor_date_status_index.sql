@@ -0,0 +1,6 @@
+-- Covers the availability check
+--   SELECT Time FROM Appointments WHERE DoctorID = ? AND Date = ? AND Status = 'Scheduled'
+-- without touching the table rows. The (DoctorID, Date) prefix also serves
+-- the per-doctor revenue report, so that needs no index of its own.
+CREATE INDEX idx_appointments_doctor_date_status
+    ON Appointments (DoctorID, Date, Status, Time);
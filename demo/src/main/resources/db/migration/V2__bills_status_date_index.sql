@@ -0,0 +1,3 @@
+-- Unpaid-bills report: WHERE PaymentStatus = 'Unpaid' AND DateOfPayment < ?
+CREATE INDEX idx_bills_status_date
+    ON Bills (PaymentStatus, DateOfPayment);
@@ -0,0 +1,4 @@
+-- Schedule-ordered keyset paging (Appointment.pageBySchedule) and date-range
+-- scans. InnoDB appends the primary key, so this is (Date, Time, AppointmentID).
+CREATE INDEX idx_appointments_date_time
+    ON Appointments (Date, Time);
@@ -0,0 +1,3 @@
+-- BillingEngine: WHERE Status = 'Completed' AND Date >= ? AND Date < ?
+CREATE INDEX idx_appointments_status_date
+    ON Appointments (Status, Date);
@@ -0,0 +1,164 @@
+-- Revenue per doctor and month of the appointment, kept current by the
+-- triggers below so RevenueReport reads one row instead of joining
+-- Doctors, Appointments and Bills and scanning on MONTH()/YEAR().
+-- Month is the first day of the month.
+CREATE TABLE DoctorMonthlyRevenue (
+    DoctorID INT NOT NULL,
+    Month DATE NOT NULL,
+    TotalRevenue DECIMAL(14, 2) NOT NULL DEFAULT 0,
+    BillCount INT NOT NULL DEFAULT 0,
+    PRIMARY KEY (DoctorID, Month)
+);
+
+-- Every way a bill is created (GenerateBill, BillingEngine, plain INSERTs)
+-- goes through these. Bills whose appointment has no doctor or date are
+-- not counted, as in the original report query.
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueAfterBillInsert
+AFTER INSERT ON Bills
+FOR EACH ROW
+BEGIN
+    INSERT INTO DoctorMonthlyRevenue (DoctorID, Month, TotalRevenue, BillCount)
+    SELECT a.DoctorID, a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY,
+           COALESCE(NEW.TotalAmount, 0), 1
+    FROM Appointments a
+    WHERE a.AppointmentID = NEW.AppointmentID
+      AND a.DoctorID IS NOT NULL AND a.Date IS NOT NULL
+    ON DUPLICATE KEY UPDATE
+        TotalRevenue = TotalRevenue + COALESCE(NEW.TotalAmount, 0),
+        BillCount = BillCount + 1;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueAfterBillUpdate
+AFTER UPDATE ON Bills
+FOR EACH ROW
+BEGIN
+    IF NOT (OLD.AppointmentID <=> NEW.AppointmentID)
+        OR NOT (OLD.TotalAmount <=> NEW.TotalAmount) THEN
+        UPDATE DoctorMonthlyRevenue r
+        JOIN Appointments a ON a.DoctorID = r.DoctorID
+            AND r.Month = a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY
+        SET r.TotalRevenue = r.TotalRevenue - COALESCE(OLD.TotalAmount, 0),
+            r.BillCount = r.BillCount - 1
+        WHERE a.AppointmentID = OLD.AppointmentID;
+
+        INSERT INTO DoctorMonthlyRevenue (DoctorID, Month, TotalRevenue, BillCount)
+        SELECT a.DoctorID, a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY,
+               COALESCE(NEW.TotalAmount, 0), 1
+        FROM Appointments a
+        WHERE a.AppointmentID = NEW.AppointmentID
+          AND a.DoctorID IS NOT NULL AND a.Date IS NOT NULL
+        ON DUPLICATE KEY UPDATE
+            TotalRevenue = TotalRevenue + COALESCE(NEW.TotalAmount, 0),
+            BillCount = BillCount + 1;
+    END IF;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueAfterBillDelete
+AFTER DELETE ON Bills
+FOR EACH ROW
+BEGIN
+    UPDATE DoctorMonthlyRevenue r
+    JOIN Appointments a ON a.DoctorID = r.DoctorID
+        AND r.Month = a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY
+    SET r.TotalRevenue = r.TotalRevenue - COALESCE(OLD.TotalAmount, 0),
+        r.BillCount = r.BillCount - 1
+    WHERE a.AppointmentID = OLD.AppointmentID;
+END //
+DELIMITER ;
+
+-- Moving a billed appointment to another doctor or month moves its bills
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueAfterAppointmentUpdate
+AFTER UPDATE ON Appointments
+FOR EACH ROW
+BEGIN
+    DECLARE billed DECIMAL(14, 2);
+    DECLARE bills INT;
+    IF NOT (OLD.DoctorID <=> NEW.DoctorID)
+        OR NOT (OLD.Date <=> NEW.Date) THEN
+        SELECT COALESCE(SUM(TotalAmount), 0), COUNT(*) INTO billed, bills
+        FROM Bills WHERE AppointmentID = NEW.AppointmentID;
+
+        IF bills > 0 THEN
+            UPDATE DoctorMonthlyRevenue
+            SET TotalRevenue = TotalRevenue - billed,
+                BillCount = BillCount - bills
+            WHERE DoctorID = OLD.DoctorID
+              AND Month = OLD.Date - INTERVAL (DAYOFMONTH(OLD.Date) - 1) DAY;
+
+            IF NEW.DoctorID IS NOT NULL AND NEW.Date IS NOT NULL THEN
+                INSERT INTO DoctorMonthlyRevenue
+                    (DoctorID, Month, TotalRevenue, BillCount)
+                VALUES (NEW.DoctorID,
+                        NEW.Date - INTERVAL (DAYOFMONTH(NEW.Date) - 1) DAY,
+                        billed, bills)
+                ON DUPLICATE KEY UPDATE
+                    TotalRevenue = TotalRevenue + billed,
+                    BillCount = BillCount + bills;
+            END IF;
+        END IF;
+    END IF;
+END //
+DELIMITER ;
+
+-- Foreign key cascades do not fire triggers, so bills removed with their
+-- appointment (or the appointment's patient) are taken out here
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueBeforeAppointmentDelete
+BEFORE DELETE ON Appointments
+FOR EACH ROW
+BEGIN
+    UPDATE DoctorMonthlyRevenue r
+    JOIN (SELECT COALESCE(SUM(TotalAmount), 0) AS billed, COUNT(*) AS bills
+          FROM Bills WHERE AppointmentID = OLD.AppointmentID) b
+    SET r.TotalRevenue = r.TotalRevenue - b.billed,
+        r.BillCount = r.BillCount - b.bills
+    WHERE r.DoctorID = OLD.DoctorID
+      AND r.Month = OLD.Date - INTERVAL (DAYOFMONTH(OLD.Date) - 1) DAY;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueBeforePatientDelete
+BEFORE DELETE ON Patients
+FOR EACH ROW
+BEGIN
+    UPDATE DoctorMonthlyRevenue r
+    JOIN (SELECT a.DoctorID,
+                 a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY AS Month,
+                 SUM(b.TotalAmount) AS billed, COUNT(*) AS bills
+          FROM Appointments a
+          JOIN Bills b ON b.AppointmentID = a.AppointmentID
+          WHERE a.PatientID = OLD.PatientID
+          GROUP BY a.DoctorID, Month) p
+        ON p.DoctorID = r.DoctorID AND p.Month = r.Month
+    SET r.TotalRevenue = r.TotalRevenue - COALESCE(p.billed, 0),
+        r.BillCount = r.BillCount - p.bills;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER DoctorMonthlyRevenueAfterDoctorDelete
+AFTER DELETE ON Doctors
+FOR EACH ROW
+BEGIN
+    DELETE FROM DoctorMonthlyRevenue WHERE DoctorID = OLD.DoctorID;
+END //
+DELIMITER ;
+
+-- Backfill existing bills; RevenueReport.rebuild() does the same later
+INSERT INTO DoctorMonthlyRevenue (DoctorID, Month, TotalRevenue, BillCount)
+SELECT a.DoctorID, a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY,
+       COALESCE(SUM(b.TotalAmount), 0), COUNT(*)
+FROM Appointments a
+JOIN Bills b ON b.AppointmentID = a.AppointmentID
+WHERE a.DoctorID IS NOT NULL AND a.Date IS NOT NULL
+GROUP BY a.DoctorID, a.Date - INTERVAL (DAYOFMONTH(a.Date) - 1) DAY
+ON DUPLICATE KEY UPDATE
+    TotalRevenue = VALUES(TotalRevenue),
+    BillCount = VALUES(BillCount);
@@ -0,0 +1,128 @@
+-- Unpaid bill count and amount per bill date, kept current by the triggers
+-- below, so AgingReport totals its buckets from one row per day instead of
+-- scanning Bills. Bills without a date are not aged.
+CREATE TABLE UnpaidBillsDaily (
+    DateOfPayment DATE PRIMARY KEY,
+    BillCount INT NOT NULL DEFAULT 0,
+    TotalAmount DECIMAL(14, 2) NOT NULL DEFAULT 0
+);
+
+DELIMITER //
+CREATE TRIGGER UnpaidBillsDailyAfterBillInsert
+AFTER INSERT ON Bills
+FOR EACH ROW
+BEGIN
+    IF NEW.PaymentStatus = 'Unpaid' AND NEW.DateOfPayment IS NOT NULL THEN
+        INSERT INTO UnpaidBillsDaily (DateOfPayment, BillCount, TotalAmount)
+        VALUES (NEW.DateOfPayment, 1, COALESCE(NEW.TotalAmount, 0))
+        ON DUPLICATE KEY UPDATE
+            BillCount = BillCount + 1,
+            TotalAmount = TotalAmount + COALESCE(NEW.TotalAmount, 0);
+    END IF;
+END //
+DELIMITER ;
+
+-- Marking a bill Paid takes it out of its day
+DELIMITER //
+CREATE TRIGGER UnpaidBillsDailyAfterBillUpdate
+AFTER UPDATE ON Bills
+FOR EACH ROW
+BEGIN
+    IF NOT (OLD.PaymentStatus <=> NEW.PaymentStatus)
+        OR NOT (OLD.DateOfPayment <=> NEW.DateOfPayment)
+        OR NOT (OLD.TotalAmount <=> NEW.TotalAmount) THEN
+        IF OLD.PaymentStatus = 'Unpaid' AND OLD.DateOfPayment IS NOT NULL THEN
+            UPDATE UnpaidBillsDaily
+            SET BillCount = BillCount - 1,
+                TotalAmount = TotalAmount - COALESCE(OLD.TotalAmount, 0)
+            WHERE DateOfPayment = OLD.DateOfPayment;
+        END IF;
+        IF NEW.PaymentStatus = 'Unpaid' AND NEW.DateOfPayment IS NOT NULL THEN
+            INSERT INTO UnpaidBillsDaily (DateOfPayment, BillCount, TotalAmount)
+            VALUES (NEW.DateOfPayment, 1, COALESCE(NEW.TotalAmount, 0))
+            ON DUPLICATE KEY UPDATE
+                BillCount = BillCount + 1,
+                TotalAmount = TotalAmount + COALESCE(NEW.TotalAmount, 0);
+        END IF;
+    END IF;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER UnpaidBillsDailyAfterBillDelete
+AFTER DELETE ON Bills
+FOR EACH ROW
+BEGIN
+    IF OLD.PaymentStatus = 'Unpaid' AND OLD.DateOfPayment IS NOT NULL THEN
+        UPDATE UnpaidBillsDaily
+        SET BillCount = BillCount - 1,
+            TotalAmount = TotalAmount - COALESCE(OLD.TotalAmount, 0)
+        WHERE DateOfPayment = OLD.DateOfPayment;
+    END IF;
+END //
+DELIMITER ;
+
+-- Foreign key cascades do not fire triggers, so bills removed with their
+-- appointment, patient or doctor are taken out here
+DELIMITER //
+CREATE TRIGGER UnpaidBillsDailyBeforeAppointmentDelete
+BEFORE DELETE ON Appointments
+FOR EACH ROW
+BEGIN
+    UPDATE UnpaidBillsDaily u
+    JOIN (SELECT DateOfPayment, COUNT(*) AS bills,
+                 SUM(COALESCE(TotalAmount, 0)) AS amount
+          FROM Bills
+          WHERE AppointmentID = OLD.AppointmentID
+            AND PaymentStatus = 'Unpaid' AND DateOfPayment IS NOT NULL
+          GROUP BY DateOfPayment) b ON b.DateOfPayment = u.DateOfPayment
+    SET u.BillCount = u.BillCount - b.bills,
+        u.TotalAmount = u.TotalAmount - b.amount;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER UnpaidBillsDailyBeforePatientDelete
+BEFORE DELETE ON Patients
+FOR EACH ROW
+BEGIN
+    UPDATE UnpaidBillsDaily u
+    JOIN (SELECT b.DateOfPayment, COUNT(*) AS bills,
+                 SUM(COALESCE(b.TotalAmount, 0)) AS amount
+          FROM Appointments a
+          JOIN Bills b ON b.AppointmentID = a.AppointmentID
+          WHERE a.PatientID = OLD.PatientID
+            AND b.PaymentStatus = 'Unpaid' AND b.DateOfPayment IS NOT NULL
+          GROUP BY b.DateOfPayment) p ON p.DateOfPayment = u.DateOfPayment
+    SET u.BillCount = u.BillCount - p.bills,
+        u.TotalAmount = u.TotalAmount - p.amount;
+END //
+DELIMITER ;
+
+DELIMITER //
+CREATE TRIGGER UnpaidBillsDailyBeforeDoctorDelete
+BEFORE DELETE ON Doctors
+FOR EACH ROW
+BEGIN
+    UPDATE UnpaidBillsDaily u
+    JOIN (SELECT b.DateOfPayment, COUNT(*) AS bills,
+                 SUM(COALESCE(b.TotalAmount, 0)) AS amount
+          FROM Appointments a
+          JOIN Bills b ON b.AppointmentID = a.AppointmentID
+          WHERE a.DoctorID = OLD.DoctorID
+            AND b.PaymentStatus = 'Unpaid' AND b.DateOfPayment IS NOT NULL
+          GROUP BY b.DateOfPayment) d ON d.DateOfPayment = u.DateOfPayment
+    SET u.BillCount = u.BillCount - d.bills,
+        u.TotalAmount = u.TotalAmount - d.amount;
+END //
+DELIMITER ;
+
+-- Backfill existing bills; AgingReport.rebuild() does the same later
+INSERT INTO UnpaidBillsDaily (DateOfPayment, BillCount, TotalAmount)
+SELECT DateOfPayment, COUNT(*), COALESCE(SUM(TotalAmount), 0)
+FROM Bills
+WHERE PaymentStatus = 'Unpaid' AND DateOfPayment IS NOT NULL
+GROUP BY DateOfPayment
+ON DUPLICATE KEY UPDATE
+    BillCount = VALUES(BillCount),
+    TotalAmount = VALUES(TotalAmount);
@@ -0,0 +1,5 @@
+-- Completed appointments are billed by BillingEngine from their
+-- AppointmentServices (billing.defaultFee when they have none). The flat
+-- 100.00 bill this trigger inserted on every update to a Completed row
+-- would leave the engine nothing to price.
+DROP TRIGGER IF EXISTS GenerateBillAfterCompletion;
@@ -0,0 +1,26 @@
+-- One bill per appointment, so a BillingEngine run, GenerateBill and any
+-- other insert cannot bill an appointment twice, whatever commits first.
+--
+-- Bills already duplicated (the retired completion trigger billed every
+-- update to a Completed row) are moved to BillDuplicates for review. Each
+-- appointment keeps its first paid bill, or else its first bill.
+CREATE TABLE BillDuplicates LIKE Bills;
+
+INSERT INTO BillDuplicates
+SELECT b.*
+FROM Bills b
+WHERE EXISTS (
+    SELECT 1
+    FROM Bills k
+    WHERE k.AppointmentID = b.AppointmentID
+      AND ((k.PaymentStatus <=> 'Paid') > (b.PaymentStatus <=> 'Paid')
+        OR ((k.PaymentStatus <=> 'Paid') = (b.PaymentStatus <=> 'Paid')
+          AND k.BillID < b.BillID))
+);
+
+DELETE b
+FROM Bills b
+JOIN BillDuplicates d ON d.BillID = b.BillID;
+
+ALTER TABLE Bills
+    ADD UNIQUE KEY uq_bills_appointment (AppointmentID);
@@ -0,0 +1,126 @@
+package com.example.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class IntObjectMapTest {
+
+  @Test
+  void putGetAndReplace() {
+    IntObjectMap<String> map = new IntObjectMap<>();
+    assertTrue(map.isEmpty());
+    assertNull(map.put(7, "seven"));
+    assertEquals("seven", map.put(7, "SEVEN"));
+    assertEquals("SEVEN", map.get(7));
+    assertNull(map.get(8));
+    assertEquals(1, map.size());
+  }
+
+  @Test
+  void rejectsNullValues() {
+    IntObjectMap<String> map = new IntObjectMap<>();
+    assertThrows(NullPointerException.class, () -> map.put(1, null));
+  }
+
+  @Test
+  void zeroAndNegativeKeysAreOrdinaryKeys() {
+    IntObjectMap<String> map = new IntObjectMap<>();
+    map.put(0, "zero");
+    map.put(-1, "minus one");
+    map.put(Integer.MIN_VALUE, "min");
+    map.put(Integer.MAX_VALUE, "max");
+    assertEquals("zero", map.get(0));
+    assertEquals("minus one", map.get(-1));
+    assertEquals("min", map.get(Integer.MIN_VALUE));
+    assertEquals("max", map.get(Integer.MAX_VALUE));
+    assertEquals("zero", map.remove(0));
+    assertNull(map.get(0));
+    assertEquals(3, map.size());
+  }
+
+  @Test
+  void removeOfAbsentKeyChangesNothing() {
+    IntObjectMap<String> map = new IntObjectMap<>();
+    map.put(1, "one");
+    assertNull(map.remove(2));
+    assertEquals(1, map.size());
+    assertEquals("one", map.get(1));
+  }
+
+  @Test
+  void removeShiftsBackEveryProbeChain() {
+    // Twelve keys fill a 16-slot table to its resize point, so runs of
+    // occupied slots are long and wrap around the end of the table
+    int[][] keySets = {
+      { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 },
+      { 16, 32, 48, 64, 80, 96, 112, 128, 144, 160, 176, 192 },
+      { -1, -17, -33, 15, 31, 47, 63, 79, 95, 111, 127, 143 },
+      new Random(7).ints(12).toArray(),
+    };
+    for (int[] keys : keySets) {
+      for (int removed : keys) {
+        IntObjectMap<Integer> map = new IntObjectMap<>(keys.length);
+        for (int key : keys) {
+          map.put(key, key);
+        }
+        assertEquals(removed, map.remove(removed));
+        assertNull(map.get(removed));
+        assertEquals(keys.length - 1, map.size());
+        for (int key : keys) {
+          if (key != removed) {
+            assertEquals(key, map.get(key), "key " + key + " after " + removed);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void matchesHashMapUnderRandomOperations() {
+    Random random = new Random(42);
+    IntObjectMap<Integer> map = new IntObjectMap<>();
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int op = 0; op < 200_000; op++) {
+      // A small key range keeps the table dense and full of collisions
+      int key = random.nextInt(96) - 32;
+      switch (random.nextInt(3)) {
+        case 0:
+          assertEquals(expected.put(key, op), map.put(key, op));
+          break;
+        case 1:
+          assertEquals(expected.remove(key), map.remove(key));
+          break;
+        default:
+          assertEquals(expected.get(key), map.get(key));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    for (int key = -32; key < 64; key++) {
+      assertEquals(expected.get(key), map.get(key));
+    }
+  }
+
+  @Test
+  void growsAndClears() {
+    IntObjectMap<Integer> map = new IntObjectMap<>();
+    for (int key = 0; key < 10_000; key++) {
+      map.put(key * 31, key);
+    }
+    assertEquals(10_000, map.size());
+    for (int key = 0; key < 10_000; key++) {
+      assertEquals(key, map.get(key * 31));
+    }
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(31));
+    map.put(31, 1);
+    assertEquals(1, map.get(31));
+  }
+}
@@ -0,0 +1,226 @@
+package com.example.events;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+
+class ChangeEventBusTest {
+
+  private static void publish(ChangeEventBus bus, int id) {
+    bus.publish(
+      ChangeEvent.Entity.APPOINTMENT,
+      ChangeEvent.Type.UPDATE,
+      id,
+      0,
+      null,
+      "Scheduled",
+      "Completed"
+    );
+  }
+
+  @Test
+  void rejectsBufferSizeThatIsNotAPowerOfTwo() {
+    WaitStrategy blocking = WaitStrategy.forName("blocking");
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new ChangeEventBus(12, blocking)
+    );
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new ChangeEventBus(0, blocking)
+    );
+  }
+
+  @Test
+  void publishingWithoutSubscriptionsNeverWaits() {
+    ChangeEventBus bus = new ChangeEventBus(4, WaitStrategy.forName("blocking"));
+    for (int i = 0; i < 100; i++) {
+      publish(bus, i);
+    }
+    assertEquals(0, bus.getSubscriptionCount());
+  }
+
+  @Test
+  void deliversEveryEventInOrderAcrossManyLaps() throws Exception {
+    int events = 10_000;
+    ChangeEventBus bus = new ChangeEventBus(8, WaitStrategy.forName("blocking"));
+    List<Integer> ids = new ArrayList<>();
+    List<Long> sequences = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(events);
+    try (
+      ChangeEventBus.Subscription subscription = bus.subscribe(
+        "order",
+        (event, sequence, endOfBatch) -> {
+          ids.add(event.getId());
+          sequences.add(sequence);
+          done.countDown();
+        }
+      )
+    ) {
+      for (int i = 0; i < events; i++) {
+        publish(bus, i);
+      }
+      assertTrue(done.await(10, TimeUnit.SECONDS));
+      assertEquals(0, subscription.getBacklog());
+    }
+
+    for (int i = 0; i < events; i++) {
+      assertEquals(i, ids.get(i));
+      assertEquals(i, sequences.get(i));
+    }
+  }
+
+  @Test
+  void slowSubscriberGatesConcurrentPublishers() throws Exception {
+    int publishers = 4;
+    int perPublisher = 5_000;
+    int total = publishers * perPublisher;
+    ChangeEventBus bus = new ChangeEventBus(
+      16,
+      WaitStrategy.forName("blocking")
+    );
+    int[] received = new int[total];
+    int[] next = new int[publishers];
+    List<String> errors = new ArrayList<>();
+    CountDownLatch done = new CountDownLatch(total);
+
+    try (
+      ChangeEventBus.Subscription subscription = bus.subscribe(
+        "gating",
+        (event, sequence, endOfBatch) -> {
+          // Slower than the publishers, so they lap it unless gated
+          if (sequence % 64 == 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+          }
+          int id = event.getId();
+          int publisher = id / perPublisher;
+          if (id % perPublisher != next[publisher]) {
+            errors.add("publisher " + publisher + " out of order at " + id);
+          }
+          next[publisher] = id % perPublisher + 1;
+          received[id]++;
+          done.countDown();
+        }
+      )
+    ) {
+      List<Thread> threads = new ArrayList<>();
+      for (int p = 0; p < publishers; p++) {
+        int first = p * perPublisher;
+        Thread thread = new Thread(() -> {
+          for (int i = 0; i < perPublisher; i++) {
+            publish(bus, first + i);
+          }
+        });
+        threads.add(thread);
+        thread.start();
+      }
+      for (Thread thread : threads) {
+        thread.join(TimeUnit.SECONDS.toMillis(30));
+      }
+      assertTrue(done.await(30, TimeUnit.SECONDS));
+    }
+
+    assertEquals(List.of(), errors);
+    for (int id = 0; id < total; id++) {
+      assertEquals(1, received[id], "deliveries of event " + id);
+    }
+  }
+
+  @Test
+  void eachSubscriptionSeesEveryEventAndCloseUnsubscribes()
+    throws Exception {
+    int events = 1_000;
+    ChangeEventBus bus = new ChangeEventBus(
+      32,
+      WaitStrategy.forName("sleeping")
+    );
+    CountDownLatch first = new CountDownLatch(events);
+    CountDownLatch second = new CountDownLatch(events);
+    ChangeEventBus.Subscription a = bus.subscribe(
+      "a",
+      (event, sequence, endOfBatch) -> first.countDown()
+    );
+    ChangeEventBus.Subscription b = bus.subscribe(
+      "b",
+      (event, sequence, endOfBatch) -> second.countDown()
+    );
+    assertEquals(2, bus.getSubscriptionCount());
+    for (int i = 0; i < events; i++) {
+      publish(bus, i);
+    }
+    assertTrue(first.await(10, TimeUnit.SECONDS));
+    assertTrue(second.await(10, TimeUnit.SECONDS));
+
+    a.close();
+    assertEquals(1, bus.getSubscriptionCount());
+    b.close();
+    assertEquals(0, bus.getSubscriptionCount());
+  }
+
+  @Test
+  void failingHandlerDoesNotStopTheSubscription() throws Exception {
+    // Recorded instead of printed, so the expected failures stay quiet
+    Logger log = Logger.getLogger(ChangeEventBus.class.getName());
+    List<LogRecord> records = Collections.synchronizedList(new ArrayList<>());
+    Handler recorder = new Handler() {
+      @Override
+      public void publish(LogRecord record) {
+        records.add(record);
+      }
+
+      @Override
+      public void flush() {}
+
+      @Override
+      public void close() {}
+    };
+    boolean useParentHandlers = log.getUseParentHandlers();
+    log.addHandler(recorder);
+    log.setUseParentHandlers(false);
+    try {
+      ChangeEventBus bus = new ChangeEventBus(
+        8,
+        WaitStrategy.forName("blocking")
+      );
+      CountDownLatch done = new CountDownLatch(20);
+      try (
+        ChangeEventBus.Subscription subscription = bus.subscribe(
+          "failing",
+          (event, sequence, endOfBatch) -> {
+            done.countDown();
+            if (event.getId() % 2 == 0) {
+              throw new IllegalStateException("expected by the test");
+            }
+          }
+        )
+      ) {
+        for (int i = 0; i < 20; i++) {
+          publish(bus, i);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+      }
+    } finally {
+      log.removeHandler(recorder);
+      log.setUseParentHandlers(useParentHandlers);
+    }
+
+    // Closing joined the subscriber, so every failure has been logged
+    assertEquals(10, records.size());
+    for (LogRecord record : records) {
+      assertEquals(Level.WARNING, record.getLevel());
+      assertEquals("expected by the test", record.getThrown().getMessage());
+    }
+  }
+}
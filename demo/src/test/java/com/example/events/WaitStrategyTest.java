@@ -0,0 +1,78 @@
+package com.example.events;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class WaitStrategyTest {
+
+  private static void publish(ChangeEventBus bus, int id) {
+    bus.publish(
+      ChangeEvent.Entity.PATIENT,
+      ChangeEvent.Type.INSERT,
+      id,
+      0,
+      null,
+      null,
+      null
+    );
+  }
+
+  @Test
+  void rejectsUnknownName() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WaitStrategy.forName("polling")
+    );
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "sleeping", "yielding", "busy-spin" })
+  void wakesAnIdleSubscriberForEachBurst(String name) throws Exception {
+    ChangeEventBus bus = new ChangeEventBus(16, WaitStrategy.forName(name));
+    CountDownLatch firstBurst = new CountDownLatch(10);
+    CountDownLatch secondBurst = new CountDownLatch(40);
+    try (
+      ChangeEventBus.Subscription subscription = bus.subscribe(
+        name,
+        (event, sequence, endOfBatch) -> {
+          firstBurst.countDown();
+          secondBurst.countDown();
+        }
+      )
+    ) {
+      // Long enough for every strategy to be past spinning and waiting
+      TimeUnit.MILLISECONDS.sleep(50);
+      for (int i = 0; i < 10; i++) {
+        publish(bus, i);
+      }
+      assertTrue(firstBurst.await(5, TimeUnit.SECONDS));
+
+      TimeUnit.MILLISECONDS.sleep(50);
+      // More than the ring holds, so publishers also wait on the subscriber
+      for (int i = 10; i < 50; i++) {
+        publish(bus, i);
+      }
+      assertTrue(secondBurst.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = { "blocking", "sleeping", "yielding", "busy-spin" })
+  void closeStopsAWaitingSubscriber(String name) throws Exception {
+    ChangeEventBus bus = new ChangeEventBus(8, WaitStrategy.forName(name));
+    ChangeEventBus.Subscription subscription = bus.subscribe(
+      name,
+      (event, sequence, endOfBatch) -> {}
+    );
+    TimeUnit.MILLISECONDS.sleep(20);
+    assertTimeoutPreemptively(Duration.ofSeconds(5), subscription::close);
+  }
+}
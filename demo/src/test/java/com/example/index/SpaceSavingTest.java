@@ -0,0 +1,121 @@
+package com.example.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class SpaceSavingTest {
+
+  @Test
+  void rejectsNonPositiveCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> new SpaceSaving<>(0));
+  }
+
+  @Test
+  void countsAreExactWhileEveryKeyFits() {
+    SpaceSaving<String> sketch = new SpaceSaving<>(4);
+    sketch.add("cardiology", 5);
+    sketch.add("neurology", 2);
+    sketch.add("cardiology", 1);
+    sketch.add("pediatrics", 3);
+
+    List<SpaceSaving.Entry<String>> top = sketch.top(10);
+    assertEquals(3, top.size());
+    assertEntry(top.get(0), "cardiology", 6, 0);
+    assertEntry(top.get(1), "pediatrics", 3, 0);
+    assertEntry(top.get(2), "neurology", 2, 0);
+    assertEquals(2, sketch.top(2).size());
+  }
+
+  @Test
+  void replacedKeyInheritsTheSmallestCountAsError() {
+    SpaceSaving<String> sketch = new SpaceSaving<>(2);
+    sketch.add("a", 5);
+    sketch.add("b", 2);
+    sketch.add("c", 1);
+
+    List<SpaceSaving.Entry<String>> top = sketch.top(2);
+    assertEntry(top.get(0), "a", 5, 0);
+    assertEntry(top.get(1), "c", 3, 2);
+  }
+
+  @Test
+  void skewedStreamStaysWithinErrorBounds() {
+    int capacity = 20;
+    SpaceSaving<Integer> sketch = new SpaceSaving<>(capacity);
+    Map<Integer, Long> exact = new HashMap<>();
+    Random random = new Random(42);
+    long total = 0;
+    for (int i = 0; i < 100_000; i++) {
+      // Roughly Zipf over 1000 keys: a few heavy hitters, a long tail
+      int key = (int) Math.floor(Math.pow(1000, random.nextDouble()));
+      sketch.add(key, 1);
+      exact.merge(key, 1L, Long::sum);
+      total++;
+    }
+
+    long bound = total / capacity;
+    Map<Integer, SpaceSaving.Entry<Integer>> monitored = new HashMap<>();
+    for (SpaceSaving.Entry<Integer> entry : sketch.top(capacity)) {
+      monitored.put(entry.getKey(), entry);
+      long trueCount = exact.get(entry.getKey());
+      assertTrue(entry.getCount() >= trueCount, "overestimate of " + entry);
+      assertTrue(
+        entry.getCount() - entry.getError() <= trueCount,
+        "error covers the overestimate of " + entry
+      );
+      assertTrue(entry.getError() <= bound, "error at most N/m for " + entry);
+    }
+    assertEquals(capacity, sketch.size());
+    for (Map.Entry<Integer, Long> entry : exact.entrySet()) {
+      if (entry.getValue() > bound) {
+        assertTrue(
+          monitored.containsKey(entry.getKey()),
+          "key " + entry.getKey() + " counted " + entry.getValue() + " times"
+        );
+      }
+    }
+  }
+
+  @Test
+  void decrementsApplyToMonitoredKeysOnly() {
+    SpaceSaving<String> sketch = new SpaceSaving<>(2);
+    sketch.add("a", 5);
+    sketch.add("a", -2);
+    assertEntry(sketch.top(1).get(0), "a", 3, 0);
+
+    sketch.add("b", -1);
+    assertEquals(1, sketch.size());
+
+    sketch.add("a", -3);
+    assertEquals(0, sketch.size());
+  }
+
+  @Test
+  void errorNeverExceedsTheCountAfterDecrements() {
+    SpaceSaving<String> sketch = new SpaceSaving<>(1);
+    sketch.add("a", 10);
+    sketch.add("b", 1);
+    assertEntry(sketch.top(1).get(0), "b", 11, 10);
+
+    sketch.add("b", -5);
+    assertEntry(sketch.top(1).get(0), "b", 6, 6);
+  }
+
+  private static void assertEntry(
+    SpaceSaving.Entry<String> entry,
+    String key,
+    long count,
+    long error
+  ) {
+    assertEquals(key, entry.getKey());
+    assertEquals(count, entry.getCount());
+    assertEquals(error, entry.getError());
+  }
+}
@@ -0,0 +1,173 @@
+package com.example.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Date;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class VisitCountersTest {
+
+  /** A clock the test moves by hand. */
+  private static final class TestClock extends Clock {
+
+    private Instant now;
+
+    TestClock(LocalDate date) {
+      set(date);
+    }
+
+    void set(LocalDate date) {
+      now = date.atStartOfDay(ZoneOffset.UTC).toInstant();
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+
+  private TestClock clock;
+  private VisitCounters counters;
+
+  @BeforeEach
+  void startInJanuary() {
+    clock = new TestClock(LocalDate.of(2026, 1, 15));
+    // Window Nov 2025 to Jan 2026, horizon Feb and Mar 2026
+    counters = new VisitCounters(3, 2, 2, clock);
+    counters.seedEmpty();
+  }
+
+  private void book(int patientId, String date) {
+    counters.onAppointmentChanged(0, null, patientId, Date.valueOf(date));
+  }
+
+  private void cancel(int patientId, String date) {
+    counters.onAppointmentChanged(patientId, Date.valueOf(date), 0, null);
+  }
+
+  @Test
+  void rejectsEmptyWindow() {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> new VisitCounters(0, 2, 2, clock)
+    );
+  }
+
+  @Test
+  void countsAppointmentsInTheWindowAndHorizon() throws Exception {
+    book(1, "2025-11-03");
+    book(1, "2025-12-10");
+    book(1, "2026-01-20");
+    book(2, "2026-01-02");
+    book(2, "2026-03-30");
+    // Before the window
+    book(3, "2025-10-31");
+
+    assertEquals(3, counters.getVisitCount(1));
+    assertEquals(2, counters.getVisitCount(2));
+    assertEquals(0, counters.getVisitCount(3));
+    assertTrue(counters.isFrequent(1));
+    assertFalse(counters.isFrequent(2));
+    assertArrayEquals(new int[] { 1 }, counters.getFrequentPatients());
+
+    cancel(1, "2025-12-10");
+    assertEquals(2, counters.getVisitCount(1));
+    assertArrayEquals(new int[0], counters.getFrequentPatients());
+  }
+
+  @Test
+  void monthRolloverExpiresTheOldestMonth() throws Exception {
+    book(1, "2025-11-03");
+    book(1, "2025-12-10");
+    book(1, "2026-01-20");
+    book(2, "2026-01-02");
+    book(2, "2026-02-14");
+    book(2, "2026-03-30");
+    assertArrayEquals(new int[] { 1, 2 }, counters.getFrequentPatients());
+
+    // Window Dec 2025 to Feb 2026: November's visit expires
+    clock.set(LocalDate.of(2026, 2, 1));
+    assertEquals(2, counters.getVisitCount(1));
+    assertEquals(3, counters.getVisitCount(2));
+    assertArrayEquals(new int[] { 2 }, counters.getFrequentPatients());
+  }
+
+  @Test
+  void expiredSlotComesBackEmptyForTheNewHorizonMonth() throws Exception {
+    book(1, "2025-11-03");
+    book(1, "2025-11-04");
+
+    // November's slot is reused for April, the new end of the horizon
+    clock.set(LocalDate.of(2026, 2, 1));
+    assertEquals(0, counters.getVisitCount(1));
+    book(1, "2026-04-01");
+    assertEquals(1, counters.getVisitCount(1));
+  }
+
+  @Test
+  void rolloverAcrossSeveralMonthsAtOnce() throws Exception {
+    book(1, "2025-12-10");
+    book(1, "2026-01-20");
+    book(1, "2026-02-14");
+    book(1, "2026-03-30");
+    assertTrue(counters.isFrequent(1));
+
+    // Window Apr to Jun 2026: every earlier visit has expired
+    clock.set(LocalDate.of(2026, 6, 30));
+    assertEquals(0, counters.getVisitCount(1));
+    assertFalse(counters.isFrequent(1));
+
+    book(1, "2026-04-01");
+    book(1, "2026-06-01");
+    book(1, "2026-08-31");
+    assertEquals(3, counters.getVisitCount(1));
+    assertTrue(counters.isFrequent(1));
+  }
+
+  @Test
+  void movingAnAppointmentBetweenMonthsMovesItsCount() throws Exception {
+    book(1, "2026-01-20");
+    counters.onAppointmentChanged(
+      1,
+      Date.valueOf("2026-01-20"),
+      1,
+      Date.valueOf("2026-03-01")
+    );
+    assertEquals(1, counters.getVisitCount(1));
+
+    // January expires with the move to April; the moved visit stays
+    clock.set(LocalDate.of(2026, 4, 1));
+    assertEquals(1, counters.getVisitCount(1));
+  }
+
+  @Test
+  void deletedPatientDropsOut() throws Exception {
+    book(4, "2026-01-05");
+    book(4, "2026-01-06");
+    book(4, "2026-01-07");
+    assertTrue(counters.isFrequent(4));
+    counters.onPatientDeleted(4);
+    assertEquals(0, counters.getVisitCount(4));
+    assertFalse(counters.isFrequent(4));
+  }
+}
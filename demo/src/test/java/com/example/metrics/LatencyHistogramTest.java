@@ -0,0 +1,121 @@
+package com.example.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+  // Each power of two has 128 sub-buckets
+  private static final double RELATIVE_ERROR = 1.0 / 128;
+
+  private static void assertWithinBucket(long expected, long actual) {
+    assertTrue(
+      actual >= expected && actual <= expected + expected * RELATIVE_ERROR,
+      "expected " + expected + " rounded up by at most 1/128, was " + actual
+    );
+  }
+
+  @Test
+  void emptyHistogramReportsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.getValueAtPercentile(50));
+    assertEquals(0, histogram.getValueAtPercentile(100));
+    assertEquals(0, histogram.getMean());
+  }
+
+  @Test
+  void smallValuesAreExact() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 0; value < 128; value++) {
+      histogram.record(value);
+    }
+    assertEquals(0, histogram.getValueAtPercentile(0));
+    assertEquals(63, histogram.getValueAtPercentile(50));
+    assertEquals(127, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void negativeValuesCountAsZero() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    assertEquals(1, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(100));
+    assertEquals(0, histogram.getSum());
+  }
+
+  @Test
+  void percentileIsRoundedUpWithinOnePercentAcrossMagnitudes() {
+    long[] values = {
+      128,
+      129,
+      1_000,
+      4_095,
+      65_537,
+      1_234_567,
+      999_999_999,
+      86_400_000_000_000L,
+      Long.MAX_VALUE / 3,
+    };
+    for (long value : values) {
+      LatencyHistogram histogram = new LatencyHistogram();
+      histogram.record(value);
+      // A larger value keeps the max from capping the bucket bound
+      histogram.record(Long.MAX_VALUE);
+      assertWithinBucket(value, histogram.getValueAtPercentile(50));
+    }
+  }
+
+  @Test
+  void percentilesOfRandomValuesStayWithinBucketBounds() {
+    Random random = new Random(42);
+    long[] values = new long[100_000];
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < values.length; i++) {
+      // Log-uniform from 1 us to 10 s
+      values[i] = (long) Math.pow(10, 3 + random.nextDouble() * 7);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : new double[] { 1, 25, 50, 90, 99, 99.9 }) {
+      long rank = (long) Math.ceil(percentile / 100 * values.length);
+      long expected = values[(int) rank - 1];
+      assertWithinBucket(expected, histogram.getValueAtPercentile(percentile));
+    }
+    assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(values.length, histogram.getCount());
+  }
+
+  @Test
+  void percentileNeverExceedsTheMax() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(1_000_001);
+    assertEquals(1_000_001, histogram.getValueAtPercentile(99));
+    assertEquals(1_000_001, histogram.getValueAtPercentile(150));
+  }
+
+  @Test
+  void addMergesCountsSumAndMax() {
+    LatencyHistogram a = new LatencyHistogram();
+    LatencyHistogram b = new LatencyHistogram();
+    for (long value = 1; value <= 100; value++) {
+      a.record(value);
+      b.record(value + 100);
+    }
+    a.add(b);
+    assertEquals(200, a.getCount());
+    assertEquals(200 * 201 / 2, a.getSum());
+    assertEquals(200, a.getMax());
+    assertEquals(100, a.getValueAtPercentile(50));
+    assertWithinBucket(200, a.getValueAtPercentile(100));
+
+    a.reset();
+    assertEquals(0, a.getCount());
+    assertEquals(0, a.getValueAtPercentile(100));
+  }
+}